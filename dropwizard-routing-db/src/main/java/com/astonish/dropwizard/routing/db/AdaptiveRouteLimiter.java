@@ -0,0 +1,190 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Adapts the limit of each route's {@link RouteBulkhead} to the route's latency with a {@link GradientLimit}, so that
+ * routes whose database slows down take fewer concurrent requests instead of queuing on their pool.
+ * <p/>
+ * The limit a route's bulkhead has when the route is added is its upper bound, and also its starting point. The
+ * current limit of each route is published as a gauge named {@code <prefix>.<route>.limit}. Follows the
+ * {@link RouteRegistry}; must be created after the {@link RouteBulkheads} so that it sees each route's bulkhead.
+ */
+public class AdaptiveRouteLimiter implements RouteRegistry.Listener {
+    static final String DEFAULT_PREFIX = "routes";
+
+    private final RouteBulkheads bulkheads;
+    private final MetricRegistry metrics;
+    private final String prefix;
+    private final int minLimit;
+    private volatile State state = new State(RouteTable.empty(), new AdaptiveRoute[0]);
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} to follow
+     * @param bulkheads
+     *            the {@link RouteBulkheads} whose limits to adapt
+     * @param metrics
+     *            the {@link MetricRegistry} to publish the limits to
+     */
+    public AdaptiveRouteLimiter(final RouteRegistry<?> registry, final RouteBulkheads bulkheads,
+            final MetricRegistry metrics) {
+        this(registry, bulkheads, metrics, DEFAULT_PREFIX, 1);
+    }
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} to follow
+     * @param bulkheads
+     *            the {@link RouteBulkheads} whose limits to adapt
+     * @param metrics
+     *            the {@link MetricRegistry} to publish the limits to
+     * @param prefix
+     *            the prefix of the gauge names
+     * @param minLimit
+     *            the lowest limit of any route
+     */
+    public AdaptiveRouteLimiter(final RouteRegistry<?> registry, final RouteBulkheads bulkheads,
+            final MetricRegistry metrics, final String prefix, final int minLimit) {
+        checkNotNull(registry, "registry is required");
+        checkArgument(0 < minLimit, "minLimit must be positive");
+        this.bulkheads = checkNotNull(bulkheads, "bulkheads is required");
+        this.metrics = checkNotNull(metrics, "metrics is required");
+        this.prefix = checkNotNull(prefix, "prefix is required");
+        this.minLimit = minLimit;
+
+        registry.addListener(this);
+        onRoutesChanged(registry.getRouteTable());
+    }
+
+    /**
+     * Records the latency of a unit of work on a route and adapts the route's limit.
+     * @param route
+     *            the route the unit of work ran on
+     * @param latency
+     *            the latency of the unit of work
+     * @param unit
+     *            the unit of latency
+     */
+    public void record(final Route route, final long latency, final TimeUnit unit) {
+        final State current = state;
+        if (!current.table.contains(route)) {
+            return;
+        }
+
+        final AdaptiveRoute adaptive = current.routes[route.getOrdinal()];
+        if (null != adaptive) {
+            final RouteBulkhead bulkhead = adaptive.bulkhead;
+            final int limit = adaptive.limit.onSample(unit.toNanos(latency), bulkhead.getInFlight());
+            if (limit != bulkhead.getLimit()) {
+                bulkhead.setLimit(limit);
+            }
+        }
+    }
+
+    /**
+     * @param name
+     *            the route name or alias
+     * @return the {@link GradientLimit} of the live route, or null if unknown
+     */
+    public GradientLimit get(final String name) {
+        final State current = state;
+        final Route route = current.table.get(name);
+        final AdaptiveRoute adaptive = null == route ? null : current.routes[route.getOrdinal()];
+        return null == adaptive ? null : adaptive.limit;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.astonish.dropwizard.routing.db.RouteRegistry.Listener#onRoutesChanged(RouteTable)
+     */
+    @Override
+    public synchronized void onRoutesChanged(final RouteTable routes) {
+        final State current = state;
+        final AdaptiveRoute[] adaptiveRoutes = new AdaptiveRoute[routes.capacity()];
+        for (int ordinal = 0; ordinal < current.routes.length; ordinal++) {
+            final AdaptiveRoute adaptive = current.routes[ordinal];
+            if (null == adaptive) {
+                continue;
+            }
+            if (null != routes.get(ordinal)) {
+                adaptiveRoutes[ordinal] = adaptive;
+            } else {
+                // retired, only unregister the gauge if a route added under the same name has not replaced it
+                final Metric registered = metrics.getMetrics().get(adaptive.gaugeName);
+                if (registered == adaptive) {
+                    metrics.remove(adaptive.gaugeName);
+                }
+            }
+        }
+
+        for (int ordinal = current.routes.length; ordinal < adaptiveRoutes.length; ordinal++) {
+            final Route route = routes.get(ordinal);
+            final RouteBulkhead bulkhead = null == route ? null : bulkheads.get(route);
+            if (null != bulkhead) {
+                final int maxLimit = Math.max(minLimit, bulkhead.getLimit());
+                final AdaptiveRoute adaptive = new AdaptiveRoute(MetricRegistry.name(prefix, route.getName(),
+                        "limit"), bulkhead, new GradientLimit(maxLimit, minLimit, maxLimit));
+                metrics.remove(adaptive.gaugeName);
+                metrics.register(adaptive.gaugeName, adaptive);
+                adaptiveRoutes[ordinal] = adaptive;
+            }
+        }
+        this.state = new State(routes, adaptiveRoutes);
+    }
+
+    /**
+     * The adaptive limit of one route, published as a gauge of the route's current limit.
+     */
+    private static final class AdaptiveRoute implements Gauge<Integer> {
+        private final String gaugeName;
+        private final RouteBulkhead bulkhead;
+        private final GradientLimit limit;
+
+        AdaptiveRoute(final String gaugeName, final RouteBulkhead bulkhead, final GradientLimit limit) {
+            this.gaugeName = gaugeName;
+            this.bulkhead = bulkhead;
+            this.limit = limit;
+        }
+
+        @Override
+        public Integer getValue() {
+            return bulkhead.getLimit();
+        }
+    }
+
+    private static final class State {
+        private final RouteTable table;
+        private final AdaptiveRoute[] routes;
+
+        State(final RouteTable table, final AdaptiveRoute[] routes) {
+            this.table = table;
+            this.routes = routes;
+        }
+    }
+}
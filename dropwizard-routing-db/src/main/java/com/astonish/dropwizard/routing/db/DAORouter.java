@@ -17,18 +17,30 @@
  */
 package com.astonish.dropwizard.routing.db;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 /**
  * Responsible for holding all DAOs for all possible routes.
+ * <p/>
+ * Each route is assigned a dense ordinal and each DAO type a slot; DAOs are stored in a flat array indexed by
+ * {@code ordinal * slotCount + slot}. Routes may be built up front or on first access, see
+ * {@link #setRoutes(Iterable, ImmutableMap)}, and may follow a {@link RouteRegistry} as routes are added and removed
+ * at runtime, see {@link #setRoutes(RouteRegistry, ImmutableMap)}.
  */
 public class DAORouter {
-    protected ImmutableMap<String, ImmutableMap<Class<?>, Object>> daosByRoute = ImmutableMap
-            .<String, ImmutableMap<Class<?>, Object>> of();
+    private volatile State state = new State(RouteTable.empty(), new AtomicReferenceArray<>(0));
+    private ImmutableBiMap<Class<?>, Integer> daoSlots = ImmutableBiMap.of();
     private String defaultRouteName;
 
     /**
@@ -46,6 +58,140 @@ public class DAORouter {
         this.defaultRouteName = defaultRouteName;
     }
 
+    /**
+     * Sets the DAOs for all routes, assigning route ordinals in iteration order.
+     * @param daosByRoute
+     *            the DAOs keyed by {@link Class}, keyed by route name
+     */
+    protected void setDAOsByRoute(final ImmutableMap<String, ImmutableMap<Class<?>, Object>> daosByRoute) {
+        checkNotNull(daosByRoute, "daosByRoute is required");
+        setRoutes(daosByRoute.keySet(), daosByRoute);
+    }
+
+    /**
+     * Sets the routes, assigning route ordinals in iteration order. Routes without an entry in daosByRoute have
+     * their DAOs built by {@link #loadDAOs(Route)} the first time they are accessed. The DAO types are taken from
+     * the routes in daosByRoute, so at least one route should be built up front.
+     * @throws IllegalStateException
+     *             if some routes are left to build on first access and {@link #loadDAOs(Route)} is not overridden
+     * @param routeNames
+     *            all route names
+     * @param daosByRoute
+     *            the DAOs keyed by {@link Class}, keyed by route name, for the routes to build up front
+     */
+    protected void setRoutes(final Iterable<String> routeNames,
+            final ImmutableMap<String, ImmutableMap<Class<?>, Object>> daosByRoute) {
+        checkNotNull(routeNames, "routeNames is required");
+        setRoutes(RouteTable.of(routeNames), daosByRoute);
+    }
+
+    /**
+     * Sets the routes to those of a {@link RouteRegistry} and keeps following it: routes added to the registry are
+     * built on first access and the DAOs of removed routes are dropped once the route is retired.
+     * @param registry
+     *            the {@link RouteRegistry}
+     * @param daosByRoute
+     *            the DAOs keyed by {@link Class}, keyed by route name, for the routes to build up front
+     * @throws IllegalStateException
+     *             if {@link #loadDAOs(Route)} is not overridden
+     */
+    protected void setRoutes(final RouteRegistry<?> registry,
+            final ImmutableMap<String, ImmutableMap<Class<?>, Object>> daosByRoute) {
+        checkNotNull(registry, "registry is required");
+        checkState(loadsDAOsLazily(), "%s follows a RouteRegistry but does not override loadDAOs",
+                getClass().getSimpleName());
+        setRoutes(registry.getRouteTable(), daosByRoute);
+        registry.addListener(new RouteRegistry.Listener() {
+            @Override
+            public void onRoutesChanged(RouteTable routes) {
+                setRouteTable(routes);
+            }
+        });
+    }
+
+    private void setRoutes(final RouteTable routes,
+            final ImmutableMap<String, ImmutableMap<Class<?>, Object>> daosByRoute) {
+        checkNotNull(daosByRoute, "daosByRoute is required");
+        checkState(daosByRoute.size() >= routes.size() || loadsDAOsLazily(),
+                "%s leaves routes to build on first access but does not override loadDAOs",
+                getClass().getSimpleName());
+
+        final Map<Class<?>, Integer> slots = new LinkedHashMap<>();
+        for (ImmutableMap<Class<?>, Object> routeDAOs : daosByRoute.values()) {
+            for (Class<?> daoClass : routeDAOs.keySet()) {
+                if (!slots.containsKey(daoClass)) {
+                    slots.put(daoClass, slots.size());
+                }
+            }
+        }
+
+        final AtomicReferenceArray<Object> daos = new AtomicReferenceArray<>(routes.capacity() * slots.size());
+        for (Entry<String, ImmutableMap<Class<?>, Object>> e : daosByRoute.entrySet()) {
+            final Route route = routes.get(e.getKey());
+            checkArgument(null != route, "Unknown Route[%s]", e.getKey());
+            final int base = route.getOrdinal() * slots.size();
+            for (Entry<Class<?>, Object> dao : e.getValue().entrySet()) {
+                daos.set(base + slots.get(dao.getKey()), dao.getValue());
+            }
+        }
+
+        this.daoSlots = ImmutableBiMap.copyOf(slots);
+        this.state = new State(routes, daos);
+    }
+
+    /**
+     * Moves to a new {@link RouteTable}, keeping the DAOs of every route still in it. Routes new to the table are
+     * built on first access.
+     * @param routes
+     *            the new {@link RouteTable}
+     */
+    private synchronized void setRouteTable(final RouteTable routes) {
+        final State current = state;
+        final int slotCount = daoSlots.size();
+        final AtomicReferenceArray<Object> daos = new AtomicReferenceArray<>(routes.capacity() * slotCount);
+        for (int ordinal = 0; ordinal < current.routes.capacity(); ordinal++) {
+            final Route route = current.routes.get(ordinal);
+            if (null != route && routes.contains(route)) {
+                final int base = ordinal * slotCount;
+                for (int slot = 0; slot < slotCount; slot++) {
+                    daos.set(base + slot, current.daos.get(base + slot));
+                }
+            }
+        }
+        this.state = new State(routes, daos);
+    }
+
+    /**
+     * Builds the DAOs of a route that was not built up front. May be called concurrently for the same route; only
+     * one result is published and the others are discarded, so implementations must not have side effects.
+     * <p/>
+     * Routers that leave routes to build on first access must override this; setting such routes fails otherwise.
+     * @param route
+     *            the route
+     * @return the {@link ImmutableMap} of DAOs keyed by {@link Class}
+     * @throws UnsupportedOperationException
+     *             unless overridden
+     */
+    protected ImmutableMap<Class<?>, Object> loadDAOs(final Route route) {
+        throw new UnsupportedOperationException(route + " was not built and " + getClass().getSimpleName()
+                + " does not load DAOs lazily");
+    }
+
+    /**
+     * @return true if a subclass overrides {@link #loadDAOs(Route)}
+     */
+    private boolean loadsDAOsLazily() {
+        for (Class<?> type = getClass(); DAORouter.class != type; type = type.getSuperclass()) {
+            try {
+                type.getDeclaredMethod("loadDAOs", Route.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // keep looking up the hierarchy
+            }
+        }
+        return false;
+    }
+
     /**
      * Retrieves a type-casted DAO from the {@link DAORouter}.
      * @param daoClass
@@ -55,12 +201,98 @@ public class DAORouter {
     @SuppressWarnings("unchecked")
     public <T> T getDAO(final Class<T> daoClass) {
         checkNotNull(daoClass, "daoClass is required");
+        return (T) getDAO(slotOf(daoClass));
+    }
 
-        final ImmutableMap<Class<?>, Object> routeDAOs = daosByRoute.get(RouteStore.getInstance().getRoute());
-        checkState(null != routeDAOs, "No route found for Route[" + RouteStore.getInstance().getRoute() + "]");
-        checkState(null != routeDAOs.get(daoClass), "Unknown DAO[" + daoClass.getSimpleName() + "]");
+    /**
+     * Resolves the slot of a DAO type once, for subclasses that keep it in a field and look DAOs up through
+     * {@link #getDAO(int)}, skipping the per-call type lookup of {@link #getDAO(Class)}.
+     * @param daoClass
+     *            the type of DAO
+     * @return the slot of the DAO type
+     * @throws IllegalStateException
+     *             if the DAO type is unknown
+     */
+    protected final int slotOf(final Class<?> daoClass) {
+        final Integer slot = daoSlots.get(daoClass);
+        if (null == slot) {
+            throw new IllegalStateException(unknownDAOMessage(daoClass));
+        }
+        return slot;
+    }
 
-        return (T) routeDAOs.get(daoClass);
+    /**
+     * Retrieves the DAO of the current route in a slot obtained from {@link #slotOf(Class)}.
+     * @param slot
+     *            the slot of the DAO type
+     * @return the DAO associated with the current route
+     */
+    protected final Object getDAO(final int slot) {
+        final State state = this.state;
+        final Route route = currentRoute(state);
+        final int index = route.getOrdinal() * daoSlots.size() + slot;
+        final Object dao = state.daos.get(index);
+        return null == dao ? load(state, route, slot, index) : dao;
+    }
+
+    /**
+     * Builds the DAOs of a route and publishes each one with a compare-and-set, so concurrent first accesses all end
+     * up with the same instances without locking.
+     * @param state
+     *            the state to publish into
+     * @param route
+     *            the route
+     * @param slot
+     *            the slot of the requested DAO
+     * @param index
+     *            the index of the requested DAO
+     * @return the published DAO at index
+     */
+    private Object load(final State state, final Route route, final int slot, final int index) {
+        final int base = route.getOrdinal() * daoSlots.size();
+        for (Entry<Class<?>, Object> dao : loadDAOs(route).entrySet()) {
+            final Integer daoSlot = daoSlots.get(dao.getKey());
+            if (null != daoSlot) {
+                state.daos.compareAndSet(base + daoSlot, null, checkNotNull(dao.getValue()));
+            }
+        }
+
+        final Object dao = state.daos.get(index);
+        if (null == dao) {
+            throw new IllegalStateException(unknownDAOMessage(daoSlots.inverse().get(slot)));
+        }
+        return dao;
+    }
+
+    /**
+     * Resolves the current route from the {@link RouteStore}. The resolved handle is cached for the rest of the
+     * request.
+     * @return the current {@link Route}
+     * @throws IllegalStateException
+     *             if the current route is unknown to this {@link DAORouter}
+     */
+    protected Route currentRoute() {
+        return currentRoute(state);
+    }
+
+    private static Route currentRoute(final State state) {
+        final RouteContext context = RouteStore.getInstance().peek();
+        final Route route = null == context ? null : state.routes.resolve(context);
+        if (null == route) {
+            throw new IllegalStateException(noRouteMessage(null == context ? null : context.getRoute()));
+        }
+        return route;
+    }
+
+    /*
+     * Failure messages are built out of line so that the success path of getDAO neither concatenates nor allocates.
+     */
+    private static String noRouteMessage(final String route) {
+        return "No route found for Route[" + route + "]";
+    }
+
+    private static String unknownDAOMessage(final Class<?> daoClass) {
+        return "Unknown DAO[" + daoClass.getSimpleName() + "]";
     }
 
     /**
@@ -68,6 +300,19 @@ public class DAORouter {
      * @return all routes
      */
     public ImmutableSet<String> allRoutes() {
-        return daosByRoute.keySet();
+        return state.routes.names();
+    }
+
+    /**
+     * The routes and their DAOs, replaced as a unit when the routes change.
+     */
+    private static final class State {
+        private final RouteTable routes;
+        private final AtomicReferenceArray<Object> daos;
+
+        State(final RouteTable routes, final AtomicReferenceArray<Object> daos) {
+            this.routes = routes;
+            this.daos = daos;
+        }
     }
 }
@@ -18,11 +18,31 @@
 package com.astonish.dropwizard.routing.db;
 
 import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.ValidationMethod;
 
+import java.util.List;
+import java.util.Map;
+
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
 /**
- * Keyed {@link DataSourceFactory}.
+ * Keyed {@link DataSourceFactory}. Aliases are further route keys served by the same connection pool and
+ * SessionFactory, for tenants sharing one physical database. Replicas are read replicas of the database, serving
+ * read-only units of work; the replication lag query, run against each replica every lag sample interval, takes
+ * replicas lagging by more than the maximum lag out of rotation. Within the write window after a write on the route,
+ * its reads stay on the primary unless a replica has replayed the write. The tier weighs the route's share of the
+ * service when requests are queued, see {@link RouteFairQueue}.
+ * <p/>
+ * Tenants are further route keys for tenants held in separate schemas of the database. They share the route's
+ * connection pool and SessionFactory like aliases do, and each connection is switched to the schema of the request's
+ * tenant when it is checked out, see {@link TenantSwitch}. The route name must be mapped too, to the schema serving
+ * the route's other keys.
  */
 public class DataSourceRoute {
     @NotNull
@@ -31,6 +51,34 @@ public class DataSourceRoute {
     @NotNull
     private DataSourceFactory database;
 
+    @NotNull
+    private List<String> aliases = ImmutableList.of();
+
+    @NotNull
+    private List<DataSourceFactory> replicas = ImmutableList.of();
+
+    private String replicaLagQuery;
+
+    @NotNull
+    private Duration replicaLagSampleInterval = Duration.seconds(1);
+
+    @NotNull
+    private Duration maxReplicaLag = Duration.seconds(10);
+
+    @NotNull
+    private Duration replicaWriteWindow = Duration.seconds(0);
+
+    @Min(1)
+    private Integer maxConcurrentRequests;
+
+    private String tier;
+
+    @NotNull
+    private Map<String, String> tenants = ImmutableMap.of();
+
+    @NotNull
+    private TenantSwitch tenantSwitch = TenantSwitch.SCHEMA;
+
     /**
      * @return the routeName
      */
@@ -60,4 +108,163 @@ public class DataSourceRoute {
     public void setDatabase(DataSourceFactory database) {
         this.database = database;
     }
+
+    /**
+     * @return the aliases
+     */
+    public List<String> getAliases() {
+        return aliases;
+    }
+
+    /**
+     * @param aliases
+     *            the aliases to set
+     */
+    public void setAliases(List<String> aliases) {
+        this.aliases = aliases;
+    }
+
+    /**
+     * @return the read replicas
+     */
+    public List<DataSourceFactory> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * @param replicas
+     *            the read replicas to set
+     */
+    public void setReplicas(List<DataSourceFactory> replicas) {
+        this.replicas = replicas;
+    }
+
+    /**
+     * @return the query returning a replica's replication lag in milliseconds, or null to not sample the lag
+     */
+    public String getReplicaLagQuery() {
+        return replicaLagQuery;
+    }
+
+    /**
+     * @param replicaLagQuery
+     *            the query returning a replica's replication lag in milliseconds, null to not sample the lag
+     */
+    public void setReplicaLagQuery(String replicaLagQuery) {
+        this.replicaLagQuery = replicaLagQuery;
+    }
+
+    /**
+     * @return the interval between two samples of a replica's lag
+     */
+    public Duration getReplicaLagSampleInterval() {
+        return replicaLagSampleInterval;
+    }
+
+    /**
+     * @param replicaLagSampleInterval
+     *            the interval between two samples of a replica's lag
+     */
+    public void setReplicaLagSampleInterval(Duration replicaLagSampleInterval) {
+        this.replicaLagSampleInterval = replicaLagSampleInterval;
+    }
+
+    /**
+     * @return the lag beyond which a replica is taken out of rotation
+     */
+    public Duration getMaxReplicaLag() {
+        return maxReplicaLag;
+    }
+
+    /**
+     * @param maxReplicaLag
+     *            the lag beyond which a replica is taken out of rotation
+     */
+    public void setMaxReplicaLag(Duration maxReplicaLag) {
+        this.maxReplicaLag = maxReplicaLag;
+    }
+
+    /**
+     * @return how long after a write on the route its reads need a replica that has replayed the write
+     */
+    public Duration getReplicaWriteWindow() {
+        return replicaWriteWindow;
+    }
+
+    /**
+     * @param replicaWriteWindow
+     *            how long after a write on the route its reads need a replica that has replayed the write
+     */
+    public void setReplicaWriteWindow(Duration replicaWriteWindow) {
+        this.replicaWriteWindow = replicaWriteWindow;
+    }
+
+    /**
+     * @return the maximum number of requests in flight on the route, or null to use the maximum pool size
+     */
+    public Integer getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * @param maxConcurrentRequests
+     *            the maximum number of requests in flight on the route, null to use the maximum pool size
+     */
+    public void setMaxConcurrentRequests(Integer maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * @return the priority tier of the route, or null for the default tier
+     */
+    public String getTier() {
+        return tier;
+    }
+
+    /**
+     * @param tier
+     *            the priority tier of the route, null for the default tier
+     */
+    public void setTier(String tier) {
+        this.tier = tier;
+    }
+
+    /**
+     * @return the schema of each tenant keyed by route key
+     */
+    public Map<String, String> getTenants() {
+        return tenants;
+    }
+
+    /**
+     * @param tenants
+     *            the schema of each tenant keyed by route key
+     */
+    public void setTenants(Map<String, String> tenants) {
+        this.tenants = tenants;
+    }
+
+    /**
+     * @return how connections are switched to a tenant's schema
+     */
+    public TenantSwitch getTenantSwitch() {
+        return tenantSwitch;
+    }
+
+    /**
+     * @param tenantSwitch
+     *            how connections are switched to a tenant's schema
+     */
+    public void setTenantSwitch(TenantSwitch tenantSwitch) {
+        this.tenantSwitch = tenantSwitch;
+    }
+
+    /**
+     * @return true if the route has no tenants, or maps its own name to its default schema
+     */
+    @JsonIgnore
+    @ValidationMethod(message = "tenants must map the routeName to the route's default schema")
+    public boolean isDefaultTenantMapped() {
+        return null == tenants || tenants.isEmpty() || tenants.containsKey(routeName);
+    }
 }
@@ -0,0 +1,105 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Concurrency limit that follows the latency of a route, in the style of a gradient limiter.
+ * <p/>
+ * Each sample compares the sampled latency with a long-term average latency. While the sample stays within a
+ * tolerance of the average the limit grows by roughly its square root, up to the maximum; when latency rises
+ * beyond the tolerance the target limit shrinks in proportion, to no less than half the limit, down to the minimum.
+ * The limit only moves a fifth of the way to the target each sample, so one slow sample lowers it by about a tenth
+ * at most and a sustained rise takes several samples to halve it. Samples taken while less than half the limit is
+ * in use do not grow the limit, since they say nothing about what the route could take.
+ */
+public final class GradientLimit {
+    static final int LONG_WINDOW = 600;
+    static final double TOLERANCE = 1.5;
+    static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private double limit;
+    private double longLatency;
+
+    /**
+     * @param initialLimit
+     *            the initial limit
+     * @param minLimit
+     *            the lowest limit
+     * @param maxLimit
+     *            the highest limit
+     */
+    public GradientLimit(final int initialLimit, final int minLimit, final int maxLimit) {
+        checkArgument(0 < minLimit && minLimit <= maxLimit, "Invalid limits [%s, %s]", minLimit, maxLimit);
+        checkArgument(minLimit <= initialLimit && initialLimit <= maxLimit, "initialLimit %s not in [%s, %s]",
+                initialLimit, minLimit, maxLimit);
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Updates the limit with the latency of one unit of work.
+     * @param latencyNanos
+     *            the latency of the unit of work
+     * @param inFlight
+     *            the number of units of work in flight when it ended, itself included
+     * @return the new limit
+     */
+    public synchronized int onSample(final long latencyNanos, final int inFlight) {
+        if (0 >= latencyNanos) {
+            return getLimit();
+        }
+
+        if (0 == longLatency) {
+            longLatency = latencyNanos;
+        } else {
+            longLatency += (latencyNanos - longLatency) / LONG_WINDOW;
+        }
+        if (longLatency > 2 * latencyNanos) {
+            // latency recovered well below the average, most likely after overload; let the average catch up
+            longLatency = Math.max(latencyNanos, longLatency * 0.95);
+        }
+
+        final double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / latencyNanos));
+        if (1.0 == gradient && inFlight < limit / 2) {
+            return getLimit();
+        }
+
+        final double target = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + target * SMOOTHING));
+        return getLimit();
+    }
+
+    /**
+     * @return the current limit
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return the highest limit
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+}
@@ -0,0 +1,158 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One read replica of a route, such as its pooled data source, with the load, latency and replication lag a
+ * {@link ReplicaBalancer} chooses by.
+ * @param <V>
+ *            the replica value
+ */
+public final class Replica<V> {
+    static final double LATENCY_WEIGHT = 0.1;
+
+    private final String name;
+    private final V value;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double latencyNanos;
+    private volatile boolean available = true;
+    private volatile long lagMillis = -1;
+
+    /**
+     * @param name
+     *            the replica name, used for logging and metrics
+     * @param value
+     *            the replica value
+     */
+    public Replica(final String name, final V value) {
+        this.name = checkNotNull(name, "name is required");
+        this.value = checkNotNull(value, "value is required");
+    }
+
+    /**
+     * @return the replica name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the replica value
+     */
+    public V get() {
+        return value;
+    }
+
+    /**
+     * Counts a unit of work started on the replica.
+     */
+    public void acquire() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * Counts a unit of work finished on the replica and folds its latency into the replica's average.
+     * @param latencyNanos
+     *            the latency of the unit of work
+     */
+    public void release(final long latencyNanos) {
+        inFlight.decrementAndGet();
+        // concurrent updates may lose a sample, which an average can afford
+        final double average = this.latencyNanos;
+        this.latencyNanos = 0 == average ? latencyNanos : average + LATENCY_WEIGHT * (latencyNanos - average);
+    }
+
+    /**
+     * @return the number of units of work in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the exponentially weighted average latency, in nanoseconds, 0 until a unit of work finished
+     */
+    public double getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @return true unless the replica was taken out of rotation
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * @param available
+     *            false to take the replica out of rotation, true to put it back
+     */
+    public void setAvailable(final boolean available) {
+        this.available = available;
+    }
+
+    /**
+     * @return the last sampled replication lag, in milliseconds, or -1 if the lag is not sampled
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * @param lagMillis
+     *            the sampled replication lag, in milliseconds
+     */
+    public void setLagMillis(final long lagMillis) {
+        this.lagMillis = Math.max(0, lagMillis);
+    }
+
+    /**
+     * @param writeMillis
+     *            the time of a write on the primary
+     * @param nowMillis
+     *            the current time
+     * @param assumedLagMillis
+     *            the lag to assume if the lag is not sampled
+     * @return true if, going by its lag, the replica has replayed writes made at the given time
+     */
+    boolean isCaughtUpTo(final long writeMillis, final long nowMillis, final long assumedLagMillis) {
+        final long lag = lagMillis;
+        return nowMillis - (0 <= lag ? lag : assumedLagMillis) >= writeMillis;
+    }
+
+    /**
+     * @return the expected cost of sending one more unit of work to the replica, lower is better
+     */
+    double score() {
+        return (inFlight.get() + 1) * Math.max(1.0, latencyNanos);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Replica[" + name + "]";
+    }
+}
@@ -0,0 +1,144 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Chooses among the read replicas of a route by load and latency: the available replica with the lowest product of
+ * units of work in flight and average latency wins. Replicas without a measured latency are preferred until they
+ * have one. Ties go round robin.
+ * <p/>
+ * For read-your-writes consistency a choice can be restricted to replicas whose sampled lag shows they have replayed
+ * the writes made up to a given time, such as the time of a write the client saw; when none has, the caller reads
+ * from the primary. Within the write window after the route's last recorded write, every choice is restricted to
+ * replicas that have replayed that write. Replicas whose lag is not sampled are assumed to lag by the write window.
+ * @param <V>
+ *            the replica value
+ */
+public final class ReplicaBalancer<V> {
+    private final ImmutableList<Replica<V>> replicas;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong lastWriteMillis = new AtomicLong();
+    private final long writeWindowMillis;
+
+    /**
+     * @param replicas
+     *            the replicas
+     */
+    public ReplicaBalancer(final ImmutableList<Replica<V>> replicas) {
+        this(replicas, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param replicas
+     *            the replicas
+     * @param writeWindow
+     *            how long after a write on the route reads need a replica that has replayed it, 0 for no window
+     * @param unit
+     *            the unit of writeWindow
+     */
+    public ReplicaBalancer(final ImmutableList<Replica<V>> replicas, final long writeWindow, final TimeUnit unit) {
+        checkArgument(0 <= writeWindow, "writeWindow must not be negative");
+        this.replicas = checkNotNull(replicas, "replicas is required");
+        this.writeWindowMillis = unit.toMillis(writeWindow);
+    }
+
+    /**
+     * @return the replicas
+     */
+    public ImmutableList<Replica<V>> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Records a write on the route's primary.
+     * @param writeMillis
+     *            the time of the write
+     */
+    public void recordWrite(final long writeMillis) {
+        for (;;) {
+            final long last = lastWriteMillis.get();
+            if (writeMillis <= last || lastWriteMillis.compareAndSet(last, writeMillis)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the time of the route's last recorded write, 0 if none
+     */
+    public long getLastWriteMillis() {
+        return lastWriteMillis.get();
+    }
+
+    /**
+     * Chooses a replica. The caller should count its unit of work with {@link Replica#acquire()} and
+     * {@link Replica#release(long)}.
+     * @return the chosen {@link Replica}, or null if no replica is available
+     */
+    public Replica<V> choose() {
+        return choose(0);
+    }
+
+    /**
+     * Chooses a replica that has replayed the writes made up to a given time.
+     * @param writeMillis
+     *            the time of the latest write the read must see, 0 for none
+     * @return the chosen {@link Replica}, or null if no available replica has caught up
+     */
+    public Replica<V> choose(final long writeMillis) {
+        final int size = replicas.size();
+        if (0 == size) {
+            return null;
+        }
+
+        long notBeforeMillis = writeMillis;
+        long nowMillis = 0;
+        final long lastWrite = lastWriteMillis.get();
+        if (0 != notBeforeMillis || 0 != lastWrite) {
+            nowMillis = System.currentTimeMillis();
+            if (lastWrite > notBeforeMillis && nowMillis - lastWrite < writeWindowMillis) {
+                notBeforeMillis = lastWrite;
+            }
+        }
+
+        final int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+        Replica<V> best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            final Replica<V> replica = replicas.get((start + i) % size);
+            if (replica.isAvailable() && (0 == notBeforeMillis || replica.isCaughtUpTo(notBeforeMillis, nowMillis,
+                    writeWindowMillis))) {
+                final double score = replica.score();
+                if (score < bestScore) {
+                    best = replica;
+                    bestScore = score;
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,107 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Samples the replication lag of a {@link Replica} with a database specific query, to be run periodically.
+ * <p/>
+ * The query must return the lag in milliseconds in the first column of its first row; a NULL counts as no lag. A
+ * replica lagging by more than the maximum lag, or failing the query, is taken out of rotation until a later sample
+ * shows it caught up again.
+ */
+public class ReplicaLagSampler implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaLagSampler.class);
+
+    private final Replica<? extends DataSource> replica;
+    private final String lagQuery;
+    private final long maxLagMillis;
+
+    /**
+     * @param replica
+     *            the {@link Replica} to sample
+     * @param lagQuery
+     *            the query returning the replica's lag in milliseconds, e.g. on PostgreSQL 10 and later
+     *            {@code SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+     *            ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000 END}; the time since the
+     *            last replayed transaction alone keeps growing while the primary is idle, which would take an
+     *            up-to-date replica out of rotation
+     * @param maxLag
+     *            the lag beyond which the replica is taken out of rotation
+     * @param unit
+     *            the unit of maxLag
+     */
+    public ReplicaLagSampler(final Replica<? extends DataSource> replica, final String lagQuery, final long maxLag,
+            final TimeUnit unit) {
+        checkArgument(0 <= maxLag, "maxLag must not be negative");
+        this.replica = checkNotNull(replica, "replica is required");
+        this.lagQuery = checkNotNull(lagQuery, "lagQuery is required");
+        this.maxLagMillis = unit.toMillis(maxLag);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        final boolean wasAvailable = replica.isAvailable();
+        try {
+            final long lagMillis = sample();
+            replica.setLagMillis(lagMillis);
+            replica.setAvailable(lagMillis <= maxLagMillis);
+            if (wasAvailable && !replica.isAvailable()) {
+                LOGGER.warn("{} lags by {}ms, taking it out of rotation", replica, lagMillis);
+            } else if (!wasAvailable && replica.isAvailable()) {
+                LOGGER.info("{} caught up, putting it back into rotation", replica);
+            }
+        } catch (SQLException | RuntimeException e) {
+            // a scheduled task that throws is never run again
+            replica.setAvailable(false);
+            if (wasAvailable) {
+                LOGGER.warn("Failed to sample the lag of {}, taking it out of rotation", replica, e);
+            }
+        }
+    }
+
+    private long sample() throws SQLException {
+        try (Connection connection = replica.get().getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet result = statement.executeQuery(lagQuery)) {
+            if (!result.next()) {
+                throw new SQLException("Lag query returned no row: " + lagQuery);
+            }
+            final long lagMillis = result.getLong(1);
+            return result.wasNull() ? 0 : Math.max(0, lagMillis);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+/**
+ * Resolved handle for a route within a {@link RouteTable}. The ordinal is dense within its table and is used to index
+ * per-route arrays. Handles are compared by identity; a handle is only valid for the table that created it.
+ */
+public final class Route {
+    private final String name;
+    private final int ordinal;
+
+    Route(final String name, final int ordinal) {
+        this.name = name;
+        this.ordinal = ordinal;
+    }
+
+    /**
+     * @return the route name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the ordinal of the route within its {@link RouteTable}
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Route[" + name + "#" + ordinal + "]";
+    }
+}
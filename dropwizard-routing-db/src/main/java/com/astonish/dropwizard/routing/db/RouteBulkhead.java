@@ -0,0 +1,167 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of requests concurrently in flight on one route.
+ * <p/>
+ * Permits are taken with a compare-and-set on the in-flight count, so requests under the limit never lock. Requests
+ * over the limit wait in a bounded queue, blocking their thread for at most the maximum wait, and are rejected when
+ * the queue is full or the wait runs out. The limit may be changed at any time; lowering it lets in-flight requests
+ * finish and only holds back new ones.
+ */
+public final class RouteBulkhead {
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final int maxQueued;
+    private final long maxWaitNanos;
+    private volatile int limit;
+
+    /**
+     * @param limit
+     *            the maximum number of requests in flight
+     * @param maxQueued
+     *            the maximum number of requests waiting for a permit, 0 rejects as soon as the limit is reached
+     * @param maxWait
+     *            the maximum time a request waits for a permit
+     * @param unit
+     *            the unit of maxWait
+     */
+    public RouteBulkhead(final int limit, final int maxQueued, final long maxWait, final TimeUnit unit) {
+        checkArgument(0 <= maxQueued, "maxQueued must not be negative");
+        checkArgument(0 <= maxWait, "maxWait must not be negative");
+        setLimit(limit);
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+    }
+
+    /**
+     * Takes a permit if one is free, without waiting.
+     * @return true if a permit was taken and must be handed back with {@link #release()}
+     */
+    public boolean tryAcquire() {
+        for (;;) {
+            final int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Takes a permit, waiting in the queue if none is free.
+     * @return true if a permit was taken and must be handed back with {@link #release()}, false if the request was
+     *         rejected
+     */
+    public boolean acquire() {
+        if (tryAcquire()) {
+            return true;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        try {
+            final long deadline = System.nanoTime() + maxWaitNanos;
+            synchronized (this) {
+                long remaining = maxWaitNanos;
+                while (!tryAcquire()) {
+                    if (0 >= remaining) {
+                        rejected.incrementAndGet();
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    remaining = deadline - System.nanoTime();
+                }
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.incrementAndGet();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * Hands back a permit taken with {@link #acquire()} or {@link #tryAcquire()}.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+        if (0 < queued.get()) {
+            synchronized (this) {
+                notify();
+            }
+        }
+    }
+
+    /**
+     * @return the maximum number of requests in flight
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param limit
+     *            the maximum number of requests in flight
+     */
+    public void setLimit(final int limit) {
+        checkArgument(0 < limit, "limit must be positive");
+        this.limit = limit;
+        if (0 < queued.get()) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the number of requests in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the number of requests waiting for a permit
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * @return the number of requests rejected so far
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,159 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds a {@link RouteBulkhead} per route of a {@link RouteRegistry}, indexed by route ordinal, following the
+ * registry as routes are added and removed. Aliases resolve to the bulkhead of their route, so all keys served by one
+ * connection pool share one limit.
+ * <p/>
+ * Limits are set per route name and remembered, so a route added later under a configured name gets its configured
+ * limit; other routes get the default limit.
+ */
+public class RouteBulkheads implements RouteRegistry.Listener {
+    private final ConcurrentMap<String, Integer> limits = new ConcurrentHashMap<>();
+    private final int defaultLimit;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+    private volatile State state = new State(RouteTable.empty(), new RouteBulkhead[0]);
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} to follow
+     * @param defaultLimit
+     *            the limit of routes without a configured limit
+     * @param maxQueued
+     *            the maximum number of requests waiting per route, 0 rejects as soon as the limit is reached
+     * @param maxWait
+     *            the maximum time a request waits for a permit
+     * @param unit
+     *            the unit of maxWait
+     */
+    public RouteBulkheads(final RouteRegistry<?> registry, final int defaultLimit, final int maxQueued,
+            final long maxWait, final TimeUnit unit) {
+        checkNotNull(registry, "registry is required");
+        checkArgument(0 < defaultLimit, "defaultLimit must be positive");
+        this.defaultLimit = defaultLimit;
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+
+        registry.addListener(this);
+        onRoutesChanged(registry.getRouteTable());
+    }
+
+    /**
+     * Sets the limit of a route, now if the route is live and whenever a route of the name is added.
+     * @param routeName
+     *            the route name
+     * @param limit
+     *            the maximum number of requests in flight on the route
+     */
+    public void setLimit(final String routeName, final int limit) {
+        checkArgument(0 < limit, "limit must be positive");
+        limits.put(checkNotNull(routeName, "routeName is required"), limit);
+
+        final RouteBulkhead bulkhead = get(routeName);
+        if (null != bulkhead) {
+            bulkhead.setLimit(limit);
+        }
+    }
+
+    /**
+     * @param context
+     *            the {@link RouteContext} of the request
+     * @return the {@link RouteBulkhead} of the context's route, or null if the context has no known route
+     */
+    public RouteBulkhead get(final RouteContext context) {
+        final State current = state;
+        final Route route = current.table.resolve(context);
+        return null == route ? null : current.bulkheads[route.getOrdinal()];
+    }
+
+    /**
+     * @param route
+     *            the route
+     * @return the {@link RouteBulkhead} of a live or draining route, or null if the route is not in the current table
+     */
+    public RouteBulkhead get(final Route route) {
+        final State current = state;
+        return current.table.contains(route) ? current.bulkheads[route.getOrdinal()] : null;
+    }
+
+    /**
+     * @param name
+     *            the route name or alias
+     * @return the {@link RouteBulkhead} of the live route, or null if unknown
+     */
+    public RouteBulkhead get(final String name) {
+        final State current = state;
+        final Route route = current.table.get(name);
+        return null == route ? null : current.bulkheads[route.getOrdinal()];
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.astonish.dropwizard.routing.db.RouteRegistry.Listener#onRoutesChanged(RouteTable)
+     */
+    @Override
+    public synchronized void onRoutesChanged(final RouteTable routes) {
+        final State current = state;
+        final RouteBulkhead[] bulkheads = new RouteBulkhead[routes.capacity()];
+        for (int ordinal = 0; ordinal < bulkheads.length; ordinal++) {
+            final Route route = routes.get(ordinal);
+            if (null == route) {
+                continue;
+            }
+            if (ordinal < current.bulkheads.length && current.table.contains(route)) {
+                bulkheads[ordinal] = current.bulkheads[ordinal];
+            } else {
+                bulkheads[ordinal] = newBulkhead(route.getName());
+            }
+        }
+        this.state = new State(routes, bulkheads);
+    }
+
+    /**
+     * Creates the {@link RouteBulkhead} of a newly added route.
+     * @param routeName
+     *            the route name
+     * @return the {@link RouteBulkhead}
+     */
+    protected RouteBulkhead newBulkhead(final String routeName) {
+        final Integer limit = limits.get(routeName);
+        return new RouteBulkhead(null == limit ? defaultLimit : limit, maxQueued, maxWaitNanos,
+                TimeUnit.NANOSECONDS);
+    }
+
+    private static final class State {
+        private final RouteTable table;
+        private final RouteBulkhead[] bulkheads;
+
+        State(final RouteTable table, final RouteBulkhead[] bulkheads) {
+            this.table = table;
+            this.bulkheads = bulkheads;
+        }
+    }
+}
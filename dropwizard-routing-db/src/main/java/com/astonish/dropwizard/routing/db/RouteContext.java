@@ -0,0 +1,208 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mutable per-thread routing state held by the {@link RouteStore}. The route lives in a dedicated field so that
+ * setting and reading it never touches a map; the attribute map is only allocated the first time an attribute is
+ * stored.
+ * <p/>
+ * A context shared between threads by the {@link RouteStore.Backend#SCOPED} backend is read-only: writes fail with an
+ * {@link IllegalStateException}, and the {@link RouteStore} binds a writable copy of it the first time a thread writes
+ * through the store.
+ */
+public final class RouteContext {
+    private String route;
+    private Route resolvedRoute;
+    private Map<String, Object> attributes;
+    private boolean stale;
+    private volatile boolean readOnly;
+
+    RouteContext() {
+
+    }
+
+    /**
+     * @return the current route, or null if none has been set
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * @param route
+     *            the route to set
+     */
+    public void setRoute(final String route) {
+        checkWritable();
+        if (null != resolvedRoute && !resolvedRoute.getName().equals(route)) {
+            resolvedRoute = null;
+        }
+        this.route = route;
+        this.stale = false;
+    }
+
+    /**
+     * Sets an already resolved route, sparing readers the lookup of its name. Named apart from
+     * {@link #setRoute(String)} so that {@code setRoute(null)} stays unambiguous.
+     * @param route
+     *            the resolved {@link Route}
+     */
+    public void setResolvedRoute(final Route route) {
+        setRoute(route.getName(), route);
+    }
+
+    /**
+     * Sets a route key together with the {@link Route} it was resolved to, which differs from the key for aliases.
+     * @param route
+     *            the route key
+     * @param resolvedRoute
+     *            the resolved {@link Route}
+     */
+    public void setRoute(final String route, final Route resolvedRoute) {
+        checkWritable();
+        this.route = route;
+        this.resolvedRoute = resolvedRoute;
+        this.stale = false;
+    }
+
+    /**
+     * @return the {@link Route} handle last resolved for the current route, or null
+     */
+    public Route getResolvedRoute() {
+        return resolvedRoute;
+    }
+
+    /**
+     * Caches the resolved {@link Route} handle for the current route. This is the one write allowed on a read-only
+     * context; {@link Route} handles are immutable and every
+     * thread caches the same handle for the same route, so the race is benign.
+     * @param resolvedRoute
+     *            the resolved {@link Route}
+     */
+    void cacheResolvedRoute(final Route resolvedRoute) {
+        this.resolvedRoute = resolvedRoute;
+    }
+
+    /**
+     * Retrieves an attribute stored alongside the route.
+     * @param name
+     *            the attribute name
+     * @return the attribute value, or null if not present
+     */
+    public Object getAttribute(final String name) {
+        return null == attributes ? null : attributes.get(name);
+    }
+
+    /**
+     * Stores an attribute alongside the route.
+     * @param name
+     *            the attribute name
+     * @param value
+     *            the attribute value, null removes the attribute
+     */
+    public void setAttribute(final String name, final Object value) {
+        checkWritable();
+        if (null == value) {
+            removeAttribute(name);
+            return;
+        }
+
+        if (null == attributes) {
+            attributes = new HashMap<>();
+        }
+        attributes.put(name, value);
+    }
+
+    /**
+     * Removes an attribute.
+     * @param name
+     *            the attribute name
+     */
+    public void removeAttribute(final String name) {
+        checkWritable();
+        if (null != attributes) {
+            attributes.remove(name);
+        }
+    }
+
+    /**
+     * @return true if the request this context was bound for has ended, see {@link RouteStore#setStaleReadDetection}
+     */
+    boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Marks the context as left over from an ended request.
+     */
+    void markStale() {
+        this.stale = true;
+    }
+
+    /**
+     * @return true if the context is shared between threads and can no longer be written
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Makes the context read-only, for sharing it between threads without copying it.
+     * @return this context
+     */
+    RouteContext makeReadOnly() {
+        this.readOnly = true;
+        return this;
+    }
+
+    private void checkWritable() {
+        checkState(!readOnly, "RouteContext of Route[%s] is read-only", route);
+    }
+
+    /**
+     * @return an independent, writable copy of this context, for handing the route to another thread
+     */
+    public RouteContext copy() {
+        final RouteContext copy = new RouteContext();
+        copy.route = route;
+        copy.resolvedRoute = resolvedRoute;
+        if (null != attributes && !attributes.isEmpty()) {
+            copy.attributes = new HashMap<>(attributes);
+        }
+        return copy;
+    }
+
+    /**
+     * Clears the route and all attributes, keeping the attribute map for reuse.
+     */
+    public void clear() {
+        checkWritable();
+        route = null;
+        resolvedRoute = null;
+        stale = false;
+        if (null != attributes) {
+            attributes.clear();
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Shares the capacity of the service between routes by weighted fair queuing, so that when it is saturated routes of
+ * a higher tier keep a low latency while no route starves.
+ * <p/>
+ * Requests beyond the capacity wait in one bounded queue. Each route is a flow weighted by its tier: a queued
+ * request is tagged with a virtual finish time one over the weight after the later of its route's previous tag and
+ * the current virtual time, and a freed permit goes to the request with the earliest tag (self-clocked fair
+ * queuing). A route of weight 4 thus gets four times the share of a route of weight 1 while both are backlogged,
+ * and an idle route never banks credit.
+ * <p/>
+ * Routes are assigned a tier per route name, remembered so that routes added later keep theirs. Per tier, the queue
+ * depth is published as a gauge named {@code tiers.<tier>.queued}, the time spent waiting as a timer named
+ * {@code tiers.<tier>.wait} and rejections as a meter named {@code tiers.<tier>.rejected}.
+ */
+public class RouteFairQueue implements RouteRegistry.Listener {
+    static final String PREFIX = "tiers";
+
+    private final int capacity;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+    private final ImmutableMap<String, Tier> tiers;
+    private final Tier defaultTier;
+    private final ConcurrentMap<String, String> routeTiers = new ConcurrentHashMap<>();
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>();
+    private volatile State state = new State(RouteTable.empty(), new Flow[0]);
+    private int inFlight;
+    private double virtualTime;
+    private long sequence;
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} to follow
+     * @param capacity
+     *            the maximum number of requests in flight across all routes
+     * @param maxQueued
+     *            the maximum number of requests waiting across all routes
+     * @param maxWait
+     *            the maximum time a request waits for a permit
+     * @param unit
+     *            the unit of maxWait
+     * @param weights
+     *            the weight of each tier
+     * @param defaultTier
+     *            the tier of routes without a configured tier
+     * @param metrics
+     *            the {@link MetricRegistry} to publish the tier metrics to
+     */
+    public RouteFairQueue(final RouteRegistry<?> registry, final int capacity, final int maxQueued,
+            final long maxWait, final TimeUnit unit, final ImmutableMap<String, Integer> weights,
+            final String defaultTier, final MetricRegistry metrics) {
+        checkNotNull(registry, "registry is required");
+        checkNotNull(metrics, "metrics is required");
+        checkArgument(0 < capacity, "capacity must be positive");
+        checkArgument(0 <= maxQueued, "maxQueued must not be negative");
+        checkArgument(weights.containsKey(defaultTier), "Unknown tier[%s]", defaultTier);
+        this.capacity = capacity;
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+
+        final ImmutableMap.Builder<String, Tier> bldr = ImmutableMap.builder();
+        for (Entry<String, Integer> e : weights.entrySet()) {
+            bldr.put(e.getKey(), new Tier(e.getKey(), e.getValue(), metrics));
+        }
+        this.tiers = bldr.build();
+        this.defaultTier = tiers.get(defaultTier);
+
+        registry.addListener(this);
+        onRoutesChanged(registry.getRouteTable());
+    }
+
+    /**
+     * Sets the tier of a route, now if the route is live and whenever a route of the name is added.
+     * @param routeName
+     *            the route name
+     * @param tier
+     *            the tier
+     * @throws IllegalArgumentException
+     *             if the tier is unknown
+     */
+    public synchronized void setTier(final String routeName, final String tier) {
+        checkArgument(tiers.containsKey(tier), "Unknown tier[%s]", tier);
+        routeTiers.put(checkNotNull(routeName, "routeName is required"), tier);
+
+        final State current = state;
+        final Route route = current.table.get(routeName);
+        if (null != route && route.getName().equals(routeName)) {
+            current.flows[route.getOrdinal()].tier = tiers.get(tier);
+        }
+    }
+
+    /**
+     * @param tier
+     *            the tier name
+     * @return the {@link Tier}, or null if unknown
+     */
+    public Tier getTier(final String tier) {
+        return tiers.get(tier);
+    }
+
+    /**
+     * @param context
+     *            the {@link RouteContext} of the request
+     * @return the {@link Flow} of the context's route, or null if the context has no known route
+     */
+    public Flow get(final RouteContext context) {
+        final State current = state;
+        final Route route = current.table.resolve(context);
+        return null == route ? null : current.flows[route.getOrdinal()];
+    }
+
+    /**
+     * @param route
+     *            the route
+     * @return the {@link Flow} of a live or draining route, or null if the route is not in the current table
+     */
+    public Flow get(final Route route) {
+        final State current = state;
+        return current.table.contains(route) ? current.flows[route.getOrdinal()] : null;
+    }
+
+    private boolean acquire(final Flow flow) {
+        final Tier tier = flow.tier;
+        final Waiter waiter;
+        synchronized (this) {
+            if (inFlight < capacity && queue.isEmpty()) {
+                inFlight++;
+                tier.wait.update(0, TimeUnit.NANOSECONDS);
+                return true;
+            }
+            if (queue.size() >= maxQueued || 0 >= maxWaitNanos) {
+                tier.rejected.mark();
+                return false;
+            }
+
+            flow.lastFinish = Math.max(virtualTime, flow.lastFinish) + 1.0 / tier.weight;
+            waiter = new Waiter(tier, flow.lastFinish, sequence++);
+            queue.add(waiter);
+            tier.queued.incrementAndGet();
+        }
+
+        final long start = System.nanoTime();
+        final long deadline = start + maxWaitNanos;
+        try {
+            synchronized (waiter) {
+                long remaining = maxWaitNanos;
+                while (!waiter.granted && 0 < remaining) {
+                    TimeUnit.NANOSECONDS.timedWait(waiter, remaining);
+                    remaining = deadline - System.nanoTime();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            if (!waiter.granted) {
+                queue.remove(waiter);
+                tier.queued.decrementAndGet();
+                tier.rejected.mark();
+                return false;
+            }
+        }
+        tier.wait.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    private void release() {
+        final Waiter next;
+        synchronized (this) {
+            next = queue.poll();
+            if (null == next) {
+                inFlight--;
+                return;
+            }
+            next.granted = true;
+            next.tier.queued.decrementAndGet();
+            virtualTime = next.finish;
+        }
+        synchronized (next) {
+            next.notify();
+        }
+    }
+
+    /**
+     * @return the number of requests in flight
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the number of requests waiting for a permit
+     */
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.astonish.dropwizard.routing.db.RouteRegistry.Listener#onRoutesChanged(RouteTable)
+     */
+    @Override
+    public synchronized void onRoutesChanged(final RouteTable routes) {
+        final State current = state;
+        final Flow[] flows = new Flow[routes.capacity()];
+        for (int ordinal = 0; ordinal < flows.length; ordinal++) {
+            final Route route = routes.get(ordinal);
+            if (null == route) {
+                continue;
+            }
+            if (ordinal < current.flows.length && current.table.contains(route)) {
+                flows[ordinal] = current.flows[ordinal];
+            } else {
+                final String tier = routeTiers.get(route.getName());
+                flows[ordinal] = new Flow(null == tier ? defaultTier : tiers.get(tier));
+            }
+        }
+        this.state = new State(routes, flows);
+    }
+
+    /**
+     * A priority tier, its weight and its metrics.
+     */
+    public static final class Tier {
+        private final String name;
+        private final int weight;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final Timer wait;
+        private final Meter rejected;
+
+        Tier(final String name, final int weight, final MetricRegistry metrics) {
+            checkArgument(0 < weight, "The weight of tier[%s] must be positive", name);
+            this.name = name;
+            this.weight = weight;
+            this.wait = metrics.timer(MetricRegistry.name(PREFIX, name, "wait"));
+            this.rejected = metrics.meter(MetricRegistry.name(PREFIX, name, "rejected"));
+            final String gauge = MetricRegistry.name(PREFIX, name, "queued");
+            metrics.remove(gauge);
+            metrics.register(gauge, new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return queued.get();
+                }
+            });
+        }
+
+        /**
+         * @return the tier name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the weight of each route of the tier
+         */
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * @return the number of requests of the tier waiting for a permit
+         */
+        public int getQueued() {
+            return queued.get();
+        }
+
+        /**
+         * @return the time requests of the tier waited for a permit
+         */
+        public Timer getWait() {
+            return wait;
+        }
+
+        /**
+         * @return the requests of the tier rejected
+         */
+        public Meter getRejected() {
+            return rejected;
+        }
+    }
+
+    /**
+     * The fair queuing flow of one route. Its virtual finish time is guarded by the queue.
+     */
+    public final class Flow {
+        private volatile Tier tier;
+        private double lastFinish;
+
+        Flow(final Tier tier) {
+            this.tier = tier;
+        }
+
+        /**
+         * @return the {@link Tier} of the route
+         */
+        public Tier getTier() {
+            return tier;
+        }
+
+        /**
+         * Takes a permit, waiting in the queue in fair order if the capacity is used up.
+         * @return true if a permit was taken and must be handed back with {@link #release()}, false if the request
+         *         was rejected
+         */
+        public boolean acquire() {
+            return RouteFairQueue.this.acquire(this);
+        }
+
+        /**
+         * Hands back a permit taken with {@link #acquire()}, passing it on to the queued request with the earliest
+         * virtual finish time.
+         */
+        public void release() {
+            RouteFairQueue.this.release();
+        }
+    }
+
+    private static final class Waiter implements Comparable<Waiter> {
+        private final Tier tier;
+        private final double finish;
+        private final long sequence;
+        private volatile boolean granted;
+
+        Waiter(final Tier tier, final double finish, final long sequence) {
+            this.tier = tier;
+            this.finish = finish;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(final Waiter other) {
+            final int byFinish = Double.compare(finish, other.finish);
+            return 0 != byFinish ? byFinish : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class State {
+        private final RouteTable table;
+        private final Flow[] flows;
+
+        State(final RouteTable table, final Flow[] flows) {
+            this.table = table;
+            this.flows = flows;
+        }
+    }
+}
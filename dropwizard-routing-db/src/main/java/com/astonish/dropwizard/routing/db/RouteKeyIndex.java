@@ -0,0 +1,189 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Interning table canonicalizing raw route keys against the route names and aliases of a {@link RouteTable}.
+ * <p/>
+ * A raw key is trimmed and, optionally, case-folded while it is hashed and compared in place, so a lookup never
+ * allocates: a match yields the canonical key, whose hash is cached, and the {@link Route} it resolves to, which
+ * carries its ordinal. An alias yields itself as the key and the aliased route's handle.
+ */
+public final class RouteKeyIndex {
+    private final RouteTable table;
+    private final boolean foldCase;
+    private final String[] keys;
+    private final Route[] routes;
+    private final int[] hashes;
+    private final int mask;
+
+    private RouteKeyIndex(final RouteTable table, final boolean foldCase) {
+        this.table = table;
+        this.foldCase = foldCase;
+
+        int capacity = 2;
+        while (capacity < table.keys().size() * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new String[capacity];
+        this.routes = new Route[capacity];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+
+        for (String key : table.keys()) {
+            checkArgument(key.equals(key.trim()), "Route[%s] has surrounding whitespace", key);
+            final int existing = indexOf(key);
+            checkArgument(-1 == existing, "Route[%s] collides with Route[%s] when case is ignored", key,
+                    -1 == existing ? null : keys[existing]);
+
+            final int hash = hash(key, 0, key.length());
+            int slot = hash & mask;
+            while (null != keys[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            routes[slot] = table.get(key);
+            hashes[slot] = hash;
+        }
+    }
+
+    /**
+     * @param table
+     *            the {@link RouteTable}
+     * @param foldCase
+     *            true to match keys regardless of case
+     * @return a {@link RouteKeyIndex} of the route names and aliases of the table
+     * @throws IllegalArgumentException
+     *             if two keys only differ in case and foldCase is set
+     */
+    public static RouteKeyIndex of(final RouteTable table, final boolean foldCase) {
+        return new RouteKeyIndex(checkNotNull(table, "table is required"), foldCase);
+    }
+
+    /**
+     * @return the {@link RouteTable} this index was built from
+     */
+    public RouteTable getTable() {
+        return table;
+    }
+
+    /**
+     * @return true if keys are matched regardless of case
+     */
+    public boolean isFoldCase() {
+        return foldCase;
+    }
+
+    /**
+     * Canonicalizes a raw route key.
+     * @param key
+     *            the raw key, possibly with surrounding whitespace
+     * @return the live {@link Route} the key resolves to, or null if the key is null, blank or unknown
+     */
+    public Route lookup(final String key) {
+        final int slot = indexOf(key);
+        return -1 == slot ? null : routes[slot];
+    }
+
+    /**
+     * Finds the slot of a raw route key, for callers needing both the canonical key and its {@link Route}.
+     * @param key
+     *            the raw key, possibly with surrounding whitespace
+     * @return the slot of the key, or -1 if the key is null, blank or unknown
+     * @see #keyAt(int)
+     * @see #routeAt(int)
+     */
+    public int indexOf(final String key) {
+        if (null == key) {
+            return -1;
+        }
+
+        int start = 0;
+        int end = key.length();
+        while (start < end && key.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && key.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        final int length = end - start;
+        if (0 == length) {
+            return -1;
+        }
+
+        final int hash = hash(key, start, end);
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            final String candidate = keys[slot];
+            if (null == candidate) {
+                return -1;
+            }
+            if (hashes[slot] == hash && candidate.length() == length
+                    && candidate.regionMatches(foldCase, 0, key, start, length)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * @param slot
+     *            a slot returned by {@link #indexOf(String)}
+     * @return the canonical route name or alias in the slot
+     */
+    public String keyAt(final int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * @param slot
+     *            a slot returned by {@link #indexOf(String)}
+     * @return the {@link Route} the key in the slot resolves to
+     */
+    public Route routeAt(final int slot) {
+        return routes[slot];
+    }
+
+    /**
+     * @param key
+     *            the raw key
+     * @return true if the key is null or only whitespace, which {@link #lookup(String)} treats as no key at all
+     */
+    public static boolean isBlank(final String key) {
+        if (null != key) {
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) > ' ') {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private int hash(final String key, final int start, final int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            final char c = key.charAt(i);
+            // the same folding as String.regionMatches(true, ...)
+            hash = 31 * hash + (foldCase ? Character.toLowerCase(Character.toUpperCase(c)) : c);
+        }
+        // spread the low bits used for the slot
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,197 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Longest-prefix index over the route names and aliases of a {@link RouteTable}, for hierarchical route keys such as
+ * {@code region/brand/store}.
+ * <p/>
+ * A key resolves to the route of its longest configured prefix ending on a segment boundary, so that a whole brand
+ * can be routed to one database with a few of its stores split out. The index is a trie flattened into one open
+ * addressing table: every configured key is stored together with each of its segment prefixes, the inner nodes. A
+ * lookup hashes the key incrementally, probing the table at each boundary, and stops at the first prefix that is no
+ * node at all, so it runs in time linear in the key and does not allocate.
+ */
+public final class RoutePrefixIndex {
+    private final RouteTable table;
+    private final char separator;
+    private final String[] prefixes;
+    private final Route[] routes;
+    private final int[] hashes;
+    private final int mask;
+
+    private RoutePrefixIndex(final RouteTable table, final char separator) {
+        this.table = table;
+        this.separator = separator;
+
+        int nodes = 0;
+        for (String key : table.keys()) {
+            nodes++;
+            for (int i = 0; i < key.length(); i++) {
+                if (separator == key.charAt(i)) {
+                    nodes++;
+                }
+            }
+        }
+        int capacity = 2;
+        while (capacity < nodes * 2) {
+            capacity <<= 1;
+        }
+        this.prefixes = new String[capacity];
+        this.routes = new Route[capacity];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+
+        for (String key : table.keys()) {
+            for (int i = 0; i < key.length(); i++) {
+                if (separator == key.charAt(i)) {
+                    node(key.substring(0, i));
+                }
+            }
+            routes[node(key)] = table.get(key);
+        }
+    }
+
+    /**
+     * @param table
+     *            the {@link RouteTable}
+     * @param separator
+     *            the separator of key segments
+     * @return a {@link RoutePrefixIndex} of the route names and aliases of the table
+     */
+    public static RoutePrefixIndex of(final RouteTable table, final char separator) {
+        return new RoutePrefixIndex(checkNotNull(table, "table is required"), separator);
+    }
+
+    /**
+     * @return the {@link RouteTable} this index was built from
+     */
+    public RouteTable getTable() {
+        return table;
+    }
+
+    /**
+     * @return the separator of key segments
+     */
+    public char getSeparator() {
+        return separator;
+    }
+
+    /**
+     * @param key
+     *            the route key
+     * @return the live {@link Route} of the longest route name or alias that is a prefix of the key, or null if none
+     */
+    public Route lookup(final String key) {
+        final int slot = indexOf(key);
+        return -1 == slot ? null : routes[slot];
+    }
+
+    /**
+     * Finds the slot of the longest route name or alias that is a prefix of a key.
+     * @param key
+     *            the route key
+     * @return the slot of the longest matching prefix, or -1 if the key is null or no prefix matches
+     * @see #keyAt(int)
+     * @see #routeAt(int)
+     */
+    public int indexOf(final String key) {
+        if (null == key) {
+            return -1;
+        }
+
+        int longest = -1;
+        int hash = 0;
+        final int length = key.length();
+        for (int i = 0; i <= length; i++) {
+            if (i == length || separator == key.charAt(i)) {
+                final int slot = find(key, i, hash);
+                if (-1 == slot) {
+                    // no configured key continues this prefix
+                    break;
+                }
+                if (null != routes[slot]) {
+                    longest = slot;
+                }
+            }
+            if (i < length) {
+                hash = 31 * hash + key.charAt(i);
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * @param slot
+     *            a slot returned by {@link #indexOf(String)}
+     * @return the route name or alias in the slot
+     */
+    public String keyAt(final int slot) {
+        return prefixes[slot];
+    }
+
+    /**
+     * @param slot
+     *            a slot returned by {@link #indexOf(String)}
+     * @return the {@link Route} the key in the slot resolves to
+     */
+    public Route routeAt(final int slot) {
+        return routes[slot];
+    }
+
+    /**
+     * @return the slot of the first length chars of key, or -1 if they are not a node
+     */
+    private int find(final String key, final int length, final int hash) {
+        final int spread = spread(hash);
+        for (int slot = spread & mask;; slot = (slot + 1) & mask) {
+            final String candidate = prefixes[slot];
+            if (null == candidate) {
+                return -1;
+            }
+            if (hashes[slot] == spread && candidate.length() == length && key.startsWith(candidate)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * @return the slot of a node, added if missing
+     */
+    private int node(final String prefix) {
+        final int existing = find(prefix, prefix.length(), prefix.hashCode());
+        if (-1 != existing) {
+            return existing;
+        }
+
+        final int spread = spread(prefix.hashCode());
+        int slot = spread & mask;
+        while (null != prefixes[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        prefixes[slot] = prefix;
+        hashes[slot] = spread;
+        return slot;
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,162 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carries the current route to work run on other threads.
+ * <p/>
+ * The {@link RouteStore} is thread bound, so a task handed to an {@link Executor} would otherwise run without a route,
+ * or with whatever route the pool thread last served. The wrappers here copy the submitting thread's
+ * {@link RouteContext} when the task is wrapped and install it around the task; the thread's own context is put back
+ * afterwards, so tasks run on the calling thread (direct executors, caller-runs rejection) leave its route intact.
+ * <p/>
+ * Asynchronous completions are covered the same way: wrap the {@link Runnable} or {@link Callable} handed to a
+ * future, or run the work of a suspended {@code AsyncResponse} on a {@link #wrap(ExecutorService) wrapped executor}.
+ * <p/>
+ * Only the route is carried over. The Hibernate session of a unit of work is bound to the request thread, so a DAO
+ * reached through the route in a task finds no current session: the task must open its own session on the route's
+ * {@code SessionFactory}, and its own transaction, and close them before it ends. The request's unit of work may
+ * already be committed and its session closed by the time the task runs.
+ */
+public final class RoutePropagation {
+    private RoutePropagation() {
+
+    }
+
+    /**
+     * @param task
+     *            the task
+     * @return a {@link Runnable} running the task with the current route
+     */
+    public static Runnable wrap(final Runnable task) {
+        checkNotNull(task, "task is required");
+        final RouteContext captured = capture();
+        return new Runnable() {
+            @Override
+            public void run() {
+                RouteStore.getInstance().runWith(orEmpty(captured), task);
+            }
+        };
+    }
+
+    /**
+     * @param task
+     *            the task
+     * @return a {@link Callable} calling the task with the current route
+     */
+    public static <T> Callable<T> wrap(final Callable<T> task) {
+        checkNotNull(task, "task is required");
+        final RouteContext captured = capture();
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return RouteStore.getInstance().callWith(orEmpty(captured), task);
+            }
+        };
+    }
+
+    /**
+     * @param executor
+     *            the {@link Executor}
+     * @return an {@link Executor} running each task with the route of the thread that submitted it
+     */
+    public static Executor wrap(final Executor executor) {
+        checkNotNull(executor, "executor is required");
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executor.execute(wrap(command));
+            }
+        };
+    }
+
+    /**
+     * @param executor
+     *            the {@link ExecutorService}
+     * @return an {@link ExecutorService} running each task with the route of the thread that submitted it; shutting
+     *         it down shuts down the wrapped executor
+     */
+    public static ExecutorService wrap(final ExecutorService executor) {
+        return new RoutePropagatingExecutorService(checkNotNull(executor, "executor is required"));
+    }
+
+    private static RouteContext capture() {
+        final RouteStore store = RouteStore.getInstance();
+        return store.snapshot(store.peek());
+    }
+
+    /**
+     * The context a wrapped task runs with, bound through {@link RouteStore#callWith(RouteContext, Callable)} so that
+     * one task run more than once or concurrently never writes to a context shared between threads. Nothing captured
+     * runs with an empty context, hiding any route left on the thread.
+     */
+    private static RouteContext orEmpty(final RouteContext captured) {
+        return null == captured ? new RouteContext() : captured;
+    }
+
+    /**
+     * {@link ExecutorService} capturing the route in {@link #execute(Runnable)}, through which all submissions of
+     * {@link AbstractExecutorService} pass on the submitting thread.
+     */
+    private static final class RoutePropagatingExecutorService extends AbstractExecutorService {
+        private final ExecutorService delegate;
+
+        RoutePropagatingExecutorService(final ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(wrap(command));
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
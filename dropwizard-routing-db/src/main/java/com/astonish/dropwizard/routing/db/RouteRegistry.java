@@ -0,0 +1,306 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Holds the current {@link RouteTable} together with a value per route, such as the route's SessionFactory, and
+ * allows routes to be added and removed at runtime.
+ * <p/>
+ * The table and the values are published together as one immutable snapshot through a single volatile field, so
+ * readers never lock and always see a consistent view. Writers are serialized. {@link Listener}s are told about each
+ * new table before it is published, so that they can prepare their own per-route state.
+ * <p/>
+ * Units of work are counted per route through {@link #acquire(RouteContext)} and {@link #release(Route)}; removing
+ * a route waits for the count to drop to zero before the route's value is handed back to be closed.
+ * @param <V>
+ *            the per-route value
+ */
+public class RouteRegistry<V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RouteRegistry.class);
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot<V> snapshot;
+
+    /**
+     * @param values
+     *            the per-route values keyed by route name, in ordinal order
+     */
+    public RouteRegistry(final ImmutableMap<String, V> values) {
+        checkNotNull(values, "values is required");
+
+        final RouteTable table = RouteTable.of(values.keySet());
+        final Object[] routeValues = new Object[table.capacity()];
+        final AtomicInteger[] inFlight = new AtomicInteger[table.capacity()];
+        for (Entry<String, V> e : values.entrySet()) {
+            final int ordinal = table.get(e.getKey()).getOrdinal();
+            routeValues[ordinal] = checkNotNull(e.getValue());
+            inFlight[ordinal] = new AtomicInteger();
+        }
+        this.snapshot = new Snapshot<>(table, routeValues, inFlight);
+    }
+
+    /**
+     * Notified of every new {@link RouteTable} before it is published.
+     */
+    public interface Listener {
+        /**
+         * @param routes
+         *            the {@link RouteTable} about to be published
+         */
+        void onRoutesChanged(RouteTable routes);
+    }
+
+    /**
+     * @param listener
+     *            the {@link Listener} to notify of route changes
+     */
+    public void addListener(final Listener listener) {
+        listeners.add(checkNotNull(listener));
+    }
+
+    /**
+     * @return the current {@link RouteTable}
+     */
+    public RouteTable getRouteTable() {
+        return snapshot.table;
+    }
+
+    /**
+     * @param route
+     *            the route
+     * @return the value of a live or draining route, or null if the route is not in the current table
+     */
+    public V get(final Route route) {
+        return snapshot.value(route);
+    }
+
+    /**
+     * @param name
+     *            the route name or alias
+     * @return the value of the live route, or null if unknown
+     */
+    public V get(final String name) {
+        final Snapshot<V> current = snapshot;
+        final Route route = current.table.get(name);
+        return null == route ? null : current.value(route);
+    }
+
+    /**
+     * @return the values of all live routes keyed by route name, in ordinal order
+     */
+    public ImmutableMap<String, V> asMap() {
+        return snapshot.map;
+    }
+
+    /**
+     * Resolves the live route of a {@link RouteContext} and counts a unit of work against it.
+     * @param context
+     *            the {@link RouteContext}
+     * @return the acquired {@link Route}, which must be passed to {@link #release(Route)}, or null if the route is
+     *         unknown or being removed
+     */
+    public Route acquire(final RouteContext context) {
+        final Snapshot<V> current = snapshot;
+        final Route route = current.table.resolve(context);
+        if (null == route || !current.table.isLive(route)) {
+            return null;
+        }
+
+        current.inFlight[route.getOrdinal()].incrementAndGet();
+        if (!snapshot.table.isLive(route)) {
+            // removed between resolving and counting, the remover may already be waiting on this route
+            release(route);
+            return null;
+        }
+        return route;
+    }
+
+    /**
+     * Ends a unit of work started with {@link #acquire(RouteContext)}. A late release, after the route was retired
+     * and its ordinal given to another route, is ignored.
+     * @param route
+     *            the acquired route
+     */
+    public void release(final Route route) {
+        final Snapshot<V> current = snapshot;
+        final Route holder = current.table.get(route.getOrdinal());
+        if (null != holder && holder != route) {
+            return;
+        }
+
+        final AtomicInteger inFlight = current.inFlight[route.getOrdinal()];
+        if (0 == inFlight.decrementAndGet() && !snapshot.table.isLive(route)) {
+            synchronized (inFlight) {
+                inFlight.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Adds a route. The value should be fully built before calling this, it becomes visible to readers as soon as
+     * this method publishes the new table.
+     * @param name
+     *            the route name
+     * @param value
+     *            the route value
+     * @return the new {@link Route}
+     * @throws IllegalArgumentException
+     *             if a live route with the name already exists
+     */
+    public synchronized Route addRoute(final String name, final V value) {
+        checkNotNull(value, "value is required");
+
+        final Snapshot<V> current = snapshot;
+        final RouteTable table = current.table.withRoute(name);
+        final Route route = table.get(name);
+
+        final Object[] values = Arrays.copyOf(current.values, table.capacity());
+        final AtomicInteger[] inFlight = Arrays.copyOf(current.inFlight, table.capacity());
+        values[route.getOrdinal()] = value;
+        inFlight[route.getOrdinal()] = new AtomicInteger();
+        publish(new Snapshot<V>(table, values, inFlight));
+        return route;
+    }
+
+    /**
+     * Adds an alias, a further key resolving to a live route and sharing its value.
+     * @param alias
+     *            the alias
+     * @param name
+     *            the name of the route the alias resolves to
+     * @return the {@link Route} the alias resolves to
+     * @throws IllegalArgumentException
+     *             if the alias is already in use, or if there is no live route with the name
+     */
+    public synchronized Route addAlias(final String alias, final String name) {
+        final Snapshot<V> current = snapshot;
+        final RouteTable table = current.table.withAlias(alias, name);
+        publish(new Snapshot<V>(table, current.values, current.inFlight));
+        return table.get(alias);
+    }
+
+    /**
+     * Removes an alias. Units of work already acquired through it are not affected.
+     * @param alias
+     *            the alias
+     * @throws IllegalArgumentException
+     *             if there is no such alias
+     */
+    public synchronized void removeAlias(final String alias) {
+        final Snapshot<V> current = snapshot;
+        publish(new Snapshot<V>(current.table.withoutAlias(alias), current.values, current.inFlight));
+    }
+
+    /**
+     * Removes a route together with its aliases. The route stops resolving immediately; this method then waits for
+     * units of work already acquired on it to be released, up to the timeout, before retiring it.
+     * @param name
+     *            the route name
+     * @param timeout
+     *            the maximum time to wait for in-flight units of work
+     * @param unit
+     *            the unit of timeout
+     * @return the value of the removed route, which the caller is now responsible for closing
+     * @throws IllegalArgumentException
+     *             if there is no live route with the name
+     * @throws InterruptedException
+     *             if interrupted while waiting; the route is left draining
+     */
+    public V removeRoute(final String name, final long timeout, final TimeUnit unit) throws InterruptedException {
+        final Route route;
+        synchronized (this) {
+            final Snapshot<V> current = snapshot;
+            route = current.table.get(name);
+            checkArgument(null != route, "Unknown Route[%s]", name);
+            publish(new Snapshot<V>(current.table.withoutRoute(name), current.values, current.inFlight));
+        }
+
+        final AtomicInteger inFlight = snapshot.inFlight[route.getOrdinal()];
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (inFlight) {
+            long remaining = deadline - System.nanoTime();
+            while (0 < inFlight.get() && 0 < remaining) {
+                TimeUnit.NANOSECONDS.timedWait(inFlight, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+        }
+        if (0 < inFlight.get()) {
+            LOGGER.warn("Retiring {} with {} units of work still in flight after {} {}", route, inFlight.get(),
+                    timeout, unit);
+        }
+
+        synchronized (this) {
+            final Snapshot<V> current = snapshot;
+            final Object[] values = current.values.clone();
+            final V value = current.value(route);
+            values[route.getOrdinal()] = null;
+            publish(new Snapshot<V>(current.table.retire(route), values, current.inFlight));
+            return value;
+        }
+    }
+
+    private void publish(final Snapshot<V> next) {
+        for (Listener listener : listeners) {
+            listener.onRoutesChanged(next.table);
+        }
+        this.snapshot = next;
+    }
+
+    /**
+     * Immutable view of the routes. The in-flight counters of retired routes are kept until their ordinal is given
+     * to another route, which gets a counter of its own, so that late releases never count against it.
+     */
+    private static final class Snapshot<V> {
+        private final RouteTable table;
+        private final Object[] values;
+        private final AtomicInteger[] inFlight;
+        private final ImmutableMap<String, V> map;
+
+        Snapshot(final RouteTable table, final Object[] values, final AtomicInteger[] inFlight) {
+            this.table = table;
+            this.values = values;
+            this.inFlight = inFlight;
+
+            final ImmutableMap.Builder<String, V> map = ImmutableMap.builder();
+            for (String name : table.names()) {
+                map.put(name, value(table.get(name)));
+            }
+            this.map = map.build();
+        }
+
+        @SuppressWarnings("unchecked")
+        V value(final Route route) {
+            return table.contains(route) ? (V) values[route.getOrdinal()] : null;
+        }
+    }
+}
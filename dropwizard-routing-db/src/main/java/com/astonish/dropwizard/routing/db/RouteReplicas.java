@@ -0,0 +1,138 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the {@link ReplicaBalancer} of each route of a {@link RouteRegistry} that has read replicas, indexed by route
+ * ordinal, following the registry as routes are added and removed. Aliases resolve to the replicas of their route.
+ * <p/>
+ * Replicas are registered per route name, before or after the route itself is added.
+ * @param <V>
+ *            the replica value
+ */
+public class RouteReplicas<V> implements RouteRegistry.Listener {
+    private final ConcurrentMap<String, ReplicaBalancer<V>> balancers = new ConcurrentHashMap<>();
+    private volatile State<V> state = new State<>(RouteTable.empty(), new Object[0]);
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} to follow
+     */
+    public RouteReplicas(final RouteRegistry<?> registry) {
+        checkNotNull(registry, "registry is required");
+        registry.addListener(this);
+        onRoutesChanged(registry.getRouteTable());
+    }
+
+    /**
+     * Sets the replicas of a route.
+     * @param routeName
+     *            the route name
+     * @param balancer
+     *            the {@link ReplicaBalancer} of the route's replicas
+     */
+    public synchronized void put(final String routeName, final ReplicaBalancer<V> balancer) {
+        balancers.put(checkNotNull(routeName, "routeName is required"), checkNotNull(balancer,
+                "balancer is required"));
+        rebuild(state.table, routeName);
+    }
+
+    /**
+     * Removes the replicas of a route; units of work already on a replica are not affected.
+     * @param routeName
+     *            the route name
+     * @return the removed {@link ReplicaBalancer}, whose replicas the caller is now responsible for closing, or null
+     */
+    public synchronized ReplicaBalancer<V> remove(final String routeName) {
+        final ReplicaBalancer<V> removed = balancers.remove(routeName);
+        if (null != removed) {
+            rebuild(state.table, routeName);
+        }
+        return removed;
+    }
+
+    /**
+     * @param route
+     *            the route
+     * @return the {@link ReplicaBalancer} of a live or draining route, or null if it has no replicas
+     */
+    public ReplicaBalancer<V> get(final Route route) {
+        final State<V> current = state;
+        return current.table.contains(route) ? current.balancer(route.getOrdinal()) : null;
+    }
+
+    /**
+     * @param name
+     *            the route name or alias
+     * @return the {@link ReplicaBalancer} of the live route, or null if unknown or without replicas
+     */
+    public ReplicaBalancer<V> get(final String name) {
+        final State<V> current = state;
+        final Route route = current.table.get(name);
+        return null == route ? null : current.balancer(route.getOrdinal());
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.astonish.dropwizard.routing.db.RouteRegistry.Listener#onRoutesChanged(RouteTable)
+     */
+    @Override
+    public synchronized void onRoutesChanged(final RouteTable routes) {
+        rebuild(routes, null);
+    }
+
+    /**
+     * Keeps the replicas of routes still in the table, looks up those of new routes and of the live route of the
+     * changed name.
+     */
+    private void rebuild(final RouteTable routes, final String changedName) {
+        final State<V> current = state;
+        final Object[] next = new Object[routes.capacity()];
+        for (int ordinal = 0; ordinal < next.length; ordinal++) {
+            final Route route = routes.get(ordinal);
+            if (null == route) {
+                continue;
+            }
+            final boolean known = ordinal < current.balancers.length && current.table.contains(route);
+            final boolean changed = routes.isLive(route) && route.getName().equals(changedName);
+            next[ordinal] = known && !changed ? current.balancers[ordinal] : balancers.get(route.getName());
+        }
+        this.state = new State<>(routes, next);
+    }
+
+    private static final class State<V> {
+        private final RouteTable table;
+        private final Object[] balancers;
+
+        State(final RouteTable table, final Object[] balancers) {
+            this.table = table;
+            this.balancers = balancers;
+        }
+
+        @SuppressWarnings("unchecked")
+        ReplicaBalancer<V> balancer(final int ordinal) {
+            return (ReplicaBalancer<V>) balancers[ordinal];
+        }
+    }
+}
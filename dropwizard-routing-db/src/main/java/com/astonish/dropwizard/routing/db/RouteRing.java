@@ -0,0 +1,176 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Consistent-hash ring sharding arbitrary route keys, such as tenant ids, onto the live routes of a
+ * {@link RouteTable}.
+ * <p/>
+ * Each shard route is placed on the ring at a number of pseudo-random points, its virtual nodes, and a key belongs to
+ * the shard owning the first point at or after the key's hash. Adding a shard to N others moves only about 1/(N+1)
+ * of the keys, all of them onto the new shard; removing one moves only its own keys. The points depend on route names
+ * alone, so every node builds the same ring whatever the order of its routes.
+ * <p/>
+ * Route names and aliases resolve to their own route before the ring is consulted, so aliases pin keys to a route
+ * explicitly. Dedicated routes are left off the ring and only serve the keys pinned to them.
+ * <p/>
+ * Lookups are a binary search over a sorted array of points and do not allocate.
+ */
+public final class RouteRing {
+    private final RouteTable table;
+    private final ImmutableSet<String> dedicated;
+    private final int virtualNodes;
+    private final long[] points;
+    private final Route[] owners;
+
+    private RouteRing(final RouteTable table, final ImmutableSet<String> dedicated, final int virtualNodes) {
+        this.table = table;
+        this.dedicated = dedicated;
+        this.virtualNodes = virtualNodes;
+
+        final List<Point> ring = new ArrayList<>();
+        for (String name : table.names()) {
+            if (!dedicated.contains(name)) {
+                final Route route = table.get(name);
+                for (int i = 0; i < virtualNodes; i++) {
+                    ring.add(new Point(hash(name + '#' + i), route));
+                }
+            }
+        }
+        Collections.sort(ring);
+
+        this.points = new long[ring.size()];
+        this.owners = new Route[ring.size()];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = ring.get(i).hash;
+            owners[i] = ring.get(i).route;
+        }
+    }
+
+    /**
+     * @param table
+     *            the {@link RouteTable}
+     * @param virtualNodes
+     *            the number of points of each shard on the ring, more points spread keys more evenly
+     * @param dedicated
+     *            the names of routes to leave off the ring
+     * @return a {@link RouteRing} of the live routes of the table
+     */
+    public static RouteRing of(final RouteTable table, final int virtualNodes, final ImmutableSet<String> dedicated) {
+        checkArgument(0 < virtualNodes, "virtualNodes must be positive");
+        return new RouteRing(checkNotNull(table, "table is required"), checkNotNull(dedicated,
+                "dedicated is required"), virtualNodes);
+    }
+
+    /**
+     * @return the {@link RouteTable} this ring was built from
+     */
+    public RouteTable getTable() {
+        return table;
+    }
+
+    /**
+     * @param table
+     *            the {@link RouteTable}
+     * @return a {@link RouteRing} with the same settings over another table
+     */
+    public RouteRing withTable(final RouteTable table) {
+        return new RouteRing(checkNotNull(table, "table is required"), dedicated, virtualNodes);
+    }
+
+    /**
+     * @param key
+     *            the route key
+     * @return the live {@link Route} of a route name or alias, otherwise the shard owning the key, or null if the
+     *         key is null or there is no shard
+     */
+    public Route get(final String key) {
+        if (null == key) {
+            return null;
+        }
+        final Route route = table.get(key);
+        return null != route ? route : shard(key);
+    }
+
+    /**
+     * @param key
+     *            the route key
+     * @return the shard owning the key on the ring, ignoring route names and aliases, or null if there is no shard
+     */
+    public Route shard(final String key) {
+        if (0 == points.length) {
+            return null;
+        }
+
+        final long hash = hash(key);
+        int low = 0;
+        int high = points.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (points[mid] < hash) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        // past the last point the ring wraps around to the first
+        return owners[low == points.length ? 0 : low];
+    }
+
+    /**
+     * FNV-1a over the UTF-16 chars, finished with the MurmurHash3 mixer so that similar keys land far apart.
+     */
+    private static long hash(final String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private static final class Point implements Comparable<Point> {
+        private final long hash;
+        private final Route route;
+
+        Point(final long hash, final Route route) {
+            this.hash = hash;
+            this.route = route;
+        }
+
+        @Override
+        public int compareTo(final Point other) {
+            // ties go by name so that the ring does not depend on route order
+            final int byHash = Long.compare(hash, other.hash);
+            return 0 != byHash ? byHash : route.getName().compareTo(other.route.getName());
+        }
+    }
+}
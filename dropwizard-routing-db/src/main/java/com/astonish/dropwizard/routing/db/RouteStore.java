@@ -17,15 +17,30 @@
  */
 package com.astonish.dropwizard.routing.db;
 
-import java.util.HashMap;
-import java.util.Map;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * {@link ThreadLocal} store for current route key.
+ * Store for the current route key, bound to the current thread by one of two {@link Backend}s.
+ * <p/>
+ * Readers such as the {@link DAORouter} go through {@link #peek()}, which never allocates, so they work the same with
+ * either backend. A route is bound for the duration of a request: set by the routing filter and unbound by the
+ * {@link com.astonish.dropwizard.routing.db.filter.RouteScopeApplicationListener} when the request finishes, so a
+ * pooled thread never carries one request's route into the next. Work that is not a request binds a route for its own
+ * extent with {@link #callWith(RouteContext, Callable)} or {@link #runWith(RouteContext, Runnable)}.
  */
-public class RouteStore extends ThreadLocal<Map<String, Object>> {
+public final class RouteStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RouteStore.class);
     private static final RouteStore INSTANCE = new RouteStore();
-    private static final String ROUTE = "ROUTE";
+
+    private volatile Holder holder = new ThreadLocalHolder();
+    private volatile boolean staleReadDetection;
+    private final AtomicLong staleReads = new AtomicLong();
 
     private RouteStore() {
 
@@ -35,14 +50,178 @@ public class RouteStore extends ThreadLocal<Map<String, Object>> {
         return INSTANCE;
     }
 
-    /*
-     * (non-Javadoc)
-     * 
-     * @see java.lang.ThreadLocal#initialValue()
+    /**
+     * How the {@link RouteContext} is bound to the current thread.
+     */
+    public enum Backend {
+        /**
+         * One {@link RouteContext} per thread, created on first use and reused for every request the thread serves.
+         * Suits pooled request threads.
+         */
+        THREAD_LOCAL,
+
+        /**
+         * A {@link RouteContext} is only bound while a route is set and is dropped again by {@link #unbind}, so
+         * nothing is retained by threads that are not serving a route. Contexts handed to other threads, by
+         * {@link #callWith(RouteContext, Callable)} or {@link RoutePropagation}, are made read-only and shared without
+         * copying; a thread writing to the route of a shared context gets a writable copy once, on its first write,
+         * and writes to its own context in place. Suits large numbers of short-lived threads.
+         * <p/>
+         * This is the nearest Java 7 gets to a {@code ScopedValue}: a binding whose extent is a call, read-only to the
+         * code it calls. Child threads do not inherit it, as an {@code InheritableThreadLocal} would leave the route
+         * on every pooled thread started during a request; it reaches other threads through {@link RoutePropagation}.
+         */
+        SCOPED
+    }
+
+    /**
+     * Selects the backend. Should be called once at startup, before any route is set; routes bound through the
+     * previous backend are not carried over.
+     * @param backend
+     *            the {@link Backend}
+     */
+    public void setBackend(final Backend backend) {
+        checkNotNull(backend, "backend is required");
+        this.holder = Backend.SCOPED == backend ? new ScopedHolder() : new ThreadLocalHolder();
+    }
+
+    /**
+     * @return the selected {@link Backend}
+     */
+    public Backend getBackend() {
+        return holder instanceof ScopedHolder ? Backend.SCOPED : Backend.THREAD_LOCAL;
+    }
+
+    /**
+     * Debug mode: instead of clearing the route when a request ends, {@link #unbind(RouteContext)} marks it stale.
+     * Reads of a stale route find no route, exactly as without detection, but are logged and counted, which points
+     * at code reading the route outside of a request.
+     * @param staleReadDetection
+     *            true to detect stale-route reads
+     */
+    public void setStaleReadDetection(final boolean staleReadDetection) {
+        this.staleReadDetection = staleReadDetection;
+    }
+
+    /**
+     * @return the number of stale-route reads detected
+     */
+    public long getStaleReadCount() {
+        return staleReads.get();
+    }
+
+    /**
+     * Retrieves the current {@link RouteContext} for writing, binding an empty one if none is bound, or a writable
+     * copy if the bound one is read-only.
+     * @return the current {@link RouteContext}
+     */
+    public RouteContext get() {
+        return holder.writable();
+    }
+
+    /**
+     * Retrieves the current {@link RouteContext} without binding one.
+     * @return the current {@link RouteContext}, or null if none is bound
      */
-    @Override
-    protected Map<String, Object> initialValue() {
-        return new HashMap<>();
+    public RouteContext peek() {
+        final RouteContext context = holder.peek();
+        if (null != context && context.isStale()) {
+            return staleRead(context);
+        }
+        return context;
+    }
+
+    private RouteContext staleRead(final RouteContext context) {
+        staleReads.incrementAndGet();
+        LOGGER.warn("Stale Route[{}] read outside of a request on {}", context.getRoute(), Thread.currentThread()
+                .getName(), new IllegalStateException("stale route read"));
+        return null;
+    }
+
+    /**
+     * Binds a {@link RouteContext} to the current thread.
+     * @param context
+     *            the {@link RouteContext} to bind
+     * @return the previously bound {@link RouteContext}, or null, to be passed to {@link #unbind(RouteContext)}
+     */
+    public RouteContext bind(final RouteContext context) {
+        checkNotNull(context, "context is required");
+        final RouteContext previous = holder.peek();
+        holder.set(context);
+        return previous;
+    }
+
+    /**
+     * Takes the current {@link RouteContext} off the current thread, so that it can be bound with
+     * {@link #bind(RouteContext)} on the thread that carries on the request.
+     * @return the {@link RouteContext} that was bound, or null
+     */
+    public RouteContext detach() {
+        final RouteContext current = holder.peek();
+        if (null != current && current.isStale()) {
+            holder.remove();
+            return null;
+        }
+        holder.detach();
+        return current;
+    }
+
+    /**
+     * Undoes a {@link #bind(RouteContext)}; unbinding null ends the current request's route.
+     * @param previous
+     *            the {@link RouteContext} returned by bind
+     */
+    public void unbind(final RouteContext previous) {
+        if (null == previous) {
+            final RouteContext current = holder.peek();
+            if (staleReadDetection && null != current && null != current.getRoute()) {
+                holder.markStale(current);
+            } else {
+                holder.remove();
+            }
+        } else {
+            holder.set(previous);
+        }
+    }
+
+    /**
+     * Calls a task with a {@link RouteContext} bound for the duration of the call, then restores whatever was bound
+     * before. With the {@link Backend#SCOPED} backend the context is bound read-only and without copying it, so it
+     * may be shared by any number of concurrent calls; with {@link Backend#THREAD_LOCAL} the call gets its own copy.
+     * @param context
+     *            the {@link RouteContext}
+     * @param task
+     *            the task
+     * @return the result of the task
+     * @throws Exception
+     *             if the task throws
+     */
+    public <T> T callWith(final RouteContext context, final Callable<T> task) throws Exception {
+        checkNotNull(task, "task is required");
+        final RouteContext previous = bind(holder.snapshot(checkNotNull(context, "context is required")));
+        try {
+            return task.call();
+        } finally {
+            unbind(previous);
+        }
+    }
+
+    /**
+     * Runs a task with a {@link RouteContext} bound for the duration of the run, see
+     * {@link #callWith(RouteContext, Callable)}.
+     * @param context
+     *            the {@link RouteContext}
+     * @param task
+     *            the task
+     */
+    public void runWith(final RouteContext context, final Runnable task) {
+        checkNotNull(task, "task is required");
+        final RouteContext previous = bind(holder.snapshot(checkNotNull(context, "context is required")));
+        try {
+            task.run();
+        } finally {
+            unbind(previous);
+        }
     }
 
     /**
@@ -51,7 +230,28 @@ public class RouteStore extends ThreadLocal<Map<String, Object>> {
      *            the route
      */
     public void setRoute(final String route) {
-        get().put(ROUTE, route);
+        get().setRoute(route);
+    }
+
+    /**
+     * Stores an already resolved route in the store. Named apart from {@link #setRoute(String)} so that
+     * {@code setRoute(null)} stays unambiguous.
+     * @param route
+     *            the resolved {@link Route}
+     */
+    public void setResolvedRoute(final Route route) {
+        get().setResolvedRoute(route);
+    }
+
+    /**
+     * Stores a route key together with the {@link Route} it was resolved to.
+     * @param route
+     *            the route key, a route name or alias
+     * @param resolvedRoute
+     *            the resolved {@link Route}
+     */
+    public void setRoute(final String route, final Route resolvedRoute) {
+        get().setRoute(route, resolvedRoute);
     }
 
     /**
@@ -59,6 +259,169 @@ public class RouteStore extends ThreadLocal<Map<String, Object>> {
      * @return the stored route
      */
     public String getRoute() {
-        return (String) get().get(ROUTE);
+        final RouteContext context = peek();
+        return null == context ? null : context.getRoute();
+    }
+
+    /**
+     * Stores an attribute alongside the route.
+     * @param name
+     *            the attribute name
+     * @param value
+     *            the attribute value, null removes the attribute
+     */
+    public void setAttribute(final String name, final Object value) {
+        get().setAttribute(name, value);
+    }
+
+    /**
+     * Retrieves an attribute stored alongside the route.
+     * @param name
+     *            the attribute name
+     * @return the attribute value, or null if not present
+     */
+    public Object getAttribute(final String name) {
+        final RouteContext context = peek();
+        return null == context ? null : context.getAttribute(name);
+    }
+
+    /**
+     * @param context
+     *            a bound {@link RouteContext}, or null
+     * @return a {@link RouteContext} with the same route that can be bound on another thread, or null
+     */
+    RouteContext snapshot(final RouteContext context) {
+        return null == context ? null : holder.snapshot(context);
+    }
+
+    private interface Holder {
+        RouteContext peek();
+
+        RouteContext writable();
+
+        RouteContext snapshot(RouteContext context);
+
+        void set(RouteContext context);
+
+        void markStale(RouteContext context);
+
+        void detach();
+
+        void remove();
+    }
+
+    /**
+     * Keeps one {@link RouteContext} per thread for the life of the thread.
+     */
+    private static final class ThreadLocalHolder extends ThreadLocal<RouteContext> implements Holder {
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.ThreadLocal#initialValue()
+         */
+        @Override
+        protected RouteContext initialValue() {
+            return new RouteContext();
+        }
+
+        @Override
+        public RouteContext peek() {
+            return get();
+        }
+
+        @Override
+        public RouteContext writable() {
+            final RouteContext context = get();
+            if (context.isReadOnly()) {
+                // bound from another backend's snapshot, the thread gets its own context back
+                final RouteContext own = context.isStale() ? new RouteContext() : context.copy();
+                set(own);
+                return own;
+            }
+            if (context.isStale()) {
+                // about to be written, not read
+                context.clear();
+            }
+            return context;
+        }
+
+        @Override
+        public RouteContext snapshot(final RouteContext context) {
+            // the thread keeps writing into its own context
+            return context.copy();
+        }
+
+        @Override
+        public void markStale(final RouteContext context) {
+            if (context.isReadOnly()) {
+                final RouteContext stale = context.copy();
+                stale.markStale();
+                set(stale);
+            } else {
+                context.markStale();
+            }
+        }
+
+        @Override
+        public void detach() {
+            // the thread gets a new context, the detached one goes with the request
+            super.remove();
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.ThreadLocal#remove()
+         */
+        @Override
+        public void remove() {
+            final RouteContext context = get();
+            if (context.isReadOnly()) {
+                super.remove();
+            } else {
+                // keep the thread's context for its next request
+                context.clear();
+            }
+        }
+    }
+
+    /**
+     * Binds a {@link RouteContext} only while one is in use. Snapshots are the bound context itself, made read-only.
+     */
+    private static final class ScopedHolder extends ThreadLocal<RouteContext> implements Holder {
+        @Override
+        public RouteContext peek() {
+            return get();
+        }
+
+        @Override
+        public RouteContext writable() {
+            final RouteContext current = get();
+            if (null != current && !current.isReadOnly() && !current.isStale()) {
+                return current;
+            }
+            final RouteContext next = null == current || current.isStale() ? new RouteContext() : current.copy();
+            set(next);
+            return next;
+        }
+
+        @Override
+        public RouteContext snapshot(final RouteContext context) {
+            // shared from now on; the thread that bound it copies it on its next write
+            return context.makeReadOnly();
+        }
+
+        @Override
+        public void markStale(final RouteContext context) {
+            // the context may be shared with threads still serving the request
+            final RouteContext stale = context.copy();
+            stale.markStale();
+            set(stale);
+        }
+
+        @Override
+        public void detach() {
+            remove();
+        }
     }
 }
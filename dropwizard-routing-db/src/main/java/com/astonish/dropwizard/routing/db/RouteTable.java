@@ -0,0 +1,295 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Immutable table assigning each route name a dense ordinal, in iteration order of the names it was built from.
+ * <p/>
+ * Changes are copy-on-write. A {@link Route} handle keeps indexing the same per-route slot for as long as it is in
+ * the table. A removed route first becomes <i>draining</i>: it can no longer be resolved by name, but handles already
+ * resolved by in-flight requests stay valid until the route is retired. Retiring frees the ordinal and added routes
+ * take the lowest free ordinal, so {@link #capacity()}, and with it every array indexed by ordinal, is bounded by the
+ * most routes ever live or draining at once rather than by the number of routes ever added. Per-route state must
+ * therefore be matched to its handle with {@link #contains(Route)}, never by ordinal alone.
+ * <p/>
+ * Aliases are additional keys resolving to the {@link Route} handle of a live route, so that many keys share the
+ * route's per-route state. An alias resolves in the same single hash lookup as a route name and goes away with the
+ * route it points to.
+ */
+public final class RouteTable {
+    private static final RouteTable EMPTY = new RouteTable(new Route[0], ImmutableMap.<String, Route> of(),
+            ImmutableMap.<String, Route> of());
+
+    private final Route[] routes;
+    private final ImmutableMap<String, Route> routesByName;
+    private final ImmutableMap<String, Route> aliases;
+    private final ImmutableMap<String, Route> routesByKey;
+
+    private RouteTable(final Route[] routes, final ImmutableMap<String, Route> routesByName,
+            final ImmutableMap<String, Route> aliases) {
+        this.routes = routes;
+        this.routesByName = routesByName;
+        this.aliases = aliases;
+        this.routesByKey = ImmutableMap.<String, Route> builder().putAll(routesByName).putAll(aliases).build();
+    }
+
+    /**
+     * @return an empty {@link RouteTable}
+     */
+    public static RouteTable empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds a {@link RouteTable}, assigning ordinals in iteration order.
+     * @param routeNames
+     *            the route names
+     * @return the {@link RouteTable}
+     * @throws IllegalArgumentException
+     *             if a route name is repeated
+     */
+    public static RouteTable of(final Iterable<String> routeNames) {
+        checkNotNull(routeNames, "routeNames is required");
+
+        final List<Route> routes = new ArrayList<>();
+        final ImmutableMap.Builder<String, Route> byName = ImmutableMap.builder();
+        for (String name : routeNames) {
+            final Route route = new Route(checkNotNull(name, "route name is required"), routes.size());
+            routes.add(route);
+            byName.put(name, route);
+        }
+
+        final ImmutableMap<String, Route> routesByName = byName.build();
+        checkArgument(routesByName.size() == routes.size(), "Duplicate route names in %s", routeNames);
+        return new RouteTable(routes.toArray(new Route[routes.size()]), routesByName,
+                ImmutableMap.<String, Route> of());
+    }
+
+    /**
+     * Adds a route, giving it the lowest ordinal freed by a retired route, or the next one if none is free. A route
+     * may be added under the name of a draining route; the draining route keeps its own ordinal until it is retired.
+     * @param name
+     *            the route name
+     * @return a new {@link RouteTable} containing the route
+     * @throws IllegalArgumentException
+     *             if a live route with the name already exists
+     */
+    public RouteTable withRoute(final String name) {
+        checkNotNull(name, "route name is required");
+        checkArgument(!routesByKey.containsKey(name), "Route[%s] already exists", name);
+
+        int ordinal = 0;
+        while (ordinal < routes.length && null != routes[ordinal]) {
+            ordinal++;
+        }
+        final Route route = new Route(name, ordinal);
+        final Route[] next = Arrays.copyOf(routes, Math.max(routes.length, ordinal + 1));
+        next[ordinal] = route;
+        return new RouteTable(next, ImmutableMap.<String, Route> builder().putAll(routesByName).put(name, route)
+                .build(), aliases);
+    }
+
+    /**
+     * Marks a route as draining: it can no longer be resolved by name or by any of its aliases, but existing handles
+     * stay valid.
+     * @param name
+     *            the route name
+     * @return a new {@link RouteTable} in which the route is draining
+     * @throws IllegalArgumentException
+     *             if there is no live route with the name
+     */
+    public RouteTable withoutRoute(final String name) {
+        final Route route = null == name ? null : routesByName.get(name);
+        checkArgument(null != route, "Unknown Route[%s]", name);
+
+        return new RouteTable(routes, without(routesByName, route), without(aliases, route));
+    }
+
+    /**
+     * Adds an alias resolving to a live route.
+     * @param alias
+     *            the alias
+     * @param name
+     *            the name of the route the alias resolves to
+     * @return a new {@link RouteTable} containing the alias
+     * @throws IllegalArgumentException
+     *             if the alias is already a route name or alias, or if there is no live route with the name
+     */
+    public RouteTable withAlias(final String alias, final String name) {
+        checkNotNull(alias, "alias is required");
+        checkArgument(!routesByKey.containsKey(alias), "Route[%s] already exists", alias);
+        final Route route = null == name ? null : routesByName.get(name);
+        checkArgument(null != route, "Unknown Route[%s]", name);
+
+        return new RouteTable(routes, routesByName, ImmutableMap.<String, Route> builder().putAll(aliases)
+                .put(alias, route).build());
+    }
+
+    /**
+     * Removes an alias. Handles already resolved through it stay valid, they are handles of the aliased route.
+     * @param alias
+     *            the alias
+     * @return a new {@link RouteTable} without the alias
+     * @throws IllegalArgumentException
+     *             if there is no such alias
+     */
+    public RouteTable withoutAlias(final String alias) {
+        checkArgument(null != alias && aliases.containsKey(alias), "Unknown alias[%s]", alias);
+
+        final ImmutableMap.Builder<String, Route> remaining = ImmutableMap.builder();
+        for (Entry<String, Route> entry : aliases.entrySet()) {
+            if (!entry.getKey().equals(alias)) {
+                remaining.put(entry);
+            }
+        }
+        return new RouteTable(routes, routesByName, remaining.build());
+    }
+
+    /**
+     * Retires a draining route, invalidating its handle. Its ordinal is free for the next added route.
+     * @param route
+     *            the draining route
+     * @return a new {@link RouteTable} without the route
+     * @throws IllegalArgumentException
+     *             if the route is not draining in this table
+     */
+    public RouteTable retire(final Route route) {
+        checkArgument(contains(route) && !isLive(route), "%s is not draining", route);
+
+        final Route[] next = routes.clone();
+        next[route.getOrdinal()] = null;
+        return new RouteTable(next, routesByName, aliases);
+    }
+
+    // built from the live keys only: the ordinal array also holds draining routes, which must stay unresolvable
+    private static ImmutableMap<String, Route> without(final ImmutableMap<String, Route> keys, final Route excluded) {
+        final ImmutableMap.Builder<String, Route> remaining = ImmutableMap.builder();
+        for (Entry<String, Route> entry : keys.entrySet()) {
+            if (entry.getValue() != excluded) {
+                remaining.put(entry);
+            }
+        }
+        return remaining.build();
+    }
+
+    /**
+     * @param name
+     *            the route name or alias
+     * @return the live {@link Route} for the name, or null if unknown
+     */
+    public Route get(final String name) {
+        return null == name ? null : routesByKey.get(name);
+    }
+
+    /**
+     * @param ordinal
+     *            the route ordinal
+     * @return the live or draining {@link Route} with the ordinal, or null if it was retired
+     * @throws IndexOutOfBoundsException
+     *             if the ordinal is not within this table
+     */
+    public Route get(final int ordinal) {
+        return routes[ordinal];
+    }
+
+    /**
+     * @param route
+     *            the route
+     * @return true if the {@link Route} handle was created by this table and is live or draining
+     */
+    public boolean contains(final Route route) {
+        final int ordinal = route.getOrdinal();
+        return ordinal < routes.length && routes[ordinal] == route;
+    }
+
+    /**
+     * @param route
+     *            the route
+     * @return true if the {@link Route} handle is live in this table
+     */
+    public boolean isLive(final Route route) {
+        return routesByName.get(route.getName()) == route;
+    }
+
+    /**
+     * Resolves the route of a {@link RouteContext} against this table. The resolved {@link Route} is cached in the
+     * context so that subsequent lookups during the same request skip the name lookup. A cached handle of a
+     * draining route still resolves, so that requests already in flight can finish.
+     * @param context
+     *            the {@link RouteContext}
+     * @return the {@link Route}, or null if the context's route is not in this table
+     */
+    public Route resolve(final RouteContext context) {
+        final Route cached = context.getResolvedRoute();
+        if (null != cached && contains(cached)) {
+            return cached;
+        }
+
+        final Route route = get(context.getRoute());
+        if (null != route) {
+            context.cacheResolvedRoute(route);
+        }
+        return route;
+    }
+
+    /**
+     * @return the number of live routes
+     */
+    public int size() {
+        return routesByName.size();
+    }
+
+    /**
+     * @return one more than the highest ordinal assigned, the length needed for arrays indexed by ordinal
+     */
+    public int capacity() {
+        return routes.length;
+    }
+
+    /**
+     * @return the live route names in ordinal order
+     */
+    public ImmutableSet<String> names() {
+        return routesByName.keySet();
+    }
+
+    /**
+     * @return the aliases and the live routes they resolve to
+     */
+    public ImmutableMap<String, Route> aliases() {
+        return aliases;
+    }
+
+    /**
+     * @return every key resolving to a live route: the route names in ordinal order, then the aliases
+     */
+    public ImmutableSet<String> keys() {
+        return routesByKey.keySet();
+    }
+}
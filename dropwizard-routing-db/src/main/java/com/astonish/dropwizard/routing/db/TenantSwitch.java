@@ -0,0 +1,56 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * How a connection of a pool shared by many tenants is switched to a tenant's schema when it is checked out: with
+ * {@link Connection#setSchema(String)} for databases holding tenants in schemas, such as PostgreSQL, or with
+ * {@link Connection#setCatalog(String)} for databases where a schema is a catalog, such as MySQL.
+ */
+public enum TenantSwitch {
+    SCHEMA {
+        @Override
+        public void apply(Connection connection, String schema) throws SQLException {
+            if (!schema.equals(connection.getSchema())) {
+                connection.setSchema(schema);
+            }
+        }
+    },
+    CATALOG {
+        @Override
+        public void apply(Connection connection, String schema) throws SQLException {
+            if (!schema.equals(connection.getCatalog())) {
+                connection.setCatalog(schema);
+            }
+        }
+    };
+
+    /**
+     * Switches a connection to a schema, unless it is already using it.
+     * @param connection
+     *            the connection
+     * @param schema
+     *            the schema or catalog name
+     * @throws SQLException
+     *             if the schema can not be switched
+     */
+    public abstract void apply(Connection connection, String schema) throws SQLException;
+}
@@ -0,0 +1,57 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+/**
+ * Client tokens for read-your-writes consistency with read replicas.
+ * <p/>
+ * A response to a request that wrote to a route carries the time of the write in the {@value #HEADER_NAME} header.
+ * A client that sends the token back with its following requests has them read from a replica only once the
+ * replica's sampled lag shows it has replayed the write, and from the primary until then.
+ */
+public final class WriteTokens {
+    public static final String HEADER_NAME = "RouteWriteToken";
+
+    private WriteTokens() {
+    }
+
+    /**
+     * @param writeMillis
+     *            the time of the write
+     * @return the token
+     */
+    public static String format(final long writeMillis) {
+        return Long.toString(writeMillis, Character.MAX_RADIX);
+    }
+
+    /**
+     * @param token
+     *            the token sent by the client, possibly null
+     * @return the time of the write, or 0 if the token is missing or malformed
+     */
+    public static long parse(final String token) {
+        if (null == token || token.isEmpty() || token.length() > 13) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(token, Character.MAX_RADIX));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.Provider;
+
+import com.astonish.dropwizard.routing.db.Route;
+import com.astonish.dropwizard.routing.db.RouteKeyIndex;
+import com.astonish.dropwizard.routing.db.RouteRegistry;
+import com.astonish.dropwizard.routing.db.RouteStore;
+import com.astonish.dropwizard.routing.db.RouteTable;
+import com.astonish.dropwizard.routing.db.resolver.HeaderRouteResolver;
+import com.astonish.dropwizard.routing.db.resolver.RouteResolver;
+import com.astonish.dropwizard.routing.db.resolver.RouteResolverChain;
+
+/**
+ * Pre-matching variant of {@link RoutingRequestFilterResolverImpl} that rejects unknown route keys before any resource
+ * is matched.
+ * <p/>
+ * A request whose route key, by default the RouteKey header, is not a live route of the {@link RouteRegistry} is
+ * aborted with a 404 built from constant parts, without echoing the key, and the key is counted in a bounded
+ * {@link RejectedRouteKeys}. Requests without a route key pass through without a route, as with
+ * {@link RoutingRequestFilterHeaderImpl}.
+ * <p/>
+ * Keys are canonicalized through a {@link RouteKeyIndex}: surrounding whitespace is ignored, case optionally too, and
+ * the canonical key is stored together with the {@link Route} it resolves to, so that no later lookup hashes the key
+ * again. Aliases are kept as the route key while resolving to the aliased route.
+ */
+@Provider
+@PreMatching
+@Priority(Priorities.AUTHENTICATION)
+public class KnownRouteRequestFilter implements ContainerRequestFilter {
+    static final String UNKNOWN_ROUTE = "Unknown RouteKey";
+    static final int DEFAULT_TRACKED_KEYS = 100;
+
+    private final RouteRegistry<?> registry;
+    private final RouteResolver resolver;
+    private final RejectedRouteKeys rejectedKeys;
+    private final boolean foldCase;
+    private volatile RouteKeyIndex index;
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} holding the known routes
+     */
+    public KnownRouteRequestFilter(final RouteRegistry<?> registry) {
+        this(registry, new HeaderRouteResolver());
+    }
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} holding the known routes
+     * @param resolver
+     *            the {@link RouteResolver}, see {@link RouteResolverChain} to combine several
+     */
+    public KnownRouteRequestFilter(final RouteRegistry<?> registry, final RouteResolver resolver) {
+        this(registry, resolver, new RejectedRouteKeys(DEFAULT_TRACKED_KEYS));
+    }
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} holding the known routes
+     * @param resolver
+     *            the {@link RouteResolver}, see {@link RouteResolverChain} to combine several
+     * @param rejectedKeys
+     *            counts the rejected keys
+     */
+    public KnownRouteRequestFilter(final RouteRegistry<?> registry, final RouteResolver resolver,
+            final RejectedRouteKeys rejectedKeys) {
+        this(registry, resolver, rejectedKeys, false);
+    }
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} holding the known routes
+     * @param resolver
+     *            the {@link RouteResolver}, see {@link RouteResolverChain} to combine several
+     * @param rejectedKeys
+     *            counts the rejected keys
+     * @param foldCase
+     *            true to match route keys regardless of case
+     */
+    public KnownRouteRequestFilter(final RouteRegistry<?> registry, final RouteResolver resolver,
+            final RejectedRouteKeys rejectedKeys, final boolean foldCase) {
+        this.registry = checkNotNull(registry, "registry is required");
+        this.resolver = checkNotNull(resolver, "resolver is required");
+        this.rejectedKeys = checkNotNull(rejectedKeys, "rejectedKeys is required");
+        this.foldCase = foldCase;
+        this.index = RouteKeyIndex.of(registry.getRouteTable(), foldCase);
+    }
+
+    /**
+     * @return the counts of rejected keys
+     */
+    public RejectedRouteKeys getRejectedKeys() {
+        return rejectedKeys;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.ws.rs.container.ContainerRequestFilter#filter(javax.ws.rs.container.ContainerRequestContext)
+     */
+    @Override
+    public void filter(ContainerRequestContext ctxt) throws IOException {
+        final String key = resolver.resolve(ctxt);
+        final RouteKeyIndex current = index();
+        final int slot = current.indexOf(key);
+        if (-1 != slot) {
+            RouteStore.getInstance().setRoute(current.keyAt(slot), current.routeAt(slot));
+        } else if (RouteKeyIndex.isBlank(key)) {
+            RouteStore.getInstance().setRoute(null);
+        } else {
+            rejectedKeys.add(key);
+            ctxt.abortWith(rejection());
+        }
+    }
+
+    /**
+     * @return the {@link RouteKeyIndex} of the current routes, rebuilt when routes are added or removed
+     */
+    private RouteKeyIndex index() {
+        final RouteKeyIndex current = index;
+        final RouteTable table = registry.getRouteTable();
+        if (current.getTable() == table) {
+            return current;
+        }
+
+        final RouteKeyIndex rebuilt = RouteKeyIndex.of(table, foldCase);
+        this.index = rebuilt;
+        return rebuilt;
+    }
+
+    /**
+     * Responses are not shared between requests since response filters may add headers to them; only the parts are
+     * constant.
+     */
+    static Response rejection() {
+        return Response.status(Status.NOT_FOUND).type(MediaType.TEXT_PLAIN_TYPE).entity(UNKNOWN_ROUTE).build();
+    }
+}
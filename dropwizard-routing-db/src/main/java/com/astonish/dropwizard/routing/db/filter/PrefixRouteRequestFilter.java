@@ -0,0 +1,130 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.ext.Provider;
+
+import com.astonish.dropwizard.routing.db.RouteKeyIndex;
+import com.astonish.dropwizard.routing.db.RoutePrefixIndex;
+import com.astonish.dropwizard.routing.db.RouteRegistry;
+import com.astonish.dropwizard.routing.db.RouteStore;
+import com.astonish.dropwizard.routing.db.RouteTable;
+import com.astonish.dropwizard.routing.db.resolver.HeaderRouteResolver;
+import com.astonish.dropwizard.routing.db.resolver.RouteResolver;
+import com.astonish.dropwizard.routing.db.resolver.RouteResolverChain;
+
+/**
+ * Pre-matching filter routing hierarchical route keys, such as {@code region/brand/store}, by the longest route name
+ * or alias of a {@link RouteRegistry} that is a prefix of the key, see {@link RoutePrefixIndex}.
+ * <p/>
+ * The key is stored together with the {@link com.astonish.dropwizard.routing.db.Route} of its longest prefix, so
+ * that the registry, the bulkheads and the {@link com.astonish.dropwizard.routing.db.DAORouter} all use that route. A
+ * request whose key has no configured prefix is rejected as by {@link KnownRouteRequestFilter}.
+ */
+@Provider
+@PreMatching
+@Priority(Priorities.AUTHENTICATION)
+public class PrefixRouteRequestFilter implements ContainerRequestFilter {
+    private final RouteRegistry<?> registry;
+    private final RouteResolver resolver;
+    private final RejectedRouteKeys rejectedKeys;
+    private volatile RoutePrefixIndex index;
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} holding the routes
+     * @param separator
+     *            the separator of key segments
+     */
+    public PrefixRouteRequestFilter(final RouteRegistry<?> registry, final char separator) {
+        this(registry, new HeaderRouteResolver(), new RejectedRouteKeys(KnownRouteRequestFilter.DEFAULT_TRACKED_KEYS),
+                separator);
+    }
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} holding the routes
+     * @param resolver
+     *            the {@link RouteResolver}, see {@link RouteResolverChain} to combine several
+     * @param rejectedKeys
+     *            counts the rejected keys
+     * @param separator
+     *            the separator of key segments
+     */
+    public PrefixRouteRequestFilter(final RouteRegistry<?> registry, final RouteResolver resolver,
+            final RejectedRouteKeys rejectedKeys, final char separator) {
+        this.registry = checkNotNull(registry, "registry is required");
+        this.resolver = checkNotNull(resolver, "resolver is required");
+        this.rejectedKeys = checkNotNull(rejectedKeys, "rejectedKeys is required");
+        this.index = RoutePrefixIndex.of(registry.getRouteTable(), separator);
+    }
+
+    /**
+     * @return the counts of rejected keys
+     */
+    public RejectedRouteKeys getRejectedKeys() {
+        return rejectedKeys;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.ws.rs.container.ContainerRequestFilter#filter(javax.ws.rs.container.ContainerRequestContext)
+     */
+    @Override
+    public void filter(ContainerRequestContext ctxt) throws IOException {
+        final String key = resolver.resolve(ctxt);
+        if (RouteKeyIndex.isBlank(key)) {
+            RouteStore.getInstance().setRoute(null);
+            return;
+        }
+
+        final RoutePrefixIndex current = index();
+        final int slot = current.indexOf(key);
+        if (-1 != slot) {
+            RouteStore.getInstance().setRoute(key, current.routeAt(slot));
+        } else {
+            rejectedKeys.add(key);
+            ctxt.abortWith(KnownRouteRequestFilter.rejection());
+        }
+    }
+
+    /**
+     * @return the {@link RoutePrefixIndex} of the current routes, rebuilt when routes are added or removed
+     */
+    private RoutePrefixIndex index() {
+        final RoutePrefixIndex current = index;
+        final RouteTable table = registry.getRouteTable();
+        if (current.getTable() == table) {
+            return current;
+        }
+
+        final RoutePrefixIndex rebuilt = RoutePrefixIndex.of(table, current.getSeparator());
+        this.index = rebuilt;
+        return rebuilt;
+    }
+}
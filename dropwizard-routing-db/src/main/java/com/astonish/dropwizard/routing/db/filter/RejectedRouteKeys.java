@@ -0,0 +1,197 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Counts rejected route keys in bounded memory, keeping the most frequent ones.
+ * <p/>
+ * Uses the Space-Saving algorithm: at most {@code capacity} keys are tracked; a new key arriving when full takes over
+ * the slot of the least counted key and inherits its count. Any key making up more than {@code 1/capacity} of all
+ * rejections is always tracked, with a count overestimated by at most the inherited count, however many distinct
+ * random keys are sent. Keys are truncated so that long keys can not grow memory either.
+ * <p/>
+ * Counters are kept in a stream summary: a list of buckets in ascending count order, each holding the counters with
+ * that count. Counting a key moves its counter to the next bucket and the least counted key is the head of the first
+ * bucket, so every rejection costs constant time under the lock, a flood of random keys included.
+ */
+public class RejectedRouteKeys {
+    static final int MAX_KEY_LENGTH = 64;
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private final AtomicLong total = new AtomicLong();
+    private Bucket first;
+
+    /**
+     * @param capacity
+     *            the number of keys to track
+     */
+    public RejectedRouteKeys(final int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Counts a rejection.
+     * @param key
+     *            the rejected key
+     */
+    public void add(final String key) {
+        total.incrementAndGet();
+        final String tracked = key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+        synchronized (counters) {
+            Counter counter = counters.get(tracked);
+            if (null != counter) {
+                increment(counter);
+            } else if (counters.size() < capacity) {
+                counter = new Counter(tracked);
+                counters.put(tracked, counter);
+                if (null == first || 1 != first.count) {
+                    final Bucket bucket = new Bucket(1);
+                    bucket.next = first;
+                    if (null != first) {
+                        first.prev = bucket;
+                    }
+                    first = bucket;
+                }
+                first.add(counter);
+            } else {
+                // take over the least counted key, inheriting its count
+                counter = first.head;
+                counters.remove(counter.key);
+                counter.key = tracked;
+                counters.put(tracked, counter);
+                increment(counter);
+            }
+        }
+    }
+
+    private void increment(final Counter counter) {
+        final Bucket bucket = counter.bucket;
+        Bucket next = bucket.next;
+        if (null == next || bucket.count + 1 != next.count) {
+            next = new Bucket(bucket.count + 1);
+            next.prev = bucket;
+            next.next = bucket.next;
+            if (null != bucket.next) {
+                bucket.next.prev = next;
+            }
+            bucket.next = next;
+        }
+
+        bucket.remove(counter);
+        next.add(counter);
+        if (null == bucket.head) {
+            if (null == bucket.prev) {
+                first = bucket.next;
+            } else {
+                bucket.prev.next = bucket.next;
+            }
+            bucket.next.prev = bucket.prev;
+        }
+    }
+
+    /**
+     * @return the total number of rejections
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * @param k
+     *            the number of keys to return
+     * @return up to k of the most rejected keys with their (upper bound) counts, most rejected first
+     */
+    public ImmutableMap<String, Long> top(final int k) {
+        final ImmutableMap.Builder<String, Long> top = ImmutableMap.builder();
+        synchronized (counters) {
+            Bucket last = first;
+            while (null != last && null != last.next) {
+                last = last.next;
+            }
+
+            int remaining = k;
+            for (Bucket bucket = last; null != bucket && 0 < remaining; bucket = bucket.prev) {
+                for (Counter counter = bucket.head; null != counter && 0 < remaining; counter = counter.next) {
+                    top.put(counter.key, bucket.count);
+                    remaining--;
+                }
+            }
+        }
+        return top.build();
+    }
+
+    /**
+     * The counted keys sharing one count, linked in ascending count order.
+     */
+    private static final class Bucket {
+        private final long count;
+        private Bucket prev;
+        private Bucket next;
+        private Counter head;
+
+        Bucket(final long count) {
+            this.count = count;
+        }
+
+        void add(final Counter counter) {
+            counter.bucket = this;
+            counter.prev = null;
+            counter.next = head;
+            if (null != head) {
+                head.prev = counter;
+            }
+            head = counter;
+        }
+
+        void remove(final Counter counter) {
+            if (null == counter.prev) {
+                head = counter.next;
+            } else {
+                counter.prev.next = counter.next;
+            }
+            if (null != counter.next) {
+                counter.next.prev = counter.prev;
+            }
+        }
+    }
+
+    /**
+     * A tracked key, linked into the bucket of its count.
+     */
+    private static final class Counter {
+        private String key;
+        private Bucket bucket;
+        private Counter prev;
+        private Counter next;
+
+        Counter(final String key) {
+            this.key = key;
+        }
+    }
+}
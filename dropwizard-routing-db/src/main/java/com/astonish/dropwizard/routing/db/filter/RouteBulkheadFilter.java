@@ -0,0 +1,75 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.ext.Provider;
+
+import com.astonish.dropwizard.routing.db.RouteBulkhead;
+import com.astonish.dropwizard.routing.db.RouteBulkheads;
+import com.astonish.dropwizard.routing.db.RouteContext;
+
+/**
+ * Enforces the {@link RouteBulkhead} of each request's route, so that a saturated route can not take every worker
+ * thread and starve the others.
+ * <p/>
+ * Runs after the routing filters. A request over its route's limit waits in the route's bounded queue and is
+ * rejected if it does not get a permit, see {@link RoutePermitFilter}.
+ */
+@Provider
+@Priority(Priorities.USER + 2)
+public class RouteBulkheadFilter extends RoutePermitFilter<RouteBulkhead> {
+    private final RouteBulkheads bulkheads;
+
+    /**
+     * @param bulkheads
+     *            the {@link RouteBulkheads}
+     */
+    public RouteBulkheadFilter(final RouteBulkheads bulkheads) {
+        this(bulkheads, DEFAULT_RETRY_AFTER_SECONDS);
+    }
+
+    /**
+     * @param bulkheads
+     *            the {@link RouteBulkheads}
+     * @param retryAfterSeconds
+     *            the Retry-After of rejected requests, in seconds
+     */
+    public RouteBulkheadFilter(final RouteBulkheads bulkheads, final int retryAfterSeconds) {
+        super(retryAfterSeconds);
+        this.bulkheads = checkNotNull(bulkheads, "bulkheads is required");
+    }
+
+    @Override
+    protected RouteBulkhead permitOf(RouteContext context) {
+        return bulkheads.get(context);
+    }
+
+    @Override
+    protected boolean acquire(RouteBulkhead bulkhead) {
+        return bulkhead.acquire();
+    }
+
+    @Override
+    protected void release(RouteBulkhead bulkhead) {
+        bulkhead.release();
+    }
+}
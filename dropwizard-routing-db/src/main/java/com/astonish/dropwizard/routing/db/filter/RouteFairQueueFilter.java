@@ -0,0 +1,74 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.ext.Provider;
+
+import com.astonish.dropwizard.routing.db.RouteContext;
+import com.astonish.dropwizard.routing.db.RouteFairQueue;
+
+/**
+ * Schedules requests onto the shared capacity of the service by weighted fair queuing across routes, see
+ * {@link RouteFairQueue}.
+ * <p/>
+ * Runs after the {@link RouteBulkheadFilter}, so that a request only competes for the shared capacity once its own
+ * route has room for it. A request that does not get a permit in time is rejected, see {@link RoutePermitFilter}.
+ */
+@Provider
+@Priority(Priorities.USER + 3)
+public class RouteFairQueueFilter extends RoutePermitFilter<RouteFairQueue.Flow> {
+    private final RouteFairQueue fairQueue;
+
+    /**
+     * @param fairQueue
+     *            the {@link RouteFairQueue}
+     */
+    public RouteFairQueueFilter(final RouteFairQueue fairQueue) {
+        this(fairQueue, DEFAULT_RETRY_AFTER_SECONDS);
+    }
+
+    /**
+     * @param fairQueue
+     *            the {@link RouteFairQueue}
+     * @param retryAfterSeconds
+     *            the Retry-After of rejected requests, in seconds
+     */
+    public RouteFairQueueFilter(final RouteFairQueue fairQueue, final int retryAfterSeconds) {
+        super(retryAfterSeconds);
+        this.fairQueue = checkNotNull(fairQueue, "fairQueue is required");
+    }
+
+    @Override
+    protected RouteFairQueue.Flow permitOf(RouteContext context) {
+        return fairQueue.get(context);
+    }
+
+    @Override
+    protected boolean acquire(RouteFairQueue.Flow flow) {
+        return flow.acquire();
+    }
+
+    @Override
+    protected void release(RouteFairQueue.Flow flow) {
+        flow.release();
+    }
+}
@@ -0,0 +1,128 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+
+import com.astonish.dropwizard.routing.db.RouteRegistry;
+import com.astonish.dropwizard.routing.db.RouteStore;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Times requests per route key, so that routes sharing one physical route through aliases keep their own request
+ * rate and latency while sharing the pool metrics of the physical route.
+ * <p/>
+ * Runs after the routing filters, including the non pre-matching {@link RoutingRequestFilterHeaderImpl}, and only
+ * times keys that resolve in the {@link RouteRegistry}, so the number of timers is bounded by the number of route
+ * names and aliases. Timers are named
+ * {@code <prefix>.<key>.requests}.
+ */
+@Provider
+@Priority(Priorities.USER + 1)
+public class RouteKeyMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+    static final String DEFAULT_PREFIX = "routes";
+    private static final String CONTEXT_PROPERTY = RouteKeyMetricsFilter.class.getName() + ".context";
+
+    private final RouteRegistry<?> registry;
+    private final MetricRegistry metrics;
+    private final String prefix;
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} holding the known route keys
+     * @param metrics
+     *            the {@link MetricRegistry} to register the timers with
+     */
+    public RouteKeyMetricsFilter(final RouteRegistry<?> registry, final MetricRegistry metrics) {
+        this(registry, metrics, DEFAULT_PREFIX);
+    }
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} holding the known route keys
+     * @param metrics
+     *            the {@link MetricRegistry} to register the timers with
+     * @param prefix
+     *            the prefix of the timer names
+     */
+    public RouteKeyMetricsFilter(final RouteRegistry<?> registry, final MetricRegistry metrics, final String prefix) {
+        this.registry = checkNotNull(registry, "registry is required");
+        this.metrics = checkNotNull(metrics, "metrics is required");
+        this.prefix = checkNotNull(prefix, "prefix is required");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.ws.rs.container.ContainerRequestFilter#filter(javax.ws.rs.container.ContainerRequestContext)
+     */
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        final String key = RouteStore.getInstance().getRoute();
+        if (null == key || null == registry.getRouteTable().get(key)) {
+            return;
+        }
+        requestContext.setProperty(CONTEXT_PROPERTY, timer(key).time());
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.ws.rs.container.ContainerResponseFilter#filter(javax.ws.rs.container.ContainerRequestContext,
+     * javax.ws.rs.container.ContainerResponseContext)
+     */
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+            throws IOException {
+        final Object context = requestContext.getProperty(CONTEXT_PROPERTY);
+        if (context instanceof Timer.Context) {
+            ((Timer.Context) context).stop();
+        }
+    }
+
+    /**
+     * @param key
+     *            the route name or alias
+     * @return the {@link Timer} of the key, registered on first use
+     */
+    Timer timer(final String key) {
+        final Timer timer = timers.get(key);
+        if (null != timer) {
+            return timer;
+        }
+
+        // MetricRegistry returns the already registered timer if another thread won
+        final Timer registered = metrics.timer(MetricRegistry.name(prefix, key, "requests"));
+        timers.put(key, registered);
+        return registered;
+    }
+}
@@ -0,0 +1,163 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import com.astonish.dropwizard.routing.db.RouteContext;
+import com.astonish.dropwizard.routing.db.RouteStore;
+
+/**
+ * Holds a permit of the request's route for the life of the request.
+ * <p/>
+ * The request filter takes the permit of the current route, or aborts the request with a 503 and a Retry-After
+ * header if it does not get one. The permit is kept in a request property and handed back by the response filter, or
+ * when the request finishes if the response filters never run, as for unmapped exceptions; the property is cleared
+ * on release, so the permit is handed back once. Requests without a known route pass through unlimited.
+ * @param <P>
+ *            the type of permit
+ */
+public abstract class RoutePermitFilter<P> implements ContainerRequestFilter, ContainerResponseFilter,
+        ApplicationEventListener {
+    static final String OVERLOADED = "Route overloaded";
+    static final int DEFAULT_RETRY_AFTER_SECONDS = 1;
+
+    private final String permitProperty = getClass().getName() + ".permit";
+    private final String retryAfter;
+    private final RequestEventListener releaseOnFinish = new RequestEventListener() {
+        @Override
+        public void onEvent(RequestEvent event) {
+            if (event.getType() == RequestEvent.Type.FINISHED) {
+                releaseHeld(event.getContainerRequest());
+            }
+        }
+    };
+
+    /**
+     * @param retryAfterSeconds
+     *            the Retry-After of rejected requests, in seconds
+     */
+    protected RoutePermitFilter(final int retryAfterSeconds) {
+        checkArgument(0 <= retryAfterSeconds, "retryAfterSeconds must not be negative");
+        this.retryAfter = Integer.toString(retryAfterSeconds);
+    }
+
+    /**
+     * @param context
+     *            the {@link RouteContext} of the request
+     * @return the source of permits of the context's route, or null if the route is unknown
+     */
+    protected abstract P permitOf(RouteContext context);
+
+    /**
+     * @param permit
+     *            the source of permits of the request's route
+     * @return true if a permit was taken, false to reject the request
+     */
+    protected abstract boolean acquire(P permit);
+
+    /**
+     * @param permit
+     *            the source the request took its permit from
+     */
+    protected abstract void release(P permit);
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.ws.rs.container.ContainerRequestFilter#filter(javax.ws.rs.container.ContainerRequestContext)
+     */
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        final RouteContext context = RouteStore.getInstance().peek();
+        final P permit = null == context ? null : permitOf(context);
+        if (null == permit) {
+            return;
+        }
+
+        if (acquire(permit)) {
+            requestContext.setProperty(permitProperty, permit);
+        } else {
+            requestContext.abortWith(rejection());
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.ws.rs.container.ContainerResponseFilter#filter(javax.ws.rs.container.ContainerRequestContext,
+     * javax.ws.rs.container.ContainerResponseContext)
+     */
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+            throws IOException {
+        releaseHeld(requestContext);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.glassfish.jersey.server.monitoring.ApplicationEventListener#onEvent(ApplicationEvent)
+     */
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.glassfish.jersey.server.monitoring.ApplicationEventListener#onRequest(RequestEvent)
+     */
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        return releaseOnFinish;
+    }
+
+    /**
+     * Hands back the request's permit if it still holds one, clearing the property so that it is released only once.
+     */
+    @SuppressWarnings("unchecked")
+    private void releaseHeld(final ContainerRequestContext requestContext) {
+        final Object permit = null == requestContext ? null : requestContext.getProperty(permitProperty);
+        if (null != permit) {
+            requestContext.removeProperty(permitProperty);
+            release((P) permit);
+        }
+    }
+
+    private Response rejection() {
+        return Response.status(Status.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, retryAfter)
+                .type(MediaType.TEXT_PLAIN_TYPE).entity(OVERLOADED).build();
+    }
+}
@@ -0,0 +1,96 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import javax.ws.rs.ext.Provider;
+
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import com.astonish.dropwizard.routing.db.RouteContext;
+import com.astonish.dropwizard.routing.db.RouteStore;
+
+/**
+ * Unbinds the route from the {@link RouteStore} when a request finishes, whether it succeeded or failed, so that the
+ * route set by the routing filter never outlives its request.
+ * <p/>
+ * A suspended request finishes on whichever thread resumes it, so the route is also taken off the dispatching thread
+ * as soon as the resource method returns, and bound again on the thread that goes on to run the response filters or
+ * exception mappers. The dispatching thread goes back to its pool without a route either way.
+ */
+@Provider
+public class RouteScopeApplicationListener implements ApplicationEventListener {
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.glassfish.jersey.server.monitoring.ApplicationEventListener#onEvent(ApplicationEvent)
+     */
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.glassfish.jersey.server.monitoring.ApplicationEventListener#onRequest(RequestEvent)
+     */
+    @Override
+    public RequestEventListener onRequest(RequestEvent event) {
+        return new RouteScope();
+    }
+
+    /**
+     * Follows the route of one request from thread to thread.
+     */
+    private static final class RouteScope implements RequestEventListener {
+        private boolean methodFinished;
+        private RouteContext detached;
+        private boolean rebound;
+        private RouteContext previous;
+
+        @Override
+        public void onEvent(RequestEvent event) {
+            final RouteStore store = RouteStore.getInstance();
+            switch (event.getType()) {
+            case RESOURCE_METHOD_FINISHED:
+                // still on the dispatching thread, which returns to its pool here if the request was suspended
+                this.methodFinished = true;
+                this.detached = store.detach();
+                break;
+            case ON_EXCEPTION:
+            case RESP_FILTERS_START:
+                if (null != detached) {
+                    this.previous = store.bind(detached);
+                    this.detached = null;
+                    this.rebound = true;
+                }
+                break;
+            case FINISHED:
+                if (!methodFinished || rebound) {
+                    // a route bound on a thread resuming the request is the thread's own, put it back
+                    store.unbind(previous);
+                }
+                break;
+            default:
+                break;
+            }
+        }
+    }
+}
@@ -27,7 +27,9 @@ import javax.ws.rs.ext.Provider;
 import com.astonish.dropwizard.routing.db.RouteStore;
 
 /**
- * Checks all requests for a RouteKey header and stores the route in the {@link RouteStore}.
+ * Checks all requests for a RouteKey header and stores the route in the {@link RouteStore}. The
+ * {@link RouteScopeApplicationListener} unbinds the route when the request finishes; the routing bundle registers it,
+ * register it alongside otherwise.
  */
 @Provider
 public class RoutingRequestFilterHeaderImpl implements ContainerRequestFilter {
@@ -0,0 +1,60 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.ext.Provider;
+
+import com.astonish.dropwizard.routing.db.RouteStore;
+import com.astonish.dropwizard.routing.db.resolver.RouteResolver;
+import com.astonish.dropwizard.routing.db.resolver.RouteResolverChain;
+
+/**
+ * Resolves the route of all requests with a {@link RouteResolver} and stores it in the {@link RouteStore}. Runs
+ * before resource matching, so resolvers may rewrite the request path.
+ */
+@Provider
+@PreMatching
+@Priority(Priorities.AUTHENTICATION)
+public class RoutingRequestFilterResolverImpl implements ContainerRequestFilter {
+    private final RouteResolver resolver;
+
+    /**
+     * @param resolver
+     *            the {@link RouteResolver}, see {@link RouteResolverChain} to combine several
+     */
+    public RoutingRequestFilterResolverImpl(final RouteResolver resolver) {
+        this.resolver = checkNotNull(resolver, "resolver is required");
+    }
+
+    /* (non-Javadoc)
+     * @see javax.ws.rs.container.ContainerRequestFilter#filter(javax.ws.rs.container.ContainerRequestContext)
+     */
+    @Override
+    public void filter(ContainerRequestContext ctxt) throws IOException {
+        RouteStore.getInstance().setRoute(resolver.resolve(ctxt));
+    }
+}
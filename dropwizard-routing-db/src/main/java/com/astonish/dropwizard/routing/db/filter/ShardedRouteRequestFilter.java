@@ -0,0 +1,134 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.ext.Provider;
+
+import com.astonish.dropwizard.routing.db.Route;
+import com.astonish.dropwizard.routing.db.RouteKeyIndex;
+import com.astonish.dropwizard.routing.db.RouteRegistry;
+import com.astonish.dropwizard.routing.db.RouteRing;
+import com.astonish.dropwizard.routing.db.RouteStore;
+import com.astonish.dropwizard.routing.db.RouteTable;
+import com.astonish.dropwizard.routing.db.resolver.HeaderRouteResolver;
+import com.astonish.dropwizard.routing.db.resolver.RouteResolver;
+import com.astonish.dropwizard.routing.db.resolver.RouteResolverChain;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Pre-matching filter sharding arbitrary route keys, such as tenant ids, onto the routes of a {@link RouteRegistry}
+ * through a {@link RouteRing}, so that new tenants need no configuration.
+ * <p/>
+ * Route names and aliases resolve to their own route, aliases thereby pinning keys to a route; any other key is
+ * stored together with the shard owning it. The ring follows routes added to and removed from the registry. A
+ * request is only rejected, as by {@link KnownRouteRequestFilter}, when there is no shard for its key.
+ */
+@Provider
+@PreMatching
+@Priority(Priorities.AUTHENTICATION)
+public class ShardedRouteRequestFilter implements ContainerRequestFilter {
+    private final RouteRegistry<?> registry;
+    private final RouteResolver resolver;
+    private final RejectedRouteKeys rejectedKeys;
+    private volatile RouteRing ring;
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} holding the shards
+     * @param virtualNodes
+     *            the number of points of each shard on the ring
+     */
+    public ShardedRouteRequestFilter(final RouteRegistry<?> registry, final int virtualNodes) {
+        this(registry, new HeaderRouteResolver(), new RejectedRouteKeys(KnownRouteRequestFilter.DEFAULT_TRACKED_KEYS),
+                virtualNodes, ImmutableSet.<String> of());
+    }
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} holding the shards
+     * @param resolver
+     *            the {@link RouteResolver}, see {@link RouteResolverChain} to combine several
+     * @param rejectedKeys
+     *            counts the rejected keys
+     * @param virtualNodes
+     *            the number of points of each shard on the ring
+     * @param dedicated
+     *            the names of routes only serving their own name and aliases
+     */
+    public ShardedRouteRequestFilter(final RouteRegistry<?> registry, final RouteResolver resolver,
+            final RejectedRouteKeys rejectedKeys, final int virtualNodes, final ImmutableSet<String> dedicated) {
+        this.registry = checkNotNull(registry, "registry is required");
+        this.resolver = checkNotNull(resolver, "resolver is required");
+        this.rejectedKeys = checkNotNull(rejectedKeys, "rejectedKeys is required");
+        this.ring = RouteRing.of(registry.getRouteTable(), virtualNodes, dedicated);
+    }
+
+    /**
+     * @return the counts of rejected keys
+     */
+    public RejectedRouteKeys getRejectedKeys() {
+        return rejectedKeys;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.ws.rs.container.ContainerRequestFilter#filter(javax.ws.rs.container.ContainerRequestContext)
+     */
+    @Override
+    public void filter(ContainerRequestContext ctxt) throws IOException {
+        final String key = resolver.resolve(ctxt);
+        if (RouteKeyIndex.isBlank(key)) {
+            RouteStore.getInstance().setRoute(null);
+            return;
+        }
+
+        final String trimmed = key.trim();
+        final Route route = ring().get(trimmed);
+        if (null != route) {
+            RouteStore.getInstance().setRoute(trimmed, route);
+        } else {
+            rejectedKeys.add(key);
+            ctxt.abortWith(KnownRouteRequestFilter.rejection());
+        }
+    }
+
+    /**
+     * @return the {@link RouteRing} of the current routes, rebuilt when routes are added or removed
+     */
+    private RouteRing ring() {
+        final RouteRing current = ring;
+        final RouteTable table = registry.getRouteTable();
+        if (current.getTable() == table) {
+            return current;
+        }
+
+        final RouteRing rebuilt = current.withTable(table);
+        this.ring = rebuilt;
+        return rebuilt;
+    }
+}
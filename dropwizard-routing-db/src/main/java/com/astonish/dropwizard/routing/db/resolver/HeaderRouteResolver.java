@@ -0,0 +1,53 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.resolver;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.ws.rs.container.ContainerRequestContext;
+
+/**
+ * Resolves the route from a request header, by default the RouteKey header.
+ */
+public final class HeaderRouteResolver implements RouteResolver {
+    public static final String DEFAULT_HEADER_NAME = "RouteKey";
+
+    private final String headerName;
+
+    public HeaderRouteResolver() {
+        this(DEFAULT_HEADER_NAME);
+    }
+
+    /**
+     * @param headerName
+     *            the header holding the route
+     */
+    public HeaderRouteResolver(final String headerName) {
+        this.headerName = checkNotNull(headerName, "headerName is required");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.astonish.dropwizard.routing.db.resolver.RouteResolver#resolve(ContainerRequestContext)
+     */
+    @Override
+    public String resolve(ContainerRequestContext request) {
+        return request.getHeaderString(headerName);
+    }
+}
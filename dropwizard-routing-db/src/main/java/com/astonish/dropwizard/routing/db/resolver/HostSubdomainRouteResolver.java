@@ -0,0 +1,62 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.resolver;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.HttpHeaders;
+
+/**
+ * Resolves the route from the subdomain of the Host header: for the domain {@code api.example.com}, a request to
+ * {@code starbucks.api.example.com} resolves to {@code starbucks}. Hosts outside the domain, the domain itself and
+ * deeper subdomains do not resolve.
+ */
+public final class HostSubdomainRouteResolver implements RouteResolver {
+    private final String suffix;
+
+    /**
+     * @param domain
+     *            the domain under which each route has its own subdomain
+     */
+    public HostSubdomainRouteResolver(final String domain) {
+        this.suffix = "." + checkNotNull(domain, "domain is required");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.astonish.dropwizard.routing.db.resolver.RouteResolver#resolve(ContainerRequestContext)
+     */
+    @Override
+    public String resolve(ContainerRequestContext request) {
+        final String host = request.getHeaderString(HttpHeaders.HOST);
+        if (null == host) {
+            return null;
+        }
+
+        final int port = host.lastIndexOf(':');
+        final int end = port < 0 ? host.length() : port;
+        final int domainStart = end - suffix.length();
+        if (domainStart <= 0 || !host.regionMatches(true, domainStart, suffix, 0, suffix.length())
+                || host.lastIndexOf('.', domainStart - 1) >= 0) {
+            return null;
+        }
+        return host.substring(0, domainStart);
+    }
+}
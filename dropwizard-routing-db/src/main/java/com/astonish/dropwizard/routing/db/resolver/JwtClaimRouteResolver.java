@@ -0,0 +1,89 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.resolver;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.HttpHeaders;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Resolves the route from a claim of the JWT bearer token in the Authorization header.
+ * <p/>
+ * The token's signature is <b>not</b> verified here: only use this resolver where tokens are verified before the
+ * route is used, for example by an authenticating proxy in front of the application, otherwise clients can pick any
+ * route.
+ */
+public final class JwtClaimRouteResolver implements RouteResolver {
+    private static final String BEARER = "Bearer ";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String claim;
+
+    /**
+     * @param claim
+     *            the claim holding the route
+     */
+    public JwtClaimRouteResolver(final String claim) {
+        this.claim = checkNotNull(claim, "claim is required");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.astonish.dropwizard.routing.db.resolver.RouteResolver#resolve(ContainerRequestContext)
+     */
+    @Override
+    public String resolve(ContainerRequestContext request) {
+        final String authorization = request.getHeaderString(HttpHeaders.AUTHORIZATION);
+        if (null == authorization || !authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return null;
+        }
+
+        final int payloadStart = authorization.indexOf('.', BEARER.length()) + 1;
+        final int payloadEnd = authorization.indexOf('.', payloadStart);
+        if (0 == payloadStart || payloadEnd < 0) {
+            return null;
+        }
+
+        try {
+            final String payload = authorization.substring(payloadStart, payloadEnd);
+            final JsonNode claims = MAPPER.readTree(BaseEncoding.base64Url().omitPadding()
+                    .decode(trimPadding(payload)));
+            final JsonNode value = null == claims ? null : claims.get(claim);
+            return null == value || !value.isValueNode() || value.isNull() ? null : value.asText();
+        } catch (IOException | IllegalArgumentException e) {
+            // not a JWT, leave it to whatever authenticates the request
+            return null;
+        }
+    }
+
+    private static String trimPadding(final String payload) {
+        int end = payload.length();
+        while (end > 0 && payload.charAt(end - 1) == '=') {
+            end--;
+        }
+        return payload.substring(0, end);
+    }
+}
@@ -0,0 +1,85 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.resolver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.net.URI;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.UriInfo;
+
+import org.glassfish.jersey.uri.UriComponent;
+
+/**
+ * Resolves the route from a segment of the request path, relative to the application's base URI. With
+ * {@code strip} the segment is removed from the request before resource matching, so that {@code /starbucks/recipes}
+ * is served by the resource at {@code /recipes}.
+ */
+public final class PathSegmentRouteResolver implements RouteResolver {
+    private final int index;
+    private final boolean strip;
+
+    /**
+     * @param index
+     *            the zero-based index of the path segment holding the route
+     * @param strip
+     *            true to remove the segment from the request path
+     */
+    public PathSegmentRouteResolver(final int index, final boolean strip) {
+        checkArgument(index >= 0, "index must not be negative");
+        this.index = index;
+        this.strip = strip;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.astonish.dropwizard.routing.db.resolver.RouteResolver#resolve(ContainerRequestContext)
+     */
+    @Override
+    public String resolve(ContainerRequestContext request) {
+        final UriInfo uriInfo = request.getUriInfo();
+        final String path = uriInfo.getPath(false);
+
+        int start = path.startsWith("/") ? 1 : 0;
+        for (int i = 0; i < index; i++) {
+            start = path.indexOf('/', start) + 1;
+            if (0 == start) {
+                return null;
+            }
+        }
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+        if (start >= end) {
+            return null;
+        }
+
+        if (strip) {
+            final String query = uriInfo.getRequestUri().getRawQuery();
+            final String stripped = path.substring(path.startsWith("/") ? 1 : 0, start)
+                    + path.substring(Math.min(end + 1, path.length()));
+            request.setRequestUri(uriInfo.getBaseUri(),
+                    URI.create(uriInfo.getBaseUri() + stripped + (null == query ? "" : "?" + query)));
+        }
+        final String segment = path.substring(start, end);
+        return segment.indexOf('%') < 0 ? segment : UriComponent.decode(segment, UriComponent.Type.PATH_SEGMENT);
+    }
+}
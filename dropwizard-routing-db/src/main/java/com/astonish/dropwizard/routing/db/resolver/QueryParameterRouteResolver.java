@@ -0,0 +1,82 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.resolver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+
+import javax.ws.rs.container.ContainerRequestContext;
+
+/**
+ * Resolves the route from a query parameter. The raw query is scanned for the parameter directly, rather than having
+ * every parameter of the request parsed into a map.
+ */
+public final class QueryParameterRouteResolver implements RouteResolver {
+    private final String prefix;
+
+    /**
+     * @param name
+     *            the query parameter holding the route
+     */
+    public QueryParameterRouteResolver(final String name) {
+        checkNotNull(name, "name is required");
+        checkArgument(!name.isEmpty(), "name is required");
+        this.prefix = name + "=";
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.astonish.dropwizard.routing.db.resolver.RouteResolver#resolve(ContainerRequestContext)
+     */
+    @Override
+    public String resolve(ContainerRequestContext request) {
+        final String query = request.getUriInfo().getRequestUri().getRawQuery();
+        if (null == query) {
+            return null;
+        }
+
+        int start = 0;
+        while (start < query.length()) {
+            int end = query.indexOf('&', start);
+            if (end < 0) {
+                end = query.length();
+            }
+            if (query.startsWith(prefix, start)) {
+                final String value = query.substring(start + prefix.length(), end);
+                return value.isEmpty() ? null : decode(value);
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    private static String decode(final String value) {
+        if (value.indexOf('%') < 0 && value.indexOf('+') < 0) {
+            return value;
+        }
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
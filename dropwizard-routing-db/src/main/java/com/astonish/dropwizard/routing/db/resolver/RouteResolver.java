@@ -0,0 +1,35 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.resolver;
+
+import javax.ws.rs.container.ContainerRequestContext;
+
+/**
+ * Extracts the route key from a request. Resolvers run in a pre-matching filter, once per request, and should not
+ * allocate beyond the key they return.
+ */
+public interface RouteResolver {
+    /**
+     * Resolves the route key of a request. A resolver may adjust the request, for example to strip the route from the
+     * path, but only when it resolves a key.
+     * @param request
+     *            the request
+     * @return the route key, or null if this resolver can not find one in the request
+     */
+    String resolve(ContainerRequestContext request);
+}
@@ -0,0 +1,76 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.resolver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.ws.rs.container.ContainerRequestContext;
+
+/**
+ * Tries {@link RouteResolver}s in order and returns the first key found. Chains are compiled once at startup by
+ * {@link #of(RouteResolver...)}: nested chains are flattened into a single array so that resolution is one pass.
+ */
+public final class RouteResolverChain implements RouteResolver {
+    private final RouteResolver[] resolvers;
+
+    private RouteResolverChain(final RouteResolver[] resolvers) {
+        this.resolvers = resolvers;
+    }
+
+    /**
+     * @param resolvers
+     *            the {@link RouteResolver}s, in order of precedence
+     * @return a {@link RouteResolver} trying each in order, or the resolver itself if there is only one
+     */
+    public static RouteResolver of(final RouteResolver... resolvers) {
+        checkArgument(resolvers.length > 0, "at least one resolver is required");
+
+        final List<RouteResolver> flattened = new ArrayList<>();
+        for (RouteResolver resolver : resolvers) {
+            checkNotNull(resolver, "resolver is required");
+            if (resolver instanceof RouteResolverChain) {
+                flattened.addAll(Arrays.asList(((RouteResolverChain) resolver).resolvers));
+            } else {
+                flattened.add(resolver);
+            }
+        }
+        return 1 == flattened.size() ? flattened.get(0) : new RouteResolverChain(
+                flattened.toArray(new RouteResolver[flattened.size()]));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.astonish.dropwizard.routing.db.resolver.RouteResolver#resolve(ContainerRequestContext)
+     */
+    @Override
+    public String resolve(ContainerRequestContext request) {
+        for (RouteResolver resolver : resolvers) {
+            final String route = resolver.resolve(request);
+            if (null != route) {
+                return route;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,101 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link AdaptiveRouteLimiter} and {@link GradientLimit}.
+ */
+public class AdaptiveRouteLimiterTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final RouteRegistry<String> registry = new RouteRegistry<>(ImmutableMap.of("RouteOne", "one", "RouteTwo",
+            "two"));
+    private final RouteBulkheads bulkheads = new RouteBulkheads(registry, 50, 0, 0, TimeUnit.SECONDS);
+    private final MetricRegistry metrics = new MetricRegistry();
+
+    @Test
+    public void shrinksWhenLatencyRisesAndRecovers() {
+        final GradientLimit limit = new GradientLimit(50, 1, 50);
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(FAST, 50);
+        }
+        assertThat(limit.getLimit()).isEqualTo(50);
+
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(SLOW, 50);
+        }
+        final int shrunk = limit.getLimit();
+        assertThat(shrunk).isLessThan(20);
+
+        for (int i = 0; i < 200; i++) {
+            limit.onSample(FAST, limit.getLimit());
+        }
+        assertThat(limit.getLimit()).isEqualTo(50);
+    }
+
+    @Test
+    public void doesNotGrowWhileMostlyIdle() {
+        final GradientLimit limit = new GradientLimit(10, 1, 50);
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(FAST, 1);
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    public void adaptsTheBulkheadOfTheRouteAndPublishesTheLimit() {
+        final AdaptiveRouteLimiter limiter = new AdaptiveRouteLimiter(registry, bulkheads, metrics);
+        final Route route = registry.getRouteTable().get("RouteOne");
+        assertThat(metrics.getGauges().get("routes.RouteOne.limit").getValue()).isEqualTo(50);
+
+        limiter.record(route, 10, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 20; i++) {
+            limiter.record(route, 100, TimeUnit.MILLISECONDS);
+        }
+
+        assertThat(bulkheads.get("RouteOne").getLimit()).isLessThan(50);
+        assertThat(bulkheads.get("RouteTwo").getLimit()).isEqualTo(50);
+        assertThat(metrics.getGauges().get("routes.RouteOne.limit").getValue()).isEqualTo(
+                bulkheads.get("RouteOne").getLimit());
+    }
+
+    @Test
+    public void followsRoutesAddedAndRemoved() throws Exception {
+        final AdaptiveRouteLimiter limiter = new AdaptiveRouteLimiter(registry, bulkheads, metrics);
+        bulkheads.setLimit("RouteThree", 8);
+        registry.addRoute("RouteThree", "three");
+
+        assertThat(limiter.get("RouteThree").getMaxLimit()).isEqualTo(8);
+        assertThat(metrics.getGauges()).containsKey("routes.RouteThree.limit");
+
+        registry.removeRoute("RouteThree", 1, TimeUnit.SECONDS);
+        assertThat(limiter.get("RouteThree")).isNull();
+        assertThat(metrics.getGauges()).doesNotContainKey("routes.RouteThree.limit");
+    }
+}
@@ -0,0 +1,231 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link DAORouter}.
+ */
+public class DAORouterTest {
+    private static final String ROUTE_ONE = "RouteOne";
+    private static final String ROUTE_TWO = "RouteTwo";
+
+    private final FirstDAO firstDAORouteOne = new FirstDAO();
+    private final FirstDAO firstDAORouteTwo = new FirstDAO();
+    private final SecondDAO secondDAORouteOne = new SecondDAO();
+    private final SecondDAO secondDAORouteTwo = new SecondDAO();
+    private final DAORouter daoRouter = new DAORouter();
+
+    @Before
+    public void setUp() {
+        daoRouter.setDAOsByRoute(ImmutableMap.<String, ImmutableMap<Class<?>, Object>> of(
+                ROUTE_ONE,
+                ImmutableMap.<Class<?>, Object> of(FirstDAO.class, firstDAORouteOne, SecondDAO.class,
+                        secondDAORouteOne),
+                ROUTE_TWO,
+                ImmutableMap.<Class<?>, Object> of(SecondDAO.class, secondDAORouteTwo, FirstDAO.class,
+                        firstDAORouteTwo)));
+    }
+
+    @After
+    public void tearDown() {
+        RouteStore.getInstance().get().clear();
+    }
+
+    @Test
+    public void routesToTheDAOsOfTheCurrentRoute() {
+        RouteStore.getInstance().setRoute(ROUTE_ONE);
+        assertThat(daoRouter.getDAO(FirstDAO.class)).isSameAs(firstDAORouteOne);
+        assertThat(daoRouter.getDAO(SecondDAO.class)).isSameAs(secondDAORouteOne);
+
+        RouteStore.getInstance().setRoute(ROUTE_TWO);
+        assertThat(daoRouter.getDAO(FirstDAO.class)).isSameAs(firstDAORouteTwo);
+        assertThat(daoRouter.getDAO(SecondDAO.class)).isSameAs(secondDAORouteTwo);
+    }
+
+    @Test
+    public void assignsOrdinalsInRouteOrder() {
+        RouteStore.getInstance().setRoute(ROUTE_TWO);
+
+        assertThat(daoRouter.currentRoute().getName()).isEqualTo(ROUTE_TWO);
+        assertThat(daoRouter.currentRoute().getOrdinal()).isEqualTo(1);
+        assertThat(daoRouter.allRoutes()).containsExactly(ROUTE_ONE, ROUTE_TWO);
+    }
+
+    @Test
+    public void cachesTheResolvedRouteForTheRequest() {
+        RouteStore.getInstance().setRoute(ROUTE_ONE);
+        final Route route = daoRouter.currentRoute();
+
+        assertThat(RouteStore.getInstance().get().getResolvedRoute()).isSameAs(route);
+        assertThat(daoRouter.currentRoute()).isSameAs(route);
+
+        RouteStore.getInstance().setRoute(ROUTE_TWO);
+        assertThat(RouteStore.getInstance().get().getResolvedRoute()).isNull();
+    }
+
+    /**
+     * The success path of getDAO must not allocate; measured with the per-thread allocation counter exposed by
+     * HotSpot.
+     */
+    @Test
+    public void getDAODoesNotAllocate() {
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        final long threadId = Thread.currentThread().getId();
+        RouteStore.getInstance().setRoute(ROUTE_TWO);
+        for (int i = 0; i < 20000; i++) {
+            lookupBoth();
+        }
+
+        final long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; i++) {
+            lookupBoth();
+        }
+        final long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        // allow for the bookkeeping of the measurement itself, 200k lookups allocating anything would exceed this
+        assertThat(allocated).isLessThan(1024);
+    }
+
+    @Test
+    public void buildsLazyRoutesOnFirstAccess() {
+        final LazyDAORouter lazyRouter = new LazyDAORouter();
+
+        RouteStore.getInstance().setRoute(ROUTE_ONE);
+        assertThat(lazyRouter.getDAO(FirstDAO.class)).isSameAs(firstDAORouteOne);
+        assertThat(lazyRouter.loads.get()).isZero();
+
+        RouteStore.getInstance().setRoute(ROUTE_TWO);
+        final FirstDAO first = lazyRouter.getDAO(FirstDAO.class);
+        final SecondDAO second = lazyRouter.getDAO(SecondDAO.class);
+        assertThat(lazyRouter.getDAO(FirstDAO.class)).isSameAs(first);
+        assertThat(lazyRouter.getDAO(SecondDAO.class)).isSameAs(second);
+        assertThat(lazyRouter.loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void concurrentFirstAccessesSeeTheSameDAO() throws Exception {
+        final LazyDAORouter lazyRouter = new LazyDAORouter();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<FirstDAO>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<FirstDAO>() {
+                    @Override
+                    public FirstDAO call() throws Exception {
+                        start.await();
+                        RouteStore.getInstance().setRoute(ROUTE_TWO);
+                        return lazyRouter.getDAO(FirstDAO.class);
+                    }
+                }));
+            }
+            start.countDown();
+
+            final FirstDAO expected = futures.get(0).get();
+            for (Future<FirstDAO> future : futures) {
+                assertThat(future.get()).isSameAs(expected);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void routesLeftToBuildRequireLoadDAOs() {
+        new DAORouter().setRoutes(ImmutableList.of(ROUTE_ONE, ROUTE_TWO),
+                ImmutableMap.<String, ImmutableMap<Class<?>, Object>> of(ROUTE_ONE,
+                        ImmutableMap.<Class<?>, Object> of(FirstDAO.class, firstDAORouteOne)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void followingARegistryRequiresLoadDAOs() {
+        new DAORouter().setRoutes(new RouteRegistry<>(ImmutableMap.of(ROUTE_ONE, "one")),
+                ImmutableMap.<String, ImmutableMap<Class<?>, Object>> of());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unknownRoute() {
+        RouteStore.getInstance().setRoute("unknown");
+        daoRouter.getDAO(FirstDAO.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unknownDAO() {
+        RouteStore.getInstance().setRoute(ROUTE_ONE);
+        daoRouter.getDAO(String.class);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullDAOClass() {
+        RouteStore.getInstance().setRoute(ROUTE_ONE);
+        daoRouter.getDAO(null);
+    }
+
+    private void lookupBoth() {
+        if (null == daoRouter.getDAO(FirstDAO.class) || null == daoRouter.getDAO(SecondDAO.class)) {
+            throw new AssertionError();
+        }
+    }
+
+    private class LazyDAORouter extends DAORouter {
+        private final AtomicInteger loads = new AtomicInteger();
+
+        LazyDAORouter() {
+            setRoutes(ImmutableList.of(ROUTE_ONE, ROUTE_TWO), ImmutableMap.<String, ImmutableMap<Class<?>, Object>> of(
+                    ROUTE_ONE, ImmutableMap.<Class<?>, Object> of(FirstDAO.class, firstDAORouteOne, SecondDAO.class,
+                            secondDAORouteOne)));
+        }
+
+        @Override
+        protected ImmutableMap<Class<?>, Object> loadDAOs(Route route) {
+            loads.incrementAndGet();
+            return ImmutableMap.<Class<?>, Object> of(FirstDAO.class, new FirstDAO(), SecondDAO.class,
+                    new SecondDAO());
+        }
+    }
+
+    private static class FirstDAO {
+    }
+
+    private static class SecondDAO {
+    }
+}
@@ -0,0 +1,43 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link DataSourceRoute}.
+ */
+public class DataSourceRouteTest {
+    private final DataSourceRoute route = new DataSourceRoute();
+
+    @Test
+    public void requiresTenantsToMapTheRouteName() {
+        route.setRouteName("postgres01");
+        assertThat(route.isDefaultTenantMapped()).isTrue();
+
+        route.setTenants(ImmutableMap.of("tenant0001", "tenant_0001"));
+        assertThat(route.isDefaultTenantMapped()).isFalse();
+
+        route.setTenants(ImmutableMap.of("postgres01", "public", "tenant0001", "tenant_0001"));
+        assertThat(route.isDefaultTenantMapped()).isTrue();
+    }
+}
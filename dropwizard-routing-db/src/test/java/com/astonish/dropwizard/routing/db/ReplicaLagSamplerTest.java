@@ -0,0 +1,123 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ReplicaLagSampler}.
+ */
+public class ReplicaLagSamplerTest {
+    private static final String LAG_QUERY = "SELECT lag";
+
+    @Test
+    public void recordsTheSampledLag() {
+        final Replica<DataSource> replica = new Replica<>("replica", lagging(250L));
+        new ReplicaLagSampler(replica, LAG_QUERY, 1, TimeUnit.SECONDS).run();
+
+        assertThat(replica.getLagMillis()).isEqualTo(250);
+        assertThat(replica.isAvailable()).isTrue();
+    }
+
+    @Test
+    public void takesLaggingReplicasOutOfRotationUntilTheyCatchUp() {
+        final Replica<DataSource> replica = new Replica<>("replica", lagging(5000L));
+        new ReplicaLagSampler(replica, LAG_QUERY, 1, TimeUnit.SECONDS).run();
+        assertThat(replica.isAvailable()).isFalse();
+
+        final Replica<DataSource> caughtUp = new Replica<>("replica", lagging(null));
+        caughtUp.setAvailable(false);
+        new ReplicaLagSampler(caughtUp, LAG_QUERY, 1, TimeUnit.SECONDS).run();
+        assertThat(caughtUp.isAvailable()).isTrue();
+        assertThat(caughtUp.getLagMillis()).isZero();
+    }
+
+    @Test
+    public void takesFailingReplicasOutOfRotation() {
+        final Replica<DataSource> replica = new Replica<>("replica", failing());
+        new ReplicaLagSampler(replica, LAG_QUERY, 1, TimeUnit.SECONDS).run();
+
+        assertThat(replica.isAvailable()).isFalse();
+        assertThat(replica.getLagMillis()).isEqualTo(-1);
+    }
+
+    /**
+     * @return a {@link DataSource} whose lag query returns the lag, null for a SQL NULL
+     */
+    private static DataSource lagging(final Long lagMillis) {
+        final ResultSet result = proxy(ResultSet.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                case "next":
+                    return true;
+                case "getLong":
+                    return null == lagMillis ? 0L : lagMillis;
+                case "wasNull":
+                    return null == lagMillis;
+                default:
+                    return null;
+                }
+            }
+        });
+        final Statement statement = proxy(Statement.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return "executeQuery".equals(method.getName()) && LAG_QUERY.equals(args[0]) ? result : null;
+            }
+        });
+        final Connection connection = proxy(Connection.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return "createStatement".equals(method.getName()) ? statement : null;
+            }
+        });
+        return proxy(DataSource.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return "getConnection".equals(method.getName()) ? connection : null;
+            }
+        });
+    }
+
+    private static DataSource failing() {
+        return proxy(DataSource.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                throw new SQLException("Connection refused");
+            }
+        });
+    }
+
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+}
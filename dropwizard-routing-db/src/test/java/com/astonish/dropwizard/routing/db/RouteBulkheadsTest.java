@@ -0,0 +1,127 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link RouteBulkheads} and {@link RouteBulkhead}.
+ */
+public class RouteBulkheadsTest {
+    private final RouteRegistry<String> registry = new RouteRegistry<>(ImmutableMap.of("RouteOne", "one", "RouteTwo",
+            "two"));
+
+    @After
+    public void tearDown() {
+        RouteStore.getInstance().get().clear();
+    }
+
+    @Test
+    public void rejectsOverTheLimitWithoutAQueue() {
+        final RouteBulkhead bulkhead = new RouteBulkhead(2, 0, 0, TimeUnit.SECONDS);
+
+        assertThat(bulkhead.acquire()).isTrue();
+        assertThat(bulkhead.acquire()).isTrue();
+        assertThat(bulkhead.acquire()).isFalse();
+        assertThat(bulkhead.getRejected()).isEqualTo(1);
+
+        bulkhead.release();
+        assertThat(bulkhead.acquire()).isTrue();
+        assertThat(bulkhead.getInFlight()).isEqualTo(2);
+    }
+
+    @Test
+    public void queuedRequestsGetReleasedPermits() throws Exception {
+        final RouteBulkhead bulkhead = new RouteBulkhead(1, 1, 10, TimeUnit.SECONDS);
+        assertThat(bulkhead.acquire()).isTrue();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Boolean> queued = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return bulkhead.acquire();
+                }
+            });
+            while (0 == bulkhead.getQueued()) {
+                Thread.sleep(1);
+            }
+
+            // the queue is full
+            assertThat(bulkhead.acquire()).isFalse();
+
+            bulkhead.release();
+            assertThat(queued.get(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(bulkhead.getInFlight()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void queuedRequestsGiveUpAfterTheMaximumWait() {
+        final RouteBulkhead bulkhead = new RouteBulkhead(1, 1, 10, TimeUnit.MILLISECONDS);
+        assertThat(bulkhead.acquire()).isTrue();
+
+        assertThat(bulkhead.acquire()).isFalse();
+        assertThat(bulkhead.getQueued()).isZero();
+        assertThat(bulkhead.getRejected()).isEqualTo(1);
+    }
+
+    @Test
+    public void appliesConfiguredLimitsAndDefaults() {
+        final RouteBulkheads bulkheads = new RouteBulkheads(registry, 10, 0, 0, TimeUnit.SECONDS);
+        bulkheads.setLimit("RouteTwo", 3);
+        bulkheads.setLimit("RouteThree", 5);
+
+        assertThat(bulkheads.get("RouteOne").getLimit()).isEqualTo(10);
+        assertThat(bulkheads.get("RouteTwo").getLimit()).isEqualTo(3);
+        assertThat(bulkheads.get("RouteThree")).isNull();
+
+        registry.addRoute("RouteThree", "three");
+        assertThat(bulkheads.get("RouteThree").getLimit()).isEqualTo(5);
+    }
+
+    @Test
+    public void aliasesShareTheBulkheadOfTheirRoute() {
+        final RouteBulkheads bulkheads = new RouteBulkheads(registry, 10, 0, 0, TimeUnit.SECONDS);
+        final RouteBulkhead bulkhead = bulkheads.get("RouteOne");
+        registry.addAlias("tenant42", "RouteOne");
+
+        final RouteContext context = new RouteContext();
+        context.setRoute("tenant42");
+        assertThat(bulkheads.get(context)).isSameAs(bulkhead);
+        assertThat(bulkheads.get("unknown")).isNull();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void limitsMustBePositive() {
+        new RouteBulkhead(0, 0, 0, TimeUnit.SECONDS);
+    }
+}
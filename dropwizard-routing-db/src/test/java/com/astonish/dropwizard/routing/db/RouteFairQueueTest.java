@@ -0,0 +1,143 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link RouteFairQueue}.
+ */
+public class RouteFairQueueTest {
+    private static final ImmutableMap<String, Integer> WEIGHTS = ImmutableMap.of("premium", 4, "basic", 1);
+
+    private final RouteRegistry<String> registry = new RouteRegistry<>(ImmutableMap.of("Premium", "one", "Basic",
+            "two"));
+    private final MetricRegistry metrics = new MetricRegistry();
+
+    @After
+    public void tearDown() {
+        RouteStore.getInstance().get().clear();
+    }
+
+    @Test
+    public void rejectsOverCapacityWithoutAQueue() {
+        final RouteFairQueue fairQueue = new RouteFairQueue(registry, 1, 0, 0, TimeUnit.SECONDS, WEIGHTS, "basic",
+                metrics);
+        final RouteFairQueue.Flow flow = fairQueue.get(registry.getRouteTable().get("Basic"));
+
+        assertThat(flow.acquire()).isTrue();
+        assertThat(flow.acquire()).isFalse();
+        assertThat(metrics.meter("tiers.basic.rejected").getCount()).isEqualTo(1);
+
+        flow.release();
+        assertThat(flow.acquire()).isTrue();
+        assertThat(fairQueue.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    public void grantsPermitsInProportionToTheTierWeights() throws Exception {
+        final RouteFairQueue fairQueue = new RouteFairQueue(registry, 1, 20, 10, TimeUnit.SECONDS, WEIGHTS, "basic",
+                metrics);
+        fairQueue.setTier("Premium", "premium");
+        final RouteFairQueue.Flow premium = fairQueue.get(registry.getRouteTable().get("Premium"));
+        final RouteFairQueue.Flow basic = fairQueue.get(registry.getRouteTable().get("Basic"));
+        assertThat(premium.acquire()).isTrue();
+
+        final List<String> granted = Collections.synchronizedList(new ArrayList<String>());
+        final ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            for (int i = 0; i < 5; i++) {
+                executor.submit(waiter(premium, "premium", granted));
+                executor.submit(waiter(basic, "basic", granted));
+            }
+            awaitQueued(fairQueue, 10);
+            @SuppressWarnings("unchecked")
+            final Gauge<Integer> queued = (Gauge<Integer>) metrics.getGauges().get("tiers.premium.queued");
+            assertThat(queued.getValue()).isEqualTo(5);
+
+            for (int i = 1; i <= 10; i++) {
+                premium.release();
+                awaitGranted(granted, i);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // finish tags: premium 0.25, 0.5, 0.75, 1, 1.25; basic 1, 2, 3, 4, 5
+        assertThat(granted.subList(0, 3)).containsOnly("premium");
+        assertThat(granted.subList(3, 6)).containsOnly("premium", "basic").containsOnlyOnce("basic");
+        assertThat(granted.subList(6, 10)).containsOnly("basic");
+        assertThat(metrics.timer("tiers.basic.wait").getCount()).isEqualTo(5);
+        assertThat(fairQueue.getQueued()).isZero();
+    }
+
+    @Test
+    public void remembersTiersOfRoutesAddedLater() {
+        final RouteFairQueue fairQueue = new RouteFairQueue(registry, 1, 0, 0, TimeUnit.SECONDS, WEIGHTS, "basic",
+                metrics);
+        fairQueue.setTier("RouteThree", "premium");
+        registry.addRoute("RouteThree", "three");
+        registry.addAlias("tenant42", "RouteThree");
+
+        RouteStore.getInstance().setRoute("tenant42");
+        assertThat(fairQueue.get(RouteStore.getInstance().get()).getTier().getName()).isEqualTo("premium");
+        RouteStore.getInstance().setRoute("unknown");
+        assertThat(fairQueue.get(RouteStore.getInstance().get())).isNull();
+    }
+
+    private static Runnable waiter(final RouteFairQueue.Flow flow, final String tier, final List<String> granted) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (flow.acquire()) {
+                    granted.add(tier);
+                }
+            }
+        };
+    }
+
+    private static void awaitQueued(final RouteFairQueue fairQueue, final int queued) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (fairQueue.getQueued() < queued && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(fairQueue.getQueued()).isEqualTo(queued);
+    }
+
+    private static void awaitGranted(final List<String> granted, final int size) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (granted.size() < size && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(granted).hasSize(size);
+    }
+}
@@ -0,0 +1,123 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Unit tests for {@link RouteKeyIndex}.
+ */
+public class RouteKeyIndexTest {
+    private final RouteTable table = RouteTable.of(ImmutableList.of("starbucks", "DunkinDonuts", "peets"));
+
+    @Test
+    public void returnsTheCanonicalRoute() {
+        final RouteKeyIndex index = RouteKeyIndex.of(table, false);
+
+        assertThat(index.lookup(new String("starbucks"))).isSameAs(table.get("starbucks"));
+        assertThat(index.lookup("  peets\t")).isSameAs(table.get("peets"));
+        assertThat(index.lookup("DunkinDonuts").getOrdinal()).isEqualTo(1);
+    }
+
+    @Test
+    public void resolvesAliasesToTheirRouteButKeepsTheAliasAsKey() {
+        final RouteKeyIndex index = RouteKeyIndex.of(table.withAlias("Tenant42", "peets"), true);
+
+        final int slot = index.indexOf(" tenant42");
+        assertThat(index.keyAt(slot)).isEqualTo("Tenant42");
+        assertThat(index.routeAt(slot)).isSameAs(table.get("peets"));
+        assertThat(index.lookup("TENANT42")).isSameAs(table.get("peets"));
+        assertThat(index.indexOf("tenant43")).isEqualTo(-1);
+    }
+
+    @Test
+    public void matchesCaseOnlyWhenFolding() {
+        assertThat(RouteKeyIndex.of(table, false).lookup("dunkindonuts")).isNull();
+        assertThat(RouteKeyIndex.of(table, true).lookup(" DUNKINdonuts ")).isSameAs(table.get("DunkinDonuts"));
+    }
+
+    @Test
+    public void unknownAndBlankKeysAreNotFound() {
+        final RouteKeyIndex index = RouteKeyIndex.of(table, true);
+
+        assertThat(index.lookup("starbuck")).isNull();
+        assertThat(index.lookup("starbucks2")).isNull();
+        assertThat(index.lookup("   ")).isNull();
+        assertThat(index.lookup(null)).isNull();
+        assertThat(RouteKeyIndex.isBlank(" \t")).isTrue();
+        assertThat(RouteKeyIndex.isBlank(" a ")).isFalse();
+    }
+
+    @Test
+    public void findsEveryRouteOfALargeTable() {
+        final ImmutableList.Builder<String> names = ImmutableList.builder();
+        for (int i = 0; i < 1000; i++) {
+            names.add("tenant" + i);
+        }
+        final RouteTable large = RouteTable.of(names.build());
+        final RouteKeyIndex index = RouteKeyIndex.of(large, true);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(index.lookup("TENANT" + i).getOrdinal()).isEqualTo(i);
+        }
+        assertThat(index.lookup("tenant1000")).isNull();
+    }
+
+    /**
+     * Neither trimming, case-folding nor rejecting unknown keys may allocate.
+     */
+    @Test
+    public void lookupDoesNotAllocate() {
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        final RouteKeyIndex index = RouteKeyIndex.of(table, true);
+        final long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < 20000; i++) {
+            lookupAll(index);
+        }
+
+        final long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; i++) {
+            lookupAll(index);
+        }
+        final long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        assertThat(allocated).isLessThan(1024);
+    }
+
+    private static void lookupAll(RouteKeyIndex index) {
+        if (null == index.lookup(" DunkinDonuts ") || null != index.lookup("unknown-tenant")) {
+            throw new AssertionError();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRoutesOnlyDifferingInCaseWhenFolding() {
+        RouteKeyIndex.of(RouteTable.of(ImmutableList.of("starbucks", "Starbucks")), true);
+    }
+}
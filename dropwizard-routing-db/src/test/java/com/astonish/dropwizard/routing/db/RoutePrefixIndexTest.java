@@ -0,0 +1,94 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Unit tests for {@link RoutePrefixIndex}.
+ */
+public class RoutePrefixIndexTest {
+    private final RouteTable table = RouteTable.of(ImmutableList.of("eu", "eu/acme", "eu/acme/store7", "us/acme"))
+            .withAlias("eu/globex", "eu");
+    private final RoutePrefixIndex index = RoutePrefixIndex.of(table, '/');
+
+    @Test
+    public void resolvesTheLongestPrefix() {
+        assertThat(index.lookup("eu/acme/store7").getName()).isEqualTo("eu/acme/store7");
+        assertThat(index.lookup("eu/acme/store8").getName()).isEqualTo("eu/acme");
+        assertThat(index.lookup("eu/acme/store7/till2").getName()).isEqualTo("eu/acme/store7");
+        assertThat(index.lookup("eu/initech/store1").getName()).isEqualTo("eu");
+        assertThat(index.lookup("eu").getName()).isEqualTo("eu");
+    }
+
+    @Test
+    public void onlyMatchesWholeSegments() {
+        assertThat(index.lookup("eu/acmecorp/store1").getName()).isEqualTo("eu");
+        assertThat(index.lookup("us/acm")).isNull();
+        assertThat(index.lookup("us")).isNull();
+        assertThat(index.lookup("ap/acme")).isNull();
+        assertThat(index.lookup(null)).isNull();
+    }
+
+    @Test
+    public void keepsTheMatchedKey() {
+        final int slot = index.indexOf("eu/globex/store3");
+
+        assertThat(index.keyAt(slot)).isEqualTo("eu/globex");
+        assertThat(index.routeAt(slot).getName()).isEqualTo("eu");
+    }
+
+    /**
+     * Lookups must not allocate; measured with the per-thread allocation counter exposed by HotSpot.
+     */
+    @Test
+    public void lookupDoesNotAllocate() {
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        final long threadId = Thread.currentThread().getId();
+        final String key = "eu/acme/store8/till2";
+        for (int i = 0; i < 20000; i++) {
+            lookup(key);
+        }
+
+        final long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; i++) {
+            lookup(key);
+        }
+        final long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        // allow for the bookkeeping of the measurement itself
+        assertThat(allocated).isLessThan(1024);
+    }
+
+    private void lookup(final String key) {
+        if (null == index.lookup(key)) {
+            throw new AssertionError();
+        }
+    }
+}
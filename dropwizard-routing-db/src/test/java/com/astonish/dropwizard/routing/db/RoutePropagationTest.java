@@ -0,0 +1,125 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Unit tests for {@link RoutePropagation}.
+ */
+public class RoutePropagationTest {
+    private final RouteStore store = RouteStore.getInstance();
+    private final ExecutorService executor = RoutePropagation.wrap(Executors.newSingleThreadExecutor());
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        store.get().clear();
+        store.setBackend(RouteStore.Backend.THREAD_LOCAL);
+    }
+
+    @Test
+    public void runsTasksWithTheSubmittingThreadsRoute() throws Exception {
+        store.setRoute("starbucks");
+        store.setAttribute("tenant", 42);
+
+        assertThat(executor.submit(currentRoute()).get()).isEqualTo("starbucks");
+        assertThat(executor.submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return store.getAttribute("tenant");
+            }
+        }).get()).isEqualTo(42);
+    }
+
+    @Test
+    public void capturesTheRouteAtSubmitTime() throws Exception {
+        store.setRoute("starbucks");
+        final Callable<String> task = RoutePropagation.wrap(currentRoute());
+        store.setRoute("dunkindonuts");
+
+        assertThat(executor.submit(task).get()).isEqualTo("starbucks");
+    }
+
+    @Test
+    public void restoresThePoolThreadsRouteAfterTheTask() throws Exception {
+        store.setRoute("starbucks");
+        executor.submit(currentRoute()).get();
+
+        // a task submitted without a route must not see the previous task's route
+        store.get().clear();
+        assertThat(executor.submit(currentRoute()).get()).isNull();
+    }
+
+    @Test
+    public void keepsTheCallersRouteWhenRunOnTheCallingThread() {
+        store.setRoute("starbucks");
+        final AtomicReference<String> seen = new AtomicReference<>();
+        final Runnable task = RoutePropagation.wrap(new Runnable() {
+            @Override
+            public void run() {
+                seen.set(store.getRoute());
+                store.setRoute("dunkindonuts");
+            }
+        });
+
+        RoutePropagation.wrap(MoreExecutors.directExecutor()).execute(task);
+
+        assertThat(seen.get()).isEqualTo("starbucks");
+        assertThat(store.getRoute()).isEqualTo("starbucks");
+    }
+
+    @Test
+    public void propagatesScopedRoutesOnlyThroughWrappedTasks() throws Exception {
+        store.setBackend(RouteStore.Backend.SCOPED);
+        store.setRoute("starbucks");
+        final Callable<String> task = RoutePropagation.wrap(currentRoute());
+        store.setRoute("dunkindonuts");
+
+        assertThat(executor.submit(task).get()).isEqualTo("starbucks");
+
+        final ExecutorService unwrapped = Executors.newSingleThreadExecutor();
+        try {
+            // the pool thread is created while a route is bound, but does not inherit it
+            assertThat(unwrapped.submit(currentRoute()).get()).isNull();
+        } finally {
+            unwrapped.shutdownNow();
+        }
+    }
+
+    private Callable<String> currentRoute() {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                return store.getRoute();
+            }
+        };
+    }
+}
@@ -0,0 +1,274 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link RouteRegistry}.
+ */
+public class RouteRegistryTest {
+    private final RouteRegistry<String> registry = new RouteRegistry<>(ImmutableMap.of("RouteOne", "one", "RouteTwo",
+            "two"));
+    private final RouteContext context = new RouteContext();
+
+    @After
+    public void tearDown() {
+        RouteStore.getInstance().get().clear();
+    }
+
+    @Test
+    public void addsRoutesWithTheNextOrdinal() {
+        final Route route = registry.addRoute("RouteThree", "three");
+
+        assertThat(route.getOrdinal()).isEqualTo(2);
+        assertThat(registry.get("RouteThree")).isEqualTo("three");
+        assertThat(registry.asMap()).containsOnlyKeys("RouteOne", "RouteTwo", "RouteThree");
+    }
+
+    @Test
+    public void reusesTheOrdinalsOfRetiredRoutes() throws Exception {
+        final Route removed = registry.getRouteTable().get("RouteTwo");
+        registry.removeRoute("RouteTwo", 1, TimeUnit.SECONDS);
+        final Route route = registry.addRoute("RouteTwo", "two again");
+
+        assertThat(route.getOrdinal()).isEqualTo(1);
+        assertThat(registry.getRouteTable().capacity()).isEqualTo(2);
+        assertThat(registry.getRouteTable().contains(removed)).isFalse();
+        assertThat(registry.get(removed)).isNull();
+        assertThat(registry.asMap()).containsOnlyKeys("RouteOne", "RouteTwo");
+    }
+
+    @Test
+    public void lateReleasesDoNotCountAgainstTheRouteReusingTheOrdinal() throws Exception {
+        context.setRoute("RouteTwo");
+        final Route removed = registry.acquire(context);
+        registry.removeRoute("RouteTwo", 10, TimeUnit.MILLISECONDS);
+
+        registry.addRoute("RouteThree", "three");
+        final RouteContext other = new RouteContext();
+        other.setRoute("RouteThree");
+        final Route route = registry.acquire(other);
+        assertThat(route.getOrdinal()).isEqualTo(removed.getOrdinal());
+
+        registry.release(removed);
+
+        // the unit of work on RouteThree is still counted, so removing it waits for it
+        final long start = System.nanoTime();
+        registry.removeRoute("RouteThree", 50, TimeUnit.MILLISECONDS);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(40);
+        registry.release(route);
+    }
+
+    @Test
+    public void notifiesListenersBeforePublishing() {
+        final RouteTable[] seen = new RouteTable[1];
+        registry.addListener(new RouteRegistry.Listener() {
+            @Override
+            public void onRoutesChanged(RouteTable routes) {
+                assertThat(registry.getRouteTable()).isNotSameAs(routes);
+                seen[0] = routes;
+            }
+        });
+
+        registry.addRoute("RouteThree", "three");
+
+        assertThat(registry.getRouteTable()).isSameAs(seen[0]);
+    }
+
+    @Test
+    public void acquireRefusesUnknownRoutes() {
+        context.setRoute("unknown");
+
+        assertThat(registry.acquire(context)).isNull();
+    }
+
+    @Test
+    public void removeWaitsForInFlightUnitsOfWork() throws Exception {
+        context.setRoute("RouteTwo");
+        final Route route = registry.acquire(context);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> removed = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return registry.removeRoute("RouteTwo", 10, TimeUnit.SECONDS);
+                }
+            });
+
+            while (registry.getRouteTable().isLive(route)) {
+                Thread.sleep(1);
+            }
+            // draining: no new units of work, but the in-flight one still sees its value
+            assertThat(registry.acquire(new RouteContext())).isNull();
+            assertThat(registry.get("RouteTwo")).isNull();
+            assertThat(registry.get(route)).isEqualTo("two");
+            assertThat(removed.isDone()).isFalse();
+
+            registry.release(route);
+
+            assertThat(removed.get(10, TimeUnit.SECONDS)).isEqualTo("two");
+            assertThat(registry.get(route)).isNull();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void removeGivesUpAfterTheTimeout() throws Exception {
+        context.setRoute("RouteTwo");
+        final Route route = registry.acquire(context);
+
+        assertThat(registry.removeRoute("RouteTwo", 10, TimeUnit.MILLISECONDS)).isEqualTo("two");
+        assertThat(registry.getRouteTable().contains(route)).isFalse();
+
+        // a late release must not fail
+        registry.release(route);
+    }
+
+    @Test
+    public void addingRoutesKeepsDrainingRoutesUnresolvable() throws Exception {
+        context.setRoute("RouteTwo");
+        final Route route = registry.acquire(context);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> removed = removeInBackground(executor, "RouteTwo");
+            awaitDraining(route);
+
+            registry.addRoute("RouteThree", "three");
+            assertThat(registry.get("RouteTwo")).isNull();
+            assertThat(registry.acquire(new RouteContext())).isNull();
+
+            // the name of a draining route can be reused, the draining route keeps its own handle
+            final Route again = registry.addRoute("RouteTwo", "two again");
+            assertThat(again).isNotSameAs(route);
+            assertThat(registry.get(route)).isEqualTo("two");
+
+            registry.release(route);
+            assertThat(removed.get(10, TimeUnit.SECONDS)).isEqualTo("two");
+            assertThat(registry.get("RouteTwo")).isEqualTo("two again");
+            assertThat(registry.asMap()).containsOnlyKeys("RouteOne", "RouteTwo", "RouteThree");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void overlappingRemovesRetireEachRoute() throws Exception {
+        context.setRoute("RouteOne");
+        final Route one = registry.acquire(context);
+        final RouteContext other = new RouteContext();
+        other.setRoute("RouteTwo");
+        final Route two = registry.acquire(other);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> removedOne = removeInBackground(executor, "RouteOne");
+            awaitDraining(one);
+            final Future<String> removedTwo = removeInBackground(executor, "RouteTwo");
+            awaitDraining(two);
+
+            // removing the second route must not bring back the first
+            assertThat(registry.get("RouteOne")).isNull();
+            assertThat(registry.getRouteTable().keys()).isEmpty();
+
+            registry.release(one);
+            registry.release(two);
+            assertThat(removedOne.get(10, TimeUnit.SECONDS)).isEqualTo("one");
+            assertThat(removedTwo.get(10, TimeUnit.SECONDS)).isEqualTo("two");
+            assertThat(registry.getRouteTable().contains(one)).isFalse();
+            assertThat(registry.getRouteTable().contains(two)).isFalse();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void aliasesShareTheValueAndHandleOfTheirRoute() {
+        final Route route = registry.addAlias("tenant42", "RouteTwo");
+        context.setRoute("tenant42");
+
+        assertThat(route).isSameAs(registry.getRouteTable().get("RouteTwo"));
+        assertThat(registry.get("tenant42")).isEqualTo("two");
+        assertThat(registry.acquire(context)).isSameAs(route);
+        assertThat(registry.asMap()).containsOnlyKeys("RouteOne", "RouteTwo");
+        registry.release(route);
+    }
+
+    @Test
+    public void aliasesGoAwayWithTheirRoute() throws Exception {
+        registry.addAlias("tenant42", "RouteTwo");
+        registry.addAlias("tenant43", "RouteOne");
+        registry.removeRoute("RouteTwo", 1, TimeUnit.SECONDS);
+
+        assertThat(registry.get("tenant42")).isNull();
+        assertThat(registry.getRouteTable().aliases()).containsOnlyKeys("tenant43");
+
+        registry.removeAlias("tenant43");
+        assertThat(registry.getRouteTable().keys()).containsExactly("RouteOne");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aliasesCanNotShadowRoutes() {
+        registry.addAlias("RouteOne", "RouteTwo");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aliasesCanNotBeRemovedAsRoutes() throws Exception {
+        registry.addAlias("tenant42", "RouteTwo");
+        registry.removeRoute("tenant42", 1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void removingAnUnknownRouteFails() throws Exception {
+        registry.removeRoute("unknown", 1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addingAnExistingRouteFails() {
+        registry.addRoute("RouteOne", "again");
+    }
+
+    private Future<String> removeInBackground(ExecutorService executor, final String name) {
+        return executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return registry.removeRoute(name, 10, TimeUnit.SECONDS);
+            }
+        });
+    }
+
+    private void awaitDraining(Route route) throws InterruptedException {
+        while (registry.getRouteTable().isLive(route)) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link RouteReplicas}, {@link ReplicaBalancer} and {@link Replica}.
+ */
+public class RouteReplicasTest {
+    private final RouteRegistry<String> registry = new RouteRegistry<>(ImmutableMap.of("RouteOne", "one", "RouteTwo",
+            "two"));
+    private final Replica<String> first = new Replica<>("first", "replica1");
+    private final Replica<String> second = new Replica<>("second", "replica2");
+    private final ReplicaBalancer<String> balancer = new ReplicaBalancer<>(ImmutableList.of(first, second));
+
+    @Test
+    public void prefersTheLeastLoadedReplica() {
+        first.acquire();
+        first.acquire();
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(balancer.choose()).isSameAs(second);
+        }
+    }
+
+    @Test
+    public void prefersTheFasterReplica() {
+        first.acquire();
+        first.release(TimeUnit.MILLISECONDS.toNanos(50));
+        second.acquire();
+        second.release(TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertThat(balancer.choose()).isSameAs(second);
+        assertThat(second.getLatencyNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    @Test
+    public void alternatesBetweenEqualReplicas() {
+        assertThat(balancer.choose()).isNotSameAs(balancer.choose());
+    }
+
+    @Test
+    public void skipsUnavailableReplicas() {
+        second.setAvailable(false);
+        assertThat(balancer.choose()).isSameAs(first);
+
+        first.setAvailable(false);
+        assertThat(balancer.choose()).isNull();
+        assertThat(new ReplicaBalancer<>(ImmutableList.<Replica<String>> of()).choose()).isNull();
+    }
+
+    @Test
+    public void readsOnlyFromReplicasThatReplayedTheWrite() {
+        final long writeMillis = System.currentTimeMillis() - 1000;
+        first.setLagMillis(60000);
+        second.setLagMillis(10);
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(balancer.choose(writeMillis)).isSameAs(second);
+        }
+        second.setLagMillis(60000);
+        assertThat(balancer.choose(writeMillis)).isNull();
+        assertThat(balancer.choose()).isNotNull();
+    }
+
+    @Test
+    public void pinsReadsWithinTheWriteWindow() {
+        final ReplicaBalancer<String> windowed = new ReplicaBalancer<>(ImmutableList.of(first, second), 1,
+                TimeUnit.MINUTES);
+        windowed.recordWrite(System.currentTimeMillis() - 10);
+        assertThat(windowed.choose()).isNull();
+
+        first.setLagMillis(0);
+        assertThat(windowed.choose()).isSameAs(first);
+        assertThat(windowed.getLastWriteMillis()).isPositive();
+
+        final ReplicaBalancer<String> expired = new ReplicaBalancer<>(ImmutableList.of(second), 1, TimeUnit.MINUTES);
+        expired.recordWrite(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(2));
+        assertThat(expired.choose()).isSameAs(second);
+    }
+
+    @Test
+    public void roundTripsWriteTokens() {
+        final long writeMillis = System.currentTimeMillis();
+
+        assertThat(WriteTokens.parse(WriteTokens.format(writeMillis))).isEqualTo(writeMillis);
+        assertThat(WriteTokens.parse(null)).isZero();
+        assertThat(WriteTokens.parse("not a token")).isZero();
+        assertThat(WriteTokens.parse("-1")).isZero();
+    }
+
+    @Test
+    public void followsRoutesAndAliases() {
+        final RouteReplicas<String> replicas = new RouteReplicas<>(registry);
+        replicas.put("RouteOne", balancer);
+        replicas.put("RouteThree", balancer);
+        registry.addAlias("tenant42", "RouteOne");
+
+        assertThat(replicas.get("tenant42")).isSameAs(balancer);
+        assertThat(replicas.get(registry.getRouteTable().get("RouteOne"))).isSameAs(balancer);
+        assertThat(replicas.get("RouteTwo")).isNull();
+
+        registry.addRoute("RouteThree", "three");
+        assertThat(replicas.get("RouteThree")).isSameAs(balancer);
+
+        assertThat(replicas.remove("RouteOne")).isSameAs(balancer);
+        assertThat(replicas.get("RouteOne")).isNull();
+    }
+}
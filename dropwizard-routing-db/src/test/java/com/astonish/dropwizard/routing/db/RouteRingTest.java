@@ -0,0 +1,98 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Unit tests for {@link RouteRing}.
+ */
+public class RouteRingTest {
+    private static final int KEYS = 10000;
+
+    private final RouteTable table = RouteTable.of(ImmutableList.of("shard0", "shard1", "shard2", "shard3"));
+    private final RouteRing ring = RouteRing.of(table, 128, ImmutableSet.<String> of());
+
+    @Test
+    public void spreadsKeysEvenlyOverTheShards() {
+        final Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            final String shard = ring.get("tenant" + i).getName();
+            counts.put(shard, (counts.containsKey(shard) ? counts.get(shard) : 0) + 1);
+        }
+
+        assertThat(counts).hasSize(4);
+        for (int count : counts.values()) {
+            assertThat(count).isBetween(KEYS / 4 * 7 / 10, KEYS / 4 * 13 / 10);
+        }
+    }
+
+    @Test
+    public void addingAShardOnlyMovesKeysOntoIt() {
+        final RouteRing grown = ring.withTable(table.withRoute("shard4"));
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            final Route before = ring.get("tenant" + i);
+            final Route after = grown.get("tenant" + i);
+            if (before != after) {
+                assertThat(after.getName()).isEqualTo("shard4");
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(KEYS / 5 * 7 / 10, KEYS / 5 * 13 / 10);
+    }
+
+    @Test
+    public void doesNotDependOnRouteOrder() {
+        final RouteRing reordered = RouteRing.of(RouteTable.of(ImmutableList.of("shard3", "shard1", "shard0",
+                "shard2")), 128, ImmutableSet.<String> of());
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(reordered.get("tenant" + i).getName()).isEqualTo(ring.get("tenant" + i).getName());
+        }
+    }
+
+    @Test
+    public void namesAndAliasesPinTheirRoute() {
+        final RouteRing pinned = RouteRing.of(table.withRoute("dedicated").withAlias("bigtenant", "dedicated"), 128,
+                ImmutableSet.of("dedicated"));
+
+        assertThat(pinned.get("shard2").getName()).isEqualTo("shard2");
+        assertThat(pinned.get("bigtenant").getName()).isEqualTo("dedicated");
+        for (int i = 0; i < 1000; i++) {
+            assertThat(pinned.get("tenant" + i).getName()).isNotEqualTo("dedicated");
+        }
+    }
+
+    @Test
+    public void resolvesNothingWithoutShards() {
+        final RouteRing empty = RouteRing.of(RouteTable.empty(), 128, ImmutableSet.<String> of());
+
+        assertThat(empty.get("tenant")).isNull();
+        assertThat(ring.get(null)).isNull();
+    }
+}
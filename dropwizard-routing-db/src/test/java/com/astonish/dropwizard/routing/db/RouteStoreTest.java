@@ -0,0 +1,243 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RouteStore}.
+ */
+public class RouteStoreTest {
+    private final RouteStore store = RouteStore.getInstance();
+
+    @After
+    public void tearDown() {
+        store.get().clear();
+        store.setBackend(RouteStore.Backend.THREAD_LOCAL);
+    }
+
+    @Test
+    public void storesTheRoute() {
+        store.setRoute("starbucks");
+
+        assertThat(store.getRoute()).isEqualTo("starbucks");
+        assertThat(store.get().getRoute()).isEqualTo("starbucks");
+    }
+
+    @Test
+    public void storesAResolvedRouteAndClearsItWithNull() {
+        final Route route = RouteTable.of(Collections.singleton("starbucks")).get("starbucks");
+        store.setResolvedRoute(route);
+        assertThat(store.getRoute()).isEqualTo("starbucks");
+        assertThat(store.peek().getResolvedRoute()).isSameAs(route);
+
+        store.setRoute(null);
+        assertThat(store.getRoute()).isNull();
+        assertThat(store.peek().getResolvedRoute()).isNull();
+    }
+
+    @Test
+    public void reusesTheContextForTheThread() {
+        final RouteContext context = store.get();
+        store.setRoute("starbucks");
+        store.setRoute("dunkindonuts");
+
+        assertThat(store.get()).isSameAs(context);
+    }
+
+    @Test
+    public void storesAttributesAlongsideTheRoute() {
+        store.setRoute("starbucks");
+        store.setAttribute("tenant", 42);
+
+        assertThat(store.getAttribute("tenant")).isEqualTo(42);
+        assertThat(store.getAttribute("unknown")).isNull();
+
+        store.setAttribute("tenant", null);
+        assertThat(store.getAttribute("tenant")).isNull();
+        assertThat(store.getRoute()).isEqualTo("starbucks");
+    }
+
+    @Test
+    public void clearRemovesRouteAndAttributes() {
+        store.setRoute("starbucks");
+        store.setAttribute("tenant", 42);
+
+        store.get().clear();
+
+        assertThat(store.getRoute()).isNull();
+        assertThat(store.getAttribute("tenant")).isNull();
+    }
+
+    @Test
+    public void routeIsNotSharedBetweenThreads() throws Exception {
+        store.setRoute("starbucks");
+
+        final AtomicReference<String> seen = new AtomicReference<>("unset");
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                seen.set(store.getRoute());
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertThat(seen.get()).isNull();
+    }
+
+    @Test
+    public void bindAndUnbindRestoreThePreviousContext() {
+        store.setRoute("starbucks");
+        final RouteContext bound = new RouteContext();
+        bound.setRoute("dunkindonuts");
+
+        final RouteContext previous = store.bind(bound);
+        assertThat(store.getRoute()).isEqualTo("dunkindonuts");
+
+        store.unbind(previous);
+        assertThat(store.getRoute()).isEqualTo("starbucks");
+    }
+
+    @Test
+    public void scopedBackendBindsNothingUntilARouteIsSet() {
+        store.setBackend(RouteStore.Backend.SCOPED);
+
+        assertThat(store.getBackend()).isEqualTo(RouteStore.Backend.SCOPED);
+        assertThat(store.peek()).isNull();
+        assertThat(store.getRoute()).isNull();
+
+        store.setRoute("starbucks");
+        assertThat(store.peek().getRoute()).isEqualTo("starbucks");
+
+        store.unbind(null);
+        assertThat(store.peek()).isNull();
+    }
+
+    @Test
+    public void scopedBackendIsNotInheritedByChildThreads() throws Exception {
+        store.setBackend(RouteStore.Backend.SCOPED);
+        store.setRoute("starbucks");
+
+        final AtomicReference<String> seen = new AtomicReference<>("unset");
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                seen.set(store.getRoute());
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertThat(seen.get()).isNull();
+        assertThat(store.getRoute()).isEqualTo("starbucks");
+    }
+
+    @Test
+    public void scopedBackendNeverChangesABoundContext() {
+        store.setBackend(RouteStore.Backend.SCOPED);
+        store.setRoute("starbucks");
+        final RouteContext bound = store.peek();
+        final RouteContext snapshot = store.snapshot(bound);
+
+        store.setRoute("dunkindonuts");
+        store.setAttribute("tenant", 42);
+
+        assertThat(snapshot).isSameAs(bound);
+        assertThat(bound.getRoute()).isEqualTo("starbucks");
+        assertThat(bound.getAttribute("tenant")).isNull();
+        assertThat(store.getRoute()).isEqualTo("dunkindonuts");
+
+        final RouteContext previous = store.bind(snapshot);
+        assertThat(store.getRoute()).isEqualTo("starbucks");
+        store.unbind(previous);
+        assertThat(store.getRoute()).isEqualTo("dunkindonuts");
+        assertThat(store.getAttribute("tenant")).isEqualTo(42);
+    }
+
+    @Test
+    public void scopedBackendWritesInPlaceUntilTheContextIsShared() {
+        store.setBackend(RouteStore.Backend.SCOPED);
+        store.setRoute("starbucks");
+        final RouteContext bound = store.peek();
+
+        store.setAttribute("tenant", 42);
+        store.setRoute("dunkindonuts");
+        assertThat(store.peek()).isSameAs(bound);
+
+        store.snapshot(bound);
+        store.setRoute("starbucks");
+        final RouteContext copy = store.peek();
+        store.setAttribute("tenant", 43);
+        assertThat(copy).isNotSameAs(bound);
+        assertThat(store.peek()).isSameAs(copy);
+        assertThat(bound.getRoute()).isEqualTo("dunkindonuts");
+    }
+
+    @Test
+    public void scopedBackendCallsWithAReadOnlyContext() throws Exception {
+        store.setBackend(RouteStore.Backend.SCOPED);
+        final RouteContext context = new RouteContext();
+        context.setRoute("starbucks");
+
+        final RouteContext seen = store.callWith(context, new Callable<RouteContext>() {
+            @Override
+            public RouteContext call() {
+                return store.peek();
+            }
+        });
+
+        assertThat(seen).isSameAs(context);
+        assertThat(context.isReadOnly()).isTrue();
+        assertThat(store.peek()).isNull();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readOnlyContextsRejectWrites() {
+        final RouteContext context = new RouteContext();
+        context.makeReadOnly();
+
+        context.setRoute("starbucks");
+    }
+
+    @Test
+    public void callWithRestoresTheRouteOfTheThread() throws Exception {
+        store.setRoute("starbucks");
+        final RouteContext context = new RouteContext();
+        context.setRoute("dunkindonuts");
+
+        store.runWith(context, new Runnable() {
+            @Override
+            public void run() {
+                assertThat(store.getRoute()).isEqualTo("dunkindonuts");
+                store.setRoute("tims");
+            }
+        });
+
+        // the thread-local backend binds a copy, which the call may write to
+        assertThat(context.getRoute()).isEqualTo("dunkindonuts");
+        assertThat(store.getRoute()).isEqualTo("starbucks");
+    }
+}
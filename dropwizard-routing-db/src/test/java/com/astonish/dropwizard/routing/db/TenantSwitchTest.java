@@ -0,0 +1,80 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TenantSwitch}.
+ */
+public class TenantSwitchTest {
+    private final List<String> switches = new ArrayList<>();
+    private final Connection connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[] { Connection.class }, new InvocationHandler() {
+                private String schema = "public";
+                private String catalog = "tenants";
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    switch (method.getName()) {
+                    case "getSchema":
+                        return schema;
+                    case "getCatalog":
+                        return catalog;
+                    case "setSchema":
+                        this.schema = (String) args[0];
+                        switches.add("schema " + schema);
+                        return null;
+                    case "setCatalog":
+                        this.catalog = (String) args[0];
+                        switches.add("catalog " + catalog);
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+            });
+
+    @Test
+    public void switchesTheSchema() throws Exception {
+        TenantSwitch.SCHEMA.apply(connection, "starbucks");
+        TenantSwitch.SCHEMA.apply(connection, "starbucks");
+        TenantSwitch.SCHEMA.apply(connection, "dunkindonuts");
+
+        assertThat(switches).containsExactly("schema starbucks", "schema dunkindonuts");
+        assertThat(connection.getSchema()).isEqualTo("dunkindonuts");
+    }
+
+    @Test
+    public void switchesTheCatalog() throws Exception {
+        TenantSwitch.CATALOG.apply(connection, "tenants");
+        TenantSwitch.CATALOG.apply(connection, "starbucks");
+
+        assertThat(switches).containsExactly("catalog starbucks");
+        assertThat(connection.getSchema()).isEqualTo("public");
+    }
+}
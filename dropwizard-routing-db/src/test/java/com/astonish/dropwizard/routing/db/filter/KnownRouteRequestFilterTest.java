@@ -0,0 +1,137 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.astonish.dropwizard.routing.db.RouteRegistry;
+import com.astonish.dropwizard.routing.db.RouteStore;
+import com.astonish.dropwizard.routing.db.resolver.HeaderRouteResolver;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link KnownRouteRequestFilter}.
+ */
+public class KnownRouteRequestFilterTest {
+    private final KnownRouteRequestFilter filter = new KnownRouteRequestFilter(new RouteRegistry<>(ImmutableMap.of(
+            "starbucks", "one")));
+    private final AtomicReference<Response> aborted = new AtomicReference<>();
+
+    @After
+    public void tearDown() {
+        RouteStore.getInstance().get().clear();
+    }
+
+    @Test
+    public void storesKnownRoutes() throws Exception {
+        filter.filter(request("starbucks"));
+
+        assertThat(aborted.get()).isNull();
+        assertThat(RouteStore.getInstance().getRoute()).isEqualTo("starbucks");
+    }
+
+    @Test
+    public void passesRequestsWithoutARoute() throws Exception {
+        filter.filter(request(null));
+
+        assertThat(aborted.get()).isNull();
+        assertThat(RouteStore.getInstance().getRoute()).isNull();
+    }
+
+    @Test
+    public void rejectsUnknownRoutes() throws Exception {
+        filter.filter(request("dunkindonuts"));
+        filter.filter(request("dunkindonuts"));
+
+        assertThat(aborted.get().getStatus()).isEqualTo(404);
+        assertThat(aborted.get().getEntity()).isEqualTo(KnownRouteRequestFilter.UNKNOWN_ROUTE);
+        assertThat(RouteStore.getInstance().getRoute()).isNull();
+        assertThat(filter.getRejectedKeys().top(1)).containsEntry("dunkindonuts", 2L);
+    }
+
+    @Test
+    public void canonicalizesKeys() throws Exception {
+        final KnownRouteRequestFilter folding = new KnownRouteRequestFilter(new RouteRegistry<>(ImmutableMap.of(
+                "Starbucks", "one")), new HeaderRouteResolver(), new RejectedRouteKeys(10), true);
+
+        folding.filter(request(" starbucks "));
+
+        assertThat(aborted.get()).isNull();
+        assertThat(RouteStore.getInstance().getRoute()).isEqualTo("Starbucks");
+        assertThat(RouteStore.getInstance().get().getResolvedRoute().getOrdinal()).isZero();
+    }
+
+    @Test
+    public void storesAliasesResolvedToTheirRoute() throws Exception {
+        final RouteRegistry<String> registry = new RouteRegistry<>(ImmutableMap.of("starbucks", "one"));
+        registry.addAlias("tenant42", "starbucks");
+
+        new KnownRouteRequestFilter(registry).filter(request("tenant42"));
+
+        assertThat(aborted.get()).isNull();
+        assertThat(RouteStore.getInstance().getRoute()).isEqualTo("tenant42");
+        assertThat(RouteStore.getInstance().get().getResolvedRoute().getName()).isEqualTo("starbucks");
+    }
+
+    @Test
+    public void followsRouteChanges() throws Exception {
+        final RouteRegistry<String> registry = new RouteRegistry<>(ImmutableMap.of("starbucks", "one"));
+        final KnownRouteRequestFilter following = new KnownRouteRequestFilter(registry);
+        registry.addRoute("dunkindonuts", "two");
+
+        following.filter(request("dunkindonuts"));
+
+        assertThat(aborted.get()).isNull();
+        assertThat(RouteStore.getInstance().getRoute()).isEqualTo("dunkindonuts");
+    }
+
+    @Test
+    public void passesBlankKeysWithoutARoute() throws Exception {
+        filter.filter(request("  "));
+
+        assertThat(aborted.get()).isNull();
+        assertThat(RouteStore.getInstance().getRoute()).isNull();
+    }
+
+    private ContainerRequestContext request(final String route) {
+        return (ContainerRequestContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { ContainerRequestContext.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getHeaderString".equals(method.getName())
+                                && RoutingRequestFilterHeaderImpl.HEADER_NAME.equals(args[0])) {
+                            return route;
+                        } else if ("abortWith".equals(method.getName())) {
+                            aborted.set((Response) args[0]);
+                        }
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,92 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.astonish.dropwizard.routing.db.RouteRegistry;
+import com.astonish.dropwizard.routing.db.RouteStore;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link PrefixRouteRequestFilter}.
+ */
+public class PrefixRouteRequestFilterTest {
+    private final RouteRegistry<String> registry = new RouteRegistry<>(ImmutableMap.of("eu/acme", "one",
+            "eu/acme/store7", "two"));
+    private final PrefixRouteRequestFilter filter = new PrefixRouteRequestFilter(registry, '/');
+    private final AtomicReference<Response> aborted = new AtomicReference<>();
+
+    @After
+    public void tearDown() {
+        RouteStore.getInstance().get().clear();
+    }
+
+    @Test
+    public void storesTheKeyWithTheRouteOfItsLongestPrefix() throws Exception {
+        filter.filter(request("eu/acme/store8"));
+
+        assertThat(aborted.get()).isNull();
+        assertThat(RouteStore.getInstance().getRoute()).isEqualTo("eu/acme/store8");
+        assertThat(RouteStore.getInstance().get().getResolvedRoute().getName()).isEqualTo("eu/acme");
+    }
+
+    @Test
+    public void followsRouteChanges() throws Exception {
+        registry.addRoute("eu/acme/store8", "three");
+
+        filter.filter(request("eu/acme/store8/till2"));
+
+        assertThat(RouteStore.getInstance().get().getResolvedRoute().getName()).isEqualTo("eu/acme/store8");
+    }
+
+    @Test
+    public void rejectsKeysWithoutAConfiguredPrefix() throws Exception {
+        filter.filter(request("us/acme/store1"));
+
+        assertThat(aborted.get().getStatus()).isEqualTo(404);
+        assertThat(filter.getRejectedKeys().top(1)).containsEntry("us/acme/store1", 1L);
+    }
+
+    private ContainerRequestContext request(final String route) {
+        return (ContainerRequestContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { ContainerRequestContext.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getHeaderString".equals(method.getName())
+                                && RoutingRequestFilterHeaderImpl.HEADER_NAME.equals(args[0])) {
+                            return route;
+                        } else if ("abortWith".equals(method.getName())) {
+                            aborted.set((Response) args[0]);
+                        }
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,86 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+/**
+ * Unit tests for {@link RejectedRouteKeys}.
+ */
+public class RejectedRouteKeysTest {
+    private final RejectedRouteKeys keys = new RejectedRouteKeys(3);
+
+    @Test
+    public void countsKeysMostRejectedFirst() {
+        add("a", 1);
+        add("b", 5);
+        add("c", 3);
+
+        assertThat(keys.top(2)).containsExactly(entry("b", 5), entry("c", 3));
+        assertThat(keys.getTotal()).isEqualTo(9);
+    }
+
+    @Test
+    public void keepsFrequentKeysUnderAFloodOfRandomKeys() {
+        // any key making up more than 1/capacity of the rejections is guaranteed to be tracked
+        for (int i = 0; i < 10000; i++) {
+            keys.add("random" + i);
+            if (i % 2 == 0) {
+                keys.add("attacker");
+            }
+        }
+
+        assertThat(keys.top(10)).hasSize(3).containsKey("attacker");
+        assertThat(keys.getTotal()).isEqualTo(15000);
+    }
+
+    @Test
+    public void replacesTheLeastRejectedKeyInheritingItsCount() {
+        add("a", 4);
+        add("b", 2);
+        add("c", 1);
+
+        keys.add("d");
+        assertThat(keys.top(3)).containsOnly(entry("a", 4), entry("b", 2), entry("d", 2));
+
+        add("d", 3);
+        assertThat(keys.top(3)).containsExactly(entry("d", 5), entry("a", 4), entry("b", 2));
+        assertThat(keys.top(0)).isEmpty();
+    }
+
+    @Test
+    public void truncatesLongKeys() {
+        keys.add(Strings.repeat("x", 10000));
+
+        assertThat(keys.top(1).keySet().iterator().next()).hasSize(RejectedRouteKeys.MAX_KEY_LENGTH);
+    }
+
+    private void add(String key, int times) {
+        for (int i = 0; i < times; i++) {
+            keys.add(key);
+        }
+    }
+
+    private static org.assertj.core.data.MapEntry entry(String key, long count) {
+        return org.assertj.core.data.MapEntry.entry(key, count);
+    }
+}
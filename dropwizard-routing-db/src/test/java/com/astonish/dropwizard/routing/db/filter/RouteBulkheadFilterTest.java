@@ -0,0 +1,149 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.junit.After;
+import org.junit.Test;
+
+import com.astonish.dropwizard.routing.db.RouteBulkheads;
+import com.astonish.dropwizard.routing.db.RouteRegistry;
+import com.astonish.dropwizard.routing.db.RouteStore;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link RouteBulkheadFilter}.
+ */
+public class RouteBulkheadFilterTest {
+    private final RouteBulkheads bulkheads = new RouteBulkheads(new RouteRegistry<>(ImmutableMap.of("starbucks",
+            "one", "dunkindonuts", "two")), 1, 0, 0, TimeUnit.SECONDS);
+    private final RouteBulkheadFilter filter = new RouteBulkheadFilter(bulkheads, 5);
+    private final AtomicReference<Response> aborted = new AtomicReference<>();
+
+    @After
+    public void tearDown() {
+        RouteStore.getInstance().get().clear();
+    }
+
+    @Test
+    public void rejectsRequestsOverTheLimitOfTheirRoute() throws Exception {
+        RouteStore.getInstance().setRoute("starbucks");
+        final ContainerRequestContext first = request();
+        filter.filter(first);
+        assertThat(aborted.get()).isNull();
+
+        filter.filter(request());
+        assertThat(aborted.get().getStatus()).isEqualTo(503);
+        assertThat(aborted.get().getHeaderString(HttpHeaders.RETRY_AFTER)).isEqualTo("5");
+        assertThat(aborted.get().getEntity()).isEqualTo(RouteBulkheadFilter.OVERLOADED);
+
+        // other routes are not affected
+        aborted.set(null);
+        RouteStore.getInstance().setRoute("dunkindonuts");
+        filter.filter(request());
+        assertThat(aborted.get()).isNull();
+    }
+
+    @Test
+    public void releasesThePermitWithTheResponse() throws Exception {
+        RouteStore.getInstance().setRoute("starbucks");
+        final ContainerRequestContext request = request();
+        filter.filter(request);
+        filter.filter(request, null);
+        filter.filter(request, null);
+
+        assertThat(bulkheads.get("starbucks").getInFlight()).isZero();
+    }
+
+    @Test
+    public void releasesThePermitWhenTheRequestFinishesWithoutResponseFilters() throws Exception {
+        RouteStore.getInstance().setRoute("starbucks");
+        final ContainerRequest request = new ContainerRequest(URI.create("/"), URI.create("/"), "GET", null,
+                new MapPropertiesDelegate());
+        filter.filter(request);
+        assertThat(bulkheads.get("starbucks").getInFlight()).isEqualTo(1);
+
+        // an unmapped exception skips the response filters, the request still finishes
+        filter.onRequest(null).onEvent(finished(request));
+        assertThat(bulkheads.get("starbucks").getInFlight()).isZero();
+
+        filter.filter(request);
+        filter.filter(request, null);
+        filter.onRequest(null).onEvent(finished(request));
+        assertThat(bulkheads.get("starbucks").getInFlight()).isZero();
+    }
+
+    @Test
+    public void passesRequestsWithoutAKnownRoute() throws Exception {
+        RouteStore.getInstance().setRoute("unknown");
+        filter.filter(request());
+        filter.filter(request());
+
+        assertThat(aborted.get()).isNull();
+    }
+
+    private static RequestEvent finished(final ContainerRequest request) {
+        return (RequestEvent) Proxy.newProxyInstance(RequestEvent.class.getClassLoader(),
+                new Class<?>[] { RequestEvent.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getType".equals(method.getName())) {
+                            return RequestEvent.Type.FINISHED;
+                        }
+                        return "getContainerRequest".equals(method.getName()) ? request : null;
+                    }
+                });
+    }
+
+    private ContainerRequestContext request() {
+        final Map<String, Object> properties = new HashMap<>();
+        return (ContainerRequestContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { ContainerRequestContext.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("setProperty".equals(method.getName())) {
+                            properties.put((String) args[0], args[1]);
+                        } else if ("getProperty".equals(method.getName())) {
+                            return properties.get(args[0]);
+                        } else if ("removeProperty".equals(method.getName())) {
+                            properties.remove(args[0]);
+                        } else if ("abortWith".equals(method.getName())) {
+                            aborted.set((Response) args[0]);
+                        }
+                        return null;
+                    }
+                });
+    }
+}
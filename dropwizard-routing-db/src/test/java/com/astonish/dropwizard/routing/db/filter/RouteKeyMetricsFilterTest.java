@@ -0,0 +1,96 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.ws.rs.container.ContainerRequestContext;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.astonish.dropwizard.routing.db.RouteRegistry;
+import com.astonish.dropwizard.routing.db.RouteStore;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link RouteKeyMetricsFilter}.
+ */
+public class RouteKeyMetricsFilterTest {
+    private final RouteRegistry<String> registry = new RouteRegistry<>(ImmutableMap.of("starbucks", "one"));
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final RouteKeyMetricsFilter filter = new RouteKeyMetricsFilter(registry, metrics);
+
+    @After
+    public void tearDown() {
+        RouteStore.getInstance().get().clear();
+    }
+
+    @Test
+    public void timesRequestsPerAlias() throws Exception {
+        registry.addAlias("tenant42", "starbucks");
+        registry.addAlias("tenant43", "starbucks");
+
+        handle("tenant42");
+        handle("tenant42");
+        handle("tenant43");
+        handle("starbucks");
+
+        assertThat(metrics.timer("routes.tenant42.requests").getCount()).isEqualTo(2);
+        assertThat(metrics.timer("routes.tenant43.requests").getCount()).isEqualTo(1);
+        assertThat(metrics.timer("routes.starbucks.requests").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void ignoresUnknownAndMissingKeys() throws Exception {
+        handle("dunkindonuts");
+        handle(null);
+
+        assertThat(metrics.getTimers()).isEmpty();
+    }
+
+    private void handle(final String route) throws Exception {
+        RouteStore.getInstance().setRoute(route);
+        final ContainerRequestContext request = request();
+        filter.filter(request);
+        filter.filter(request, null);
+    }
+
+    private static ContainerRequestContext request() {
+        final Map<String, Object> properties = new HashMap<>();
+        return (ContainerRequestContext) Proxy.newProxyInstance(ContainerRequestContext.class.getClassLoader(),
+                new Class<?>[] { ContainerRequestContext.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("setProperty".equals(method.getName())) {
+                            properties.put((String) args[0], args[1]);
+                        } else if ("getProperty".equals(method.getName())) {
+                            return properties.get(args[0]);
+                        }
+                        return null;
+                    }
+                });
+    }
+}
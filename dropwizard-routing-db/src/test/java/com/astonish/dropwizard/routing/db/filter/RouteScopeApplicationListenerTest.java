@@ -0,0 +1,128 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.junit.After;
+import org.junit.Test;
+
+import com.astonish.dropwizard.routing.db.RouteStore;
+
+/**
+ * Unit tests for {@link RouteScopeApplicationListener}.
+ */
+public class RouteScopeApplicationListenerTest {
+    private final RouteStore store = RouteStore.getInstance();
+    private final RequestEvent startEvent = event(RequestEvent.Type.START);
+    private final RequestEvent finishedEvent = event(RequestEvent.Type.FINISHED);
+    private final RequestEvent methodFinishedEvent = event(RequestEvent.Type.RESOURCE_METHOD_FINISHED);
+    private final RequestEvent responseFiltersEvent = event(RequestEvent.Type.RESP_FILTERS_START);
+    private final RequestEventListener listener = new RouteScopeApplicationListener().onRequest(startEvent);
+
+    @After
+    public void tearDown() {
+        store.setStaleReadDetection(false);
+        store.get().clear();
+    }
+
+    @Test
+    public void unbindsTheRouteWhenTheRequestFinishes() {
+        store.setRoute("starbucks");
+
+        listener.onEvent(startEvent);
+        assertThat(store.getRoute()).isEqualTo("starbucks");
+
+        listener.onEvent(finishedEvent);
+        assertThat(store.getRoute()).isNull();
+    }
+
+    @Test
+    public void keepsTheRouteForResponseFiltersOnTheDispatchingThread() {
+        store.setRoute("starbucks");
+
+        listener.onEvent(methodFinishedEvent);
+        assertThat(store.getRoute()).isNull();
+
+        listener.onEvent(responseFiltersEvent);
+        assertThat(store.getRoute()).isEqualTo("starbucks");
+
+        listener.onEvent(finishedEvent);
+        assertThat(store.getRoute()).isNull();
+    }
+
+    @Test
+    public void movesTheRouteOfASuspendedRequestToTheResumingThread() throws Exception {
+        store.setRoute("starbucks");
+        listener.onEvent(methodFinishedEvent);
+        // the dispatching thread goes back to its pool without the route
+        assertThat(store.getRoute()).isNull();
+
+        final AtomicReference<String> resumed = new AtomicReference<>();
+        final AtomicReference<String> finished = new AtomicReference<>();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                store.setRoute("dunkindonuts");
+                listener.onEvent(responseFiltersEvent);
+                resumed.set(store.getRoute());
+                listener.onEvent(finishedEvent);
+                finished.set(store.getRoute());
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertThat(resumed.get()).isEqualTo("starbucks");
+        assertThat(finished.get()).isEqualTo("dunkindonuts");
+    }
+
+    @Test
+    public void countsStaleReadsInDebugMode() {
+        store.setStaleReadDetection(true);
+        final long staleReads = store.getStaleReadCount();
+        store.setRoute("starbucks");
+
+        listener.onEvent(finishedEvent);
+
+        assertThat(store.getRoute()).isNull();
+        assertThat(store.getStaleReadCount()).isEqualTo(staleReads + 1);
+
+        // the next request's route is not stale
+        store.setRoute("dunkindonuts");
+        assertThat(store.getRoute()).isEqualTo("dunkindonuts");
+        assertThat(store.getStaleReadCount()).isEqualTo(staleReads + 1);
+    }
+
+    private static RequestEvent event(final RequestEvent.Type type) {
+        return (RequestEvent) Proxy.newProxyInstance(RequestEvent.class.getClassLoader(),
+                new Class<?>[] { RequestEvent.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return "getType".equals(method.getName()) ? type : null;
+                    }
+                });
+    }
+}
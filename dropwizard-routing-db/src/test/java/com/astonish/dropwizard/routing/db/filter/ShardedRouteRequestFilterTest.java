@@ -0,0 +1,109 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.db.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.astonish.dropwizard.routing.db.Route;
+import com.astonish.dropwizard.routing.db.RouteRegistry;
+import com.astonish.dropwizard.routing.db.RouteStore;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link ShardedRouteRequestFilter}.
+ */
+public class ShardedRouteRequestFilterTest {
+    private final RouteRegistry<String> registry = new RouteRegistry<>(ImmutableMap.of("shard0", "zero", "shard1",
+            "one"));
+    private final ShardedRouteRequestFilter filter = new ShardedRouteRequestFilter(registry, 64);
+    private final AtomicReference<Response> aborted = new AtomicReference<>();
+
+    @After
+    public void tearDown() {
+        RouteStore.getInstance().get().clear();
+    }
+
+    @Test
+    public void storesTheKeyWithItsShard() throws Exception {
+        filter.filter(request(" tenant42 "));
+
+        assertThat(aborted.get()).isNull();
+        assertThat(RouteStore.getInstance().getRoute()).isEqualTo("tenant42");
+        final Route shard = RouteStore.getInstance().get().getResolvedRoute();
+        assertThat(shard.getName()).isIn("shard0", "shard1");
+        assertThat(registry.acquire(RouteStore.getInstance().get())).isSameAs(shard);
+        registry.release(shard);
+    }
+
+    @Test
+    public void followsAliasesAndRouteChanges() throws Exception {
+        registry.addRoute("dedicated", "two");
+        registry.addAlias("tenant42", "dedicated");
+
+        filter.filter(request("tenant42"));
+
+        assertThat(aborted.get()).isNull();
+        assertThat(RouteStore.getInstance().get().getResolvedRoute().getName()).isEqualTo("dedicated");
+    }
+
+    @Test
+    public void passesRequestsWithoutARoute() throws Exception {
+        filter.filter(request(null));
+
+        assertThat(aborted.get()).isNull();
+        assertThat(RouteStore.getInstance().getRoute()).isNull();
+    }
+
+    @Test
+    public void rejectsKeysWithoutAShard() throws Exception {
+        final ShardedRouteRequestFilter empty = new ShardedRouteRequestFilter(new RouteRegistry<>(ImmutableMap
+                .<String, String> of()), 64);
+
+        empty.filter(request("tenant42"));
+
+        assertThat(aborted.get().getStatus()).isEqualTo(404);
+        assertThat(empty.getRejectedKeys().top(1)).containsEntry("tenant42", 1L);
+    }
+
+    private ContainerRequestContext request(final String route) {
+        return (ContainerRequestContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { ContainerRequestContext.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getHeaderString".equals(method.getName())
+                                && RoutingRequestFilterHeaderImpl.HEADER_NAME.equals(args[0])) {
+                            return route;
+                        } else if ("abortWith".equals(method.getName())) {
+                            aborted.set((Response) args[0]);
+                        }
+                        return null;
+                    }
+                });
+    }
+}
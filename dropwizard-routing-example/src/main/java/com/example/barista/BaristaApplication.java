@@ -22,7 +22,7 @@ import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 
 import com.astonish.dropwizard.routing.db.DataSourceRoute;
-import com.astonish.dropwizard.routing.db.filter.RoutingRequestFilterHeaderImpl;
+import com.astonish.dropwizard.routing.db.filter.KnownRouteRequestFilter;
 import com.astonish.dropwizard.routing.hibernate.RoutingHibernateBundle;
 import com.astonish.dropwizard.routing.migrations.RoutingMigrationsBundle;
 import com.example.barista.core.Barista;
@@ -83,12 +83,12 @@ public class BaristaApplication extends Application<BaristaConfiguration> {
      */
     @Override
     public void run(BaristaConfiguration config, Environment environment) throws Exception {
-        final BaristaDaoRouter daoRouter = new BaristaDaoRouter(hibernateBundle.getSessionFactoryMap());
+        final BaristaDaoRouter daoRouter = new BaristaDaoRouter(hibernateBundle.getRouteRegistry(), false);
         environment.jersey().register(new BaristaResource(daoRouter));
         environment.jersey().register(new IngredientResource(daoRouter));
         environment.jersey().register(new RecipeResource(daoRouter));
         environment.jersey().register(new StoreResource());
-        environment.jersey().register(RoutingRequestFilterHeaderImpl.class);
+        environment.jersey().register(new KnownRouteRequestFilter(hibernateBundle.getRouteRegistry()));
     }
 
     public static void main(String[] args) throws Exception {
@@ -0,0 +1,45 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.barista.db.routing;
+
+import com.astonish.dropwizard.routing.processor.GenerateDAORouter;
+import com.example.barista.db.BaristaDAO;
+import com.example.barista.db.IngredientDAO;
+import com.example.barista.db.RecipeDAO;
+
+/**
+ * DAOs of the Barista application. The {@code BaristaDaoRouter} implementing this interface is generated at compile
+ * time.
+ */
+@GenerateDAORouter(value = { BaristaDAO.class, IngredientDAO.class, RecipeDAO.class }, className = "BaristaDaoRouter")
+public interface BaristaDAOs {
+    /**
+     * @return the current route's {@link RecipeDAO}
+     */
+    RecipeDAO getRecipeDAO();
+
+    /**
+     * @return the current route's {@link IngredientDAO}
+     */
+    IngredientDAO getIngredientDAO();
+
+    /**
+     * @return the current route's {@link BaristaDAO}
+     */
+    BaristaDAO getBaristaDAO();
+}
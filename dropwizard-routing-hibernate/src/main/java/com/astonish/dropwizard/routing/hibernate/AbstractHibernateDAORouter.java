@@ -27,12 +27,16 @@ import java.util.Map.Entry;
 import org.hibernate.SessionFactory;
 
 import com.astonish.dropwizard.routing.db.DAORouter;
+import com.astonish.dropwizard.routing.db.Route;
+import com.astonish.dropwizard.routing.db.RouteRegistry;
 import com.google.common.collect.ImmutableMap;
 
 /**
  * Responsible for holding all DAOs for all possible routes.
  */
 public abstract class AbstractHibernateDAORouter extends DAORouter {
+    private final RouteRegistry<SessionFactory> registry;
+
     /**
      * @param sessionFactoryMap
      *            map of route keys to their corresponding {@link SessionFactory}.
@@ -43,16 +47,64 @@ public abstract class AbstractHibernateDAORouter extends DAORouter {
      *             if sessionFactoryMap is empty
      */
     public AbstractHibernateDAORouter(final ImmutableMap<String, SessionFactory> sessionFactoryMap) {
-        checkNotNull(sessionFactoryMap);
+        this(sessionFactoryMap, false);
+    }
+
+    /**
+     * @param sessionFactoryMap
+     *            map of route keys to their corresponding {@link SessionFactory}.
+     * @param lazy
+     *            if true only the DAOs of the first (default) route are constructed up front, the DAOs of every
+     *            other route are constructed on first access
+     * @throws NullPointerException
+     *             if sessionFactoryMap is null or any {@link Entry} in sessionFactoryMap has a null value with a
+     *             non-null key
+     * @throws IllegalStateException
+     *             if sessionFactoryMap is empty
+     */
+    public AbstractHibernateDAORouter(final ImmutableMap<String, SessionFactory> sessionFactoryMap,
+            final boolean lazy) {
+        this(new RouteRegistry<>(checkNotNull(sessionFactoryMap)), lazy);
+    }
+
+    /**
+     * Follows the routes of a {@link RouteRegistry}, such as the one of a {@link RoutingHibernateBundle}. DAOs of
+     * routes added to the registry later are constructed on first access.
+     * @param registry
+     *            the {@link RouteRegistry} of {@link SessionFactory}
+     * @param lazy
+     *            if true only the DAOs of the first (default) route are constructed up front, the DAOs of every
+     *            other route are constructed on first access
+     * @throws IllegalStateException
+     *             if the registry has no routes
+     */
+    public AbstractHibernateDAORouter(final RouteRegistry<SessionFactory> registry, final boolean lazy) {
+        final ImmutableMap<String, SessionFactory> sessionFactoryMap = checkNotNull(registry).asMap();
         checkState(!sessionFactoryMap.isEmpty());
 
         final Map<String, ImmutableMap<Class<?>, Object>> daosByRoute = new LinkedHashMap<>();
         for (Entry<String, SessionFactory> e : sessionFactoryMap.entrySet()) {
             SessionFactory factory = checkNotNull(e.getValue());
-            daosByRoute.put(e.getKey(), constructDAOs(factory));
+            if (!lazy || daosByRoute.isEmpty()) {
+                daosByRoute.put(e.getKey(), constructDAOs(factory));
+            }
         }
 
-        this.daosByRoute = ImmutableMap.copyOf(daosByRoute);
+        this.registry = registry;
+        setRoutes(registry, ImmutableMap.copyOf(daosByRoute));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.astonish.dropwizard.routing.db.DAORouter#loadDAOs(com.astonish.dropwizard.routing.db.Route)
+     */
+    @Override
+    protected ImmutableMap<Class<?>, Object> loadDAOs(final Route route) {
+        // draining routes are only found by handle
+        final SessionFactory factory = registry.get(route);
+        checkState(null != factory, "No SessionFactory found for %s", route);
+        return constructDAOs(factory);
     }
 
     /**
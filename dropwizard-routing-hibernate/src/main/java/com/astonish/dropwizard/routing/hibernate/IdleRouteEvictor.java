@@ -0,0 +1,166 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.hibernate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.astonish.dropwizard.routing.db.RouteRegistry;
+
+/**
+ * Evicts the materialized {@link LazySessionFactory} routes of a {@link RouteRegistry} that have been idle for longer
+ * than the idle timeout, then evicts the least recently used routes until no more than the maximum number of routes
+ * are resident. Routes held by a unit of work are never evicted, so the maximum can be exceeded while they are busy.
+ * <p/>
+ * Meant to be run periodically, and whenever a route is materialized if the number of resident routes is capped.
+ */
+public class IdleRouteEvictor implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdleRouteEvictor.class);
+    private static final Comparator<Resident> LEAST_RECENTLY_USED = new Comparator<Resident>() {
+        @Override
+        public int compare(Resident o1, Resident o2) {
+            return Long.compare(o1.lastUsedNanos - o2.lastUsedNanos, 0);
+        }
+    };
+
+    private final RouteRegistry<SessionFactory> registry;
+    private final long idleTimeoutNanos;
+    private final int maxResident;
+
+    /**
+     * @param registry
+     *            the {@link RouteRegistry} of {@link SessionFactory}
+     * @param idleTimeout
+     *            how long a route may go unused before it is evicted
+     * @param unit
+     *            the unit of idleTimeout
+     * @param maxResident
+     *            the maximum number of materialized routes, or 0 for no maximum
+     */
+    public IdleRouteEvictor(RouteRegistry<SessionFactory> registry, long idleTimeout, TimeUnit unit, int maxResident) {
+        checkArgument(0 < idleTimeout, "idleTimeout must be positive");
+        checkArgument(0 <= maxResident, "maxResident must not be negative");
+        this.registry = checkNotNull(registry, "registry is required");
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+        this.maxResident = maxResident;
+    }
+
+    /**
+     * @return the number of materialized routes
+     */
+    public int getResident() {
+        return resident().size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        try {
+            evict();
+        } catch (RuntimeException e) {
+            // a scheduled executor stops running a task once it throws
+            LOGGER.warn("Failed to evict idle routes", e);
+        }
+    }
+
+    /**
+     * Evicts the routes idle for longer than the idle timeout, then the least recently used routes over the maximum.
+     * @return the number of evicted routes
+     */
+    public int evict() {
+        final List<Resident> resident = new ArrayList<>();
+        for (LazySessionFactory route : resident()) {
+            resident.add(new Resident(route));
+        }
+
+        final long now = System.nanoTime();
+        int evicted = 0;
+        for (Iterator<Resident> it = resident.iterator(); it.hasNext();) {
+            final Resident candidate = it.next();
+            if (idleTimeoutNanos <= now - candidate.lastUsedNanos && evict(candidate.route)) {
+                it.remove();
+                evicted++;
+            }
+        }
+
+        if (0 < maxResident && maxResident < resident.size()) {
+            // sorted by the last use seen above; a route used since then may still be evicted unless it is held
+            Collections.sort(resident, LEAST_RECENTLY_USED);
+            final Iterator<Resident> it = resident.iterator();
+            while (it.hasNext() && maxResident < resident.size()) {
+                if (evict(it.next().route)) {
+                    it.remove();
+                    evicted++;
+                }
+            }
+        }
+
+        if (0 < evicted) {
+            LOGGER.info("Evicted {} routes, {} routes are resident", evicted, resident.size());
+        }
+        return evicted;
+    }
+
+    private List<LazySessionFactory> resident() {
+        final List<LazySessionFactory> resident = new ArrayList<>();
+        for (SessionFactory factory : registry.asMap().values()) {
+            final LazySessionFactory route = LazySessionFactory.of(factory);
+            if (null != route && route.isMaterialized()) {
+                resident.add(route);
+            }
+        }
+        return resident;
+    }
+
+    private static boolean evict(LazySessionFactory route) {
+        try {
+            return route.evict();
+        } catch (Exception e) {
+            LOGGER.warn("Failed to evict Route[{}]", route.getRouteName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * A materialized route with the time of its last use when eviction started.
+     */
+    private static final class Resident {
+        private final LazySessionFactory route;
+        private final long lastUsedNanos;
+
+        Resident(LazySessionFactory route) {
+            this.route = route;
+            this.lastUsedNanos = route.getLastUsedNanos();
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.hibernate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.google.common.base.Throwables;
+
+/**
+ * Defers building the {@link SessionFactory} of a route, and its connection pool, until the route is first used.
+ * <p/>
+ * {@link #getSessionFactory()} is a {@link SessionFactory} standing in for the route's factory from the start, so that
+ * it can be held by the {@link com.astonish.dropwizard.routing.db.RouteRegistry} and by DAOs. Any call on it
+ * materializes the route; concurrent first calls wait for a single build.
+ * <p/>
+ * A materialized route can be {@link #evict() evicted} when idle, closing its {@link SessionFactory} and connection
+ * pool until the next use, see {@link IdleRouteEvictor}. Units of work hold the route between {@link #acquire()} and
+ * {@link #release()} so that it is not evicted under them.
+ */
+public abstract class LazySessionFactory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LazySessionFactory.class);
+
+    private final String routeName;
+    private final SessionFactory sessionFactory;
+    private final AtomicInteger users = new AtomicInteger();
+    private volatile SessionFactory delegate;
+    private volatile long lastUsedNanos = System.nanoTime();
+    private volatile Runnable onMaterialized;
+    private volatile Runnable onEvicted;
+    private boolean closed;
+
+    /**
+     * @param routeName
+     *            the route name
+     */
+    protected LazySessionFactory(String routeName) {
+        this.routeName = checkNotNull(routeName, "routeName is required");
+        this.sessionFactory = (SessionFactory) Proxy.newProxyInstance(SessionFactory.class.getClassLoader(),
+                new Class<?>[] { SessionFactory.class }, new Handler());
+    }
+
+    /**
+     * @param sessionFactory
+     *            a {@link SessionFactory}
+     * @return the {@link LazySessionFactory} the factory stands in for, or null if it is not lazy
+     */
+    public static LazySessionFactory of(SessionFactory sessionFactory) {
+        if (null != sessionFactory && Proxy.isProxyClass(sessionFactory.getClass())) {
+            final InvocationHandler handler = Proxy.getInvocationHandler(sessionFactory);
+            if (handler instanceof Handler) {
+                return ((Handler) handler).owner();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param sessionFactory
+     *            a {@link SessionFactory}
+     * @return the materialized {@link SessionFactory} of a lazy factory, or the factory itself
+     */
+    public static SessionFactory materialized(SessionFactory sessionFactory) {
+        final LazySessionFactory lazy = of(sessionFactory);
+        return null == lazy ? sessionFactory : lazy.get();
+    }
+
+    /**
+     * Builds the {@link SessionFactory} of the route, together with its connection pool.
+     * @return the {@link SessionFactory}
+     * @throws Exception
+     *             if the {@link SessionFactory} can not be built
+     */
+    protected abstract SessionFactory materialize() throws Exception;
+
+    /**
+     * Closes a {@link SessionFactory} built by {@link #materialize()}, together with its connection pool.
+     * @param factory
+     *            the {@link SessionFactory}
+     * @throws Exception
+     *             if the {@link SessionFactory} can not be closed
+     */
+    protected abstract void dematerialize(SessionFactory factory) throws Exception;
+
+    /**
+     * @return the route name
+     */
+    public String getRouteName() {
+        return routeName;
+    }
+
+    /**
+     * @return the {@link SessionFactory} standing in for the route's factory
+     */
+    public SessionFactory getSessionFactory() {
+        return sessionFactory;
+    }
+
+    /**
+     * @return true if the route's {@link SessionFactory} has been built
+     */
+    public boolean isMaterialized() {
+        return null != delegate;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} of the last use of the route
+     */
+    public long getLastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    /**
+     * @return true if a unit of work holds the route
+     */
+    public boolean isInUse() {
+        return 0 < users.get();
+    }
+
+    /**
+     * @param onMaterialized
+     *            run on the materializing thread each time the route is materialized, or null
+     */
+    public void setOnMaterialized(Runnable onMaterialized) {
+        this.onMaterialized = onMaterialized;
+    }
+
+    /**
+     * @param onEvicted
+     *            run on the evicting thread each time the route is evicted, or null
+     */
+    public void setOnEvicted(Runnable onEvicted) {
+        this.onEvicted = onEvicted;
+    }
+
+    /**
+     * Holds the route for a unit of work, so that it is not evicted until {@link #release()}, and returns its
+     * {@link SessionFactory}, building it if the route is not materialized.
+     * @return the materialized {@link SessionFactory}
+     * @throws IllegalStateException
+     *             if closed
+     */
+    public SessionFactory acquire() {
+        users.incrementAndGet();
+        try {
+            return get();
+        } catch (RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * Ends a unit of work started with {@link #acquire()}.
+     */
+    public void release() {
+        this.lastUsedNanos = System.nanoTime();
+        users.decrementAndGet();
+    }
+
+    /**
+     * Returns the route's {@link SessionFactory}, building it if the route is not materialized. Outside of a unit of
+     * work, the returned {@link SessionFactory} may be closed by an eviction at any time.
+     * @return the materialized {@link SessionFactory}
+     * @throws IllegalStateException
+     *             if closed
+     */
+    public SessionFactory get() {
+        this.lastUsedNanos = System.nanoTime();
+        final SessionFactory current = delegate;
+        if (null != current) {
+            return current;
+        }
+
+        synchronized (this) {
+            checkState(!closed, "Route[%s] is closed", routeName);
+            if (null == delegate) {
+                final long start = System.nanoTime();
+                try {
+                    this.delegate = checkNotNull(materialize(), "materialized SessionFactory is required");
+                } catch (Exception e) {
+                    LOGGER.error("Failed to materialize Route[{}]", routeName);
+                    throw Throwables.propagate(e);
+                }
+                LOGGER.info("Materialized Route[{}] in {}ms", routeName, TimeUnit.NANOSECONDS.toMillis(System
+                        .nanoTime() - start));
+                final Runnable callback = onMaterialized;
+                if (null != callback) {
+                    callback.run();
+                }
+            }
+            return delegate;
+        }
+    }
+
+    /**
+     * Closes the route's {@link SessionFactory} and connection pool unless a unit of work holds the route. The route
+     * is materialized again on its next use.
+     * @return true if the route was materialized and has been evicted
+     * @throws Exception
+     *             if the {@link SessionFactory} can not be closed
+     */
+    public synchronized boolean evict() throws Exception {
+        final SessionFactory current = delegate;
+        if (null == current || isInUse()) {
+            return false;
+        }
+
+        this.delegate = null;
+        if (isInUse()) {
+            // acquired after the first check, it may have seen the factory before it was cleared
+            this.delegate = current;
+            return false;
+        }
+        try {
+            dematerialize(current);
+        } finally {
+            final Runnable callback = onEvicted;
+            if (null != callback) {
+                callback.run();
+            }
+        }
+        LOGGER.info("Evicted Route[{}]", routeName);
+        return true;
+    }
+
+    /**
+     * Closes the route's {@link SessionFactory}, if it was built. The route can not be materialized afterwards.
+     * @throws Exception
+     *             if the {@link SessionFactory} can not be closed
+     */
+    public synchronized void close() throws Exception {
+        this.closed = true;
+        final SessionFactory current = delegate;
+        if (null != current) {
+            this.delegate = null;
+            dematerialize(current);
+        }
+    }
+
+    /**
+     * Wraps a task reaching the route's databases so that it only runs while the route is materialized, and so that
+     * the route is not evicted while it runs.
+     * @param task
+     *            the task
+     * @return the wrapped task
+     */
+    public Runnable whenMaterialized(final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                synchronized (LazySessionFactory.this) {
+                    if (isMaterialized()) {
+                        task.run();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps the health check of the route so that it only runs, and only reaches the database, once the route is
+     * materialized.
+     * @param healthCheck
+     *            the health check of the route
+     * @return the wrapped {@link HealthCheck}
+     */
+    public HealthCheck whenMaterialized(final HealthCheck healthCheck) {
+        return new HealthCheck() {
+            @Override
+            protected Result check() throws Exception {
+                if (!isMaterialized()) {
+                    return Result.healthy("Route[%s] is not materialized", routeName);
+                }
+                return healthCheck.execute();
+            }
+        };
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "LazySessionFactory[" + routeName + "]";
+    }
+
+    /**
+     * Forwards calls on the stand-in {@link SessionFactory} to the materialized one.
+     */
+    private final class Handler implements InvocationHandler {
+        LazySessionFactory owner() {
+            return LazySessionFactory.this;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (Object.class == method.getDeclaringClass()) {
+                switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return LazySessionFactory.this.toString();
+                }
+            }
+            if ("isClosed".equals(method.getName())) {
+                synchronized (LazySessionFactory.this) {
+                    final SessionFactory current = delegate;
+                    return closed || (null != current && current.isClosed());
+                }
+            }
+            if ("close".equals(method.getName())) {
+                LazySessionFactory.this.close();
+                return null;
+            }
+
+            try {
+                return method.invoke(get(), args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.hibernate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
+import org.hibernate.service.UnknownUnwrapTypeException;
+
+import com.astonish.dropwizard.routing.db.TenantSwitch;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A {@link MultiTenantConnectionProvider} handing out connections of a single pool shared by the tenants of a route,
+ * each switched to the schema of its tenant on checkout. Tenant identifiers are route keys, see
+ * {@link RouteTenantResolver}. Only configured tenants get a connection: a tenant identifier is never used as a
+ * schema name, since route keys come from clients.
+ */
+public class RouteTenantConnectionProvider implements MultiTenantConnectionProvider {
+    private final DataSource dataSource;
+    private final TenantSwitch tenantSwitch;
+    private final ImmutableMap<String, String> schemas;
+
+    /**
+     * @param dataSource
+     *            the pool shared by the tenants
+     * @param tenantSwitch
+     *            how connections are switched to a tenant's schema
+     * @param schemas
+     *            the schema of each tenant keyed by route key
+     */
+    public RouteTenantConnectionProvider(DataSource dataSource, TenantSwitch tenantSwitch,
+            ImmutableMap<String, String> schemas) {
+        this.dataSource = checkNotNull(dataSource, "dataSource is required");
+        this.tenantSwitch = checkNotNull(tenantSwitch, "tenantSwitch is required");
+        this.schemas = checkNotNull(schemas, "schemas is required");
+    }
+
+    /**
+     * @param tenantIdentifier
+     *            the tenant identifier
+     * @return the schema of the tenant
+     * @throws IllegalArgumentException
+     *             if the tenant is not configured
+     */
+    public String getSchema(String tenantIdentifier) {
+        final String schema = null == tenantIdentifier ? null : schemas.get(tenantIdentifier);
+        checkArgument(null != schema, "Unknown tenant[%s]", tenantIdentifier);
+        return schema;
+    }
+
+    /**
+     * Switches a connection that does not come from this provider, such as a connection of a read replica, to the
+     * schema of a tenant.
+     * @param connection
+     *            the connection
+     * @param tenantIdentifier
+     *            the tenant identifier
+     * @throws SQLException
+     *             if the connection can not be switched
+     * @throws IllegalArgumentException
+     *             if the tenant is not configured
+     */
+    public void switchTenant(Connection connection, String tenantIdentifier) throws SQLException {
+        tenantSwitch.apply(connection, getSchema(tenantIdentifier));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider#getAnyConnection()
+     */
+    @Override
+    public Connection getAnyConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider#releaseAnyConnection(java.sql.Connection)
+     */
+    @Override
+    public void releaseAnyConnection(Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider#getConnection(java.lang.String)
+     */
+    @Override
+    public Connection getConnection(String tenantIdentifier) throws SQLException {
+        final String schema = getSchema(tenantIdentifier);
+        final Connection connection = getAnyConnection();
+        try {
+            tenantSwitch.apply(connection, schema);
+        } catch (SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider#releaseConnection(java.lang.String,
+     * java.sql.Connection)
+     */
+    @Override
+    public void releaseConnection(String tenantIdentifier, Connection connection) throws SQLException {
+        // the connection is switched again on its next checkout
+        connection.close();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider#supportsAggressiveRelease()
+     */
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hibernate.service.spi.Wrapped#isUnwrappableAs(java.lang.Class)
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return unwrapType.isInstance(this) || unwrapType.isInstance(dataSource);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hibernate.service.spi.Wrapped#unwrap(java.lang.Class)
+     */
+    @Override
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (unwrapType.isInstance(this)) {
+            return unwrapType.cast(this);
+        }
+        if (unwrapType.isInstance(dataSource)) {
+            return unwrapType.cast(dataSource);
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+}
@@ -0,0 +1,77 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.hibernate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Set;
+
+import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
+
+import com.astonish.dropwizard.routing.db.RouteContext;
+import com.astonish.dropwizard.routing.db.RouteStore;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Resolves the tenant of a session from the route key of the current {@link RouteContext}, so that a session opened
+ * for a tenant of a route is on the tenant's schema, see {@link RouteTenantConnectionProvider}. Only configured tenant
+ * keys are tenants: any other key reaching the route, such as an alias or a key sharded onto it, and no key at all,
+ * resolve to the route itself, whose name is mapped to the route's default schema.
+ */
+public class RouteTenantResolver implements CurrentTenantIdentifierResolver {
+    private final String routeName;
+    private final ImmutableSet<String> tenants;
+
+    /**
+     * @param routeName
+     *            the name of the route the tenants belong to
+     * @param tenants
+     *            the tenant keys of the route, its name included
+     * @throws IllegalArgumentException
+     *             if the route name is not a tenant
+     */
+    public RouteTenantResolver(String routeName, Set<String> tenants) {
+        this.routeName = checkNotNull(routeName, "routeName is required");
+        this.tenants = ImmutableSet.copyOf(checkNotNull(tenants, "tenants is required"));
+        checkArgument(this.tenants.contains(routeName), "Route[%s] must map its name to its default schema",
+                routeName);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hibernate.context.spi.CurrentTenantIdentifierResolver#resolveCurrentTenantIdentifier()
+     */
+    @Override
+    public String resolveCurrentTenantIdentifier() {
+        final RouteContext context = RouteStore.getInstance().peek();
+        final String routeKey = null == context ? null : context.getRoute();
+        return null != routeKey && tenants.contains(routeKey) ? routeKey : routeName;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hibernate.context.spi.CurrentTenantIdentifierResolver#validateExistingCurrentSessions()
+     */
+    @Override
+    public boolean validateExistingCurrentSessions() {
+        return true;
+    }
+}
@@ -20,28 +20,110 @@ package com.astonish.dropwizard.routing.hibernate;
 import io.dropwizard.Configuration;
 import io.dropwizard.ConfiguredBundle;
 import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.db.ManagedDataSource;
 import io.dropwizard.hibernate.SessionFactoryHealthCheck;
+import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import io.dropwizard.util.Duration;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.astonish.dropwizard.routing.db.AdaptiveRouteLimiter;
 import com.astonish.dropwizard.routing.db.DataSourceRoute;
+import com.astonish.dropwizard.routing.db.Replica;
+import com.astonish.dropwizard.routing.db.ReplicaBalancer;
+import com.astonish.dropwizard.routing.db.ReplicaLagSampler;
+import com.astonish.dropwizard.routing.db.RouteBulkheads;
+import com.astonish.dropwizard.routing.db.RouteFairQueue;
+import com.astonish.dropwizard.routing.db.RouteRegistry;
+import com.astonish.dropwizard.routing.db.RouteReplicas;
 import com.astonish.dropwizard.routing.db.RoutingDatabaseConfiguration;
+import com.astonish.dropwizard.routing.db.filter.RouteBulkheadFilter;
+import com.astonish.dropwizard.routing.db.filter.RouteFairQueueFilter;
+import com.astonish.dropwizard.routing.db.filter.RouteScopeApplicationListener;
+import com.codahale.metrics.health.HealthCheck;
 import com.fasterxml.jackson.datatype.hibernate4.Hibernate4Module;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Routing Hibernate bundle.
+ * <p/>
+ * Routes are held in a {@link RouteRegistry} that can be changed at runtime with {@link #addRoute(DataSourceRoute)}
+ * and {@link #removeRoute(String)}.
+ * <p/>
+ * Each route's concurrent requests are limited by a bulkhead, by default to the route's maximum pool size, so that a
+ * saturated route can not take every worker thread. Unless disabled, the limit then adapts to the latency of the
+ * route's units of work, see {@link AdaptiveRouteLimiter}. Optionally, the capacity of the whole service is shared
+ * between routes by weighted fair queuing according to each route's tier, see {@link RouteFairQueue}.
+ * <p/>
+ * Read-only units of work go to one of the route's read replicas, if it has any, chosen by load and latency. Replicas
+ * whose sampled replication lag exceeds the route's maximum are skipped, as are replicas that have not yet replayed a
+ * write the client saw, see {@link com.astonish.dropwizard.routing.db.WriteTokens}.
+ * <p/>
+ * With {@link #setLazyRoutes(boolean)}, the connection pool and {@link SessionFactory} of each route are only built
+ * when the route is first used, see {@link LazySessionFactory}. With {@link #setIdleRouteEviction(Duration, int)},
+ * they are closed again once the route goes idle, see {@link IdleRouteEvictor}.
+ * <p/>
+ * The tenants of a route, held in separate schemas of the route's database, share its connection pool and
+ * {@link SessionFactory} through Hibernate's schema multi-tenancy, see {@link RouteTenantConnectionProvider}.
  */
 public abstract class RoutingHibernateBundle<T extends Configuration> implements ConfiguredBundle<T>,
         RoutingDatabaseConfiguration<T> {
-    private ImmutableMap<String, SessionFactory> sessionFactoryMap;
+    public static final String DEFAULT_TIER = "standard";
+    public static final ImmutableMap<String, Integer> DEFAULT_TIER_WEIGHTS = ImmutableMap.of("premium", 4,
+            DEFAULT_TIER, 2, "basic", 1);
+    private static final Logger LOGGER = LoggerFactory.getLogger(RoutingHibernateBundle.class);
+
+    private RouteRegistry<SessionFactory> routeRegistry;
+    private RouteBulkheads bulkheads;
+    private RouteReplicas<ManagedDataSource> replicas;
+    private ScheduledExecutorService lagSampling;
+    private final Map<String, List<ScheduledFuture<?>>> lagSamplers = new ConcurrentHashMap<>();
+    private int bulkheadMaxQueued = 0;
+    private Duration bulkheadMaxWait = Duration.seconds(0);
+    private boolean adaptiveLimits = true;
+    private RouteFairQueue fairQueue;
+    private int fairQueueCapacity = 0;
+    private int fairQueueMaxQueued = 0;
+    private Duration fairQueueMaxWait = Duration.seconds(0);
+    private ImmutableMap<String, Integer> tierWeights = DEFAULT_TIER_WEIGHTS;
+    private AdaptiveRouteLimiter limiter;
+    private Environment environment;
+    // names held by a route from the moment it is reserved for adding until its removal finishes
+    private final Set<String> routeNames = Sets.newConcurrentHashSet();
+    private Duration routeDrainTimeout = Duration.seconds(30);
+    private int bootstrapParallelism = 1;
+    private boolean lazyRoutes = false;
+    private Duration routeIdleTimeout;
+    private int maxResidentRoutes = 0;
+    private IdleRouteEvictor evictor;
+    private ScheduledExecutorService eviction;
     private final ImmutableList<Class<?>> entities;
     private final RoutingSessionFactoryFactory sessionFactoryFactory;
 
@@ -89,7 +171,146 @@ public abstract class RoutingHibernateBundle<T extends Configuration> implements
      * @return the sessionFactoryMap
      */
     public ImmutableMap<String, SessionFactory> getSessionFactoryMap() {
-        return ImmutableMap.copyOf(sessionFactoryMap);
+        return routeRegistry.asMap();
+    }
+
+    /**
+     * @return the {@link RouteRegistry} of {@link SessionFactory}, shared with the unit of work listener
+     */
+    public RouteRegistry<SessionFactory> getRouteRegistry() {
+        return routeRegistry;
+    }
+
+    /**
+     * @return the read replicas of the routes
+     */
+    public RouteReplicas<ManagedDataSource> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * @return the per-route {@link RouteBulkheads}
+     */
+    public RouteBulkheads getBulkheads() {
+        return bulkheads;
+    }
+
+    /**
+     * Sets how requests over their route's limit are queued; by default they are rejected right away. Must be called
+     * before the bundle runs.
+     * @param maxQueued
+     *            the maximum number of requests waiting per route
+     * @param maxWait
+     *            the maximum time a request waits for its route
+     */
+    public void setBulkheadQueue(int maxQueued, Duration maxWait) {
+        this.bulkheadMaxQueued = maxQueued;
+        this.bulkheadMaxWait = maxWait;
+    }
+
+    /**
+     * @return the {@link RouteFairQueue}, or null if fair queuing is disabled
+     */
+    public RouteFairQueue getFairQueue() {
+        return fairQueue;
+    }
+
+    /**
+     * Shares the capacity of the service between routes by weighted fair queuing; disabled by default. Must be called
+     * before the bundle runs.
+     * @param capacity
+     *            the maximum number of requests in flight across all routes
+     * @param maxQueued
+     *            the maximum number of requests waiting across all routes
+     * @param maxWait
+     *            the maximum time a request waits for its share
+     */
+    public void setFairQueue(int capacity, int maxQueued, Duration maxWait) {
+        checkArgument(0 < capacity, "capacity must be positive");
+        this.fairQueueCapacity = capacity;
+        this.fairQueueMaxQueued = maxQueued;
+        this.fairQueueMaxWait = maxWait;
+    }
+
+    /**
+     * @param tierWeights
+     *            the weight of each tier, replacing {@link #DEFAULT_TIER_WEIGHTS}, which must include
+     *            {@link #DEFAULT_TIER}; must be called before the bundle runs
+     */
+    public void setTierWeights(ImmutableMap<String, Integer> tierWeights) {
+        checkArgument(tierWeights.containsKey(DEFAULT_TIER), "tierWeights must include tier[%s]", DEFAULT_TIER);
+        this.tierWeights = tierWeights;
+    }
+
+    /**
+     * @return the {@link AdaptiveRouteLimiter}, or null if adaptive limits are disabled
+     */
+    public AdaptiveRouteLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * @param adaptiveLimits
+     *            false to keep each route's limit fixed at its configured value; must be called before the bundle
+     *            runs
+     */
+    public void setAdaptiveLimits(boolean adaptiveLimits) {
+        this.adaptiveLimits = adaptiveLimits;
+    }
+
+    /**
+     * Builds the connection pools and {@link SessionFactory}s of the configured routes on up to the given number of
+     * threads when the bundle runs; by default they are built one after the other. Must be called before the bundle
+     * runs.
+     * @param bootstrapParallelism
+     *            the maximum number of routes built at once
+     */
+    public void setBootstrapParallelism(int bootstrapParallelism) {
+        checkArgument(0 < bootstrapParallelism, "bootstrapParallelism must be positive");
+        this.bootstrapParallelism = bootstrapParallelism;
+    }
+
+    /**
+     * Defers building the connection pool and {@link SessionFactory} of each route until the route is first used;
+     * disabled by default. When the bundle runs, only the configuration of the routes is checked. Must be called
+     * before the bundle runs.
+     * @param lazyRoutes
+     *            true to build routes on first use
+     */
+    public void setLazyRoutes(boolean lazyRoutes) {
+        this.lazyRoutes = lazyRoutes;
+    }
+
+    /**
+     * @return the {@link IdleRouteEvictor}, or null if idle routes are not evicted
+     */
+    public IdleRouteEvictor getEvictor() {
+        return evictor;
+    }
+
+    /**
+     * Closes the connection pool and {@link SessionFactory} of routes unused for the idle timeout, and of the least
+     * recently used routes while more than the maximum are open; disabled by default. Evicted routes are built again
+     * on their next use. Implies {@link #setLazyRoutes(boolean)}. Must be called before the bundle runs.
+     * @param idleTimeout
+     *            how long a route may go unused before it is closed
+     * @param maxResidentRoutes
+     *            the maximum number of open routes, or 0 for no maximum
+     */
+    public void setIdleRouteEviction(Duration idleTimeout, int maxResidentRoutes) {
+        checkArgument(0 < idleTimeout.getQuantity(), "idleTimeout must be positive");
+        checkArgument(0 <= maxResidentRoutes, "maxResidentRoutes must not be negative");
+        this.routeIdleTimeout = idleTimeout;
+        this.maxResidentRoutes = maxResidentRoutes;
+        this.lazyRoutes = true;
+    }
+
+    /**
+     * @param routeDrainTimeout
+     *            how long {@link #removeRoute(String)} waits for in-flight units of work before closing the route
+     */
+    public void setRouteDrainTimeout(Duration routeDrainTimeout) {
+        this.routeDrainTimeout = routeDrainTimeout;
     }
 
     /*
@@ -99,22 +320,415 @@ public abstract class RoutingHibernateBundle<T extends Configuration> implements
      */
     @Override
     public final void run(T configuration, Environment environment) throws Exception {
-        final Map<String, SessionFactory> sessionFactories = new LinkedHashMap<>();
+        final ImmutableMap<String, SessionFactory> sessionFactories = buildRoutes(getDataSourceRoutes(configuration),
+                environment);
+        for (DataSourceRoute route : getDataSourceRoutes(configuration)) {
+            registerHealthCheck(route, sessionFactories.get(route.getRouteName()), environment);
+        }
+
+        this.environment = environment;
+        this.routeRegistry = new RouteRegistry<>(sessionFactories);
+        routeNames.addAll(sessionFactories.keySet());
+        this.bulkheads = new RouteBulkheads(routeRegistry, Integer.MAX_VALUE, bulkheadMaxQueued,
+                bulkheadMaxWait.getQuantity(), bulkheadMaxWait.getUnit());
+        this.replicas = new RouteReplicas<>(routeRegistry);
         for (DataSourceRoute route : getDataSourceRoutes(configuration)) {
-            final String routeKey = route.getRouteName();
-            final DataSourceFactory dbConfig = route.getDatabase();
+            bulkheads.setLimit(route.getRouteName(), concurrencyLimit(route));
+            if (!route.getReplicas().isEmpty()) {
+                final ReplicaBalancer<ManagedDataSource> balancer = buildReplicas(route, environment);
+                replicas.put(route.getRouteName(), balancer);
+                manageReplicas(route, balancer, sessionFactories.get(route.getRouteName()));
+            }
+            for (String alias : aliases(route)) {
+                routeRegistry.addAlias(alias, route.getRouteName());
+            }
+        }
+        if (adaptiveLimits) {
+            this.limiter = new AdaptiveRouteLimiter(routeRegistry, bulkheads, environment.metrics());
+        }
+        if (null != routeIdleTimeout) {
+            this.evictor = new IdleRouteEvictor(routeRegistry, routeIdleTimeout.getQuantity(),
+                    routeIdleTimeout.getUnit(), maxResidentRoutes);
+            this.eviction = environment.lifecycle().scheduledExecutorService("route-eviction-%d").threads(1).build();
+            final long interval = Math.max(1000, routeIdleTimeout.toMilliseconds() / 2);
+            eviction.scheduleWithFixedDelay(evictor, interval, interval, TimeUnit.MILLISECONDS);
+            for (SessionFactory factory : sessionFactories.values()) {
+                evictWhenMaterialized(factory);
+            }
+        }
+        if (0 < fairQueueCapacity) {
+            this.fairQueue = new RouteFairQueue(routeRegistry, fairQueueCapacity, fairQueueMaxQueued,
+                    fairQueueMaxWait.getQuantity(), fairQueueMaxWait.getUnit(), tierWeights, DEFAULT_TIER,
+                    environment.metrics());
+            for (DataSourceRoute route : getDataSourceRoutes(configuration)) {
+                if (null != route.getTier()) {
+                    fairQueue.setTier(route.getRouteName(), route.getTier());
+                }
+            }
+            environment.jersey().register(new RouteFairQueueFilter(fairQueue));
+        }
+        environment.jersey().register(new RoutingUnitOfWorkApplicationListener(this.routeRegistry, limiter,
+                replicas));
+        environment.jersey().register(new RouteBulkheadFilter(bulkheads));
+        environment.jersey().register(new RouteScopeApplicationListener());
+        environment.lifecycle().manage(new Managed() {
+            @Override
+            public void start() throws Exception {
+            }
 
-            final SessionFactory sessionFactory = sessionFactoryFactory.build(this, environment, dbConfig, entities,
-                    routeKey);
-            environment.healthChecks().register(
-                    routeKey,
-                    new SessionFactoryHealthCheck(environment.getHealthCheckExecutorService(), dbConfig
-                            .getValidationQueryTimeout().or(Duration.seconds(5)), sessionFactory, dbConfig
-                            .getValidationQuery()));
-            sessionFactories.put(routeKey, sessionFactory);
+            @Override
+            public void stop() throws Exception {
+                // the bundle owns every route, none is handed to the lifecycle, so removed routes are not kept open
+                for (Map.Entry<String, SessionFactory> route : routeRegistry.asMap().entrySet()) {
+                    sessionFactoryFactory.close(route.getValue());
+                    removeReplicas(route.getKey());
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds a route and its aliases at runtime. The connection pool and {@link SessionFactory} are built on the calling
+     * thread before the route is published, so requests never wait on them, unless routes are built lazily.
+     * <p/>
+     * The name is reserved before anything is built and stays reserved until the route is removed, including while
+     * it drains, so that concurrent calls for the same name fail fast and whatever is keyed by the name, its health
+     * check, replicas and lag samplers, belongs to this route alone.
+     * @param route
+     *            the {@link DataSourceRoute}
+     * @throws IllegalArgumentException
+     *             if the route already exists, is being added or is still being removed
+     * @throws Exception
+     *             if the {@link SessionFactory} can not be built
+     */
+    public void addRoute(DataSourceRoute route) throws Exception {
+        checkState(null != routeRegistry, "Routes can only be added once the bundle is running");
+        final String routeName = route.getRouteName();
+        checkArgument(routeNames.add(routeName), "Route[%s] already exists", routeName);
+
+        SessionFactory factory = null;
+        try {
+            factory = buildRoute(route, environment);
+            if (!route.getReplicas().isEmpty()) {
+                final ReplicaBalancer<ManagedDataSource> balancer = buildReplicas(route, environment);
+                replicas.put(routeName, balancer);
+                manageReplicas(route, balancer, factory);
+            }
+            routeRegistry.addRoute(routeName, factory);
+        } catch (Exception | Error e) {
+            if (null != factory) {
+                environment.healthChecks().unregister(routeName);
+                sessionFactoryFactory.close(factory);
+            }
+            removeReplicas(routeName);
+            routeNames.remove(routeName);
+            throw e;
         }
 
-        this.sessionFactoryMap = ImmutableMap.copyOf(sessionFactories);
-        environment.jersey().register(new RoutingUnitOfWorkApplicationListener(this.sessionFactoryMap));
+        // only once the route is published, so a failed add leaves no limit or tier behind for its name
+        evictWhenMaterialized(factory);
+        bulkheads.setLimit(routeName, concurrencyLimit(route));
+        if (null != fairQueue && null != route.getTier()) {
+            fairQueue.setTier(routeName, route.getTier());
+        }
+        for (String alias : aliases(route)) {
+            addAlias(alias, route.getRouteName());
+        }
+        LOGGER.info("Added Route[{}]", route.getRouteName());
+    }
+
+    /**
+     * Adds an alias at runtime, a route key served by the connection pool and {@link SessionFactory} of an existing
+     * route.
+     * @param alias
+     *            the alias
+     * @param routeName
+     *            the name of the route serving the alias
+     * @throws IllegalArgumentException
+     *             if the alias is already in use, or if the route does not exist
+     */
+    public void addAlias(String alias, String routeName) {
+        checkState(null != routeRegistry, "Aliases can only be added once the bundle is running");
+        routeRegistry.addAlias(alias, routeName);
+        LOGGER.info("Added alias[{}] of Route[{}]", alias, routeName);
+    }
+
+    /**
+     * Removes an alias at runtime. The route it pointed to is not affected.
+     * @param alias
+     *            the alias
+     * @throws IllegalArgumentException
+     *             if there is no such alias
+     */
+    public void removeAlias(String alias) {
+        checkState(null != routeRegistry, "Aliases can only be removed once the bundle is running");
+        routeRegistry.removeAlias(alias);
+        LOGGER.info("Removed alias[{}]", alias);
+    }
+
+    /**
+     * Removes a route together with its aliases at runtime. The route stops accepting new units of work
+     * immediately; its {@link SessionFactory} and connection pool are closed once in-flight units of work finish, or
+     * after the drain timeout.
+     * @param routeName
+     *            the route name
+     * @throws IllegalArgumentException
+     *             if the route does not exist
+     * @throws Exception
+     *             if the {@link SessionFactory} can not be closed
+     */
+    public void removeRoute(String routeName) throws Exception {
+        checkState(null != routeRegistry, "Routes can only be removed once the bundle is running");
+
+        final SessionFactory factory = routeRegistry.removeRoute(routeName, routeDrainTimeout.getQuantity(),
+                routeDrainTimeout.getUnit());
+        try {
+            environment.healthChecks().unregister(routeName);
+            sessionFactoryFactory.close(factory);
+            removeReplicas(routeName);
+        } finally {
+            routeNames.remove(routeName);
+        }
+        LOGGER.info("Removed Route[{}]", routeName);
+    }
+
+    /**
+     * Runs the {@link IdleRouteEvictor} each time a lazy route is materialized, if the number of open routes is
+     * capped.
+     */
+    private void evictWhenMaterialized(SessionFactory factory) {
+        final LazySessionFactory lazy = LazySessionFactory.of(factory);
+        if (null != lazy && null != evictor && 0 < maxResidentRoutes) {
+            lazy.setOnMaterialized(new Runnable() {
+                @Override
+                public void run() {
+                    eviction.execute(evictor);
+                }
+            });
+        }
+    }
+
+    /**
+     * Builds the connection pools of the read replicas of a route.
+     */
+    private static ReplicaBalancer<ManagedDataSource> buildReplicas(DataSourceRoute route, Environment environment) {
+        final ImmutableList.Builder<Replica<ManagedDataSource>> bldr = ImmutableList.builder();
+        int index = 0;
+        for (DataSourceFactory dbConfig : route.getReplicas()) {
+            final String name = route.getRouteName() + "-replica-" + index++;
+            bldr.add(new Replica<ManagedDataSource>(name, dbConfig.build(environment.metrics(), name)));
+        }
+        final Duration writeWindow = route.getReplicaWriteWindow();
+        return new ReplicaBalancer<>(bldr.build(), writeWindow.getQuantity(), writeWindow.getUnit());
+    }
+
+    /**
+     * Schedules the sampling of the replication lag of a route's read replicas, if the route has a lag query. On a
+     * lazy route, the replicas are only sampled while the route is materialized, and their connection pools are
+     * stopped when it is evicted; they reconnect on the route's next read-only unit of work.
+     */
+    private synchronized void manageReplicas(DataSourceRoute route, final ReplicaBalancer<ManagedDataSource> balancer,
+            SessionFactory factory) {
+        final LazySessionFactory lazy = LazySessionFactory.of(factory);
+        final boolean sampled = null != route.getReplicaLagQuery();
+        if (null != lazy) {
+            lazy.setOnEvicted(new Runnable() {
+                @Override
+                public void run() {
+                    for (Replica<ManagedDataSource> replica : balancer.getReplicas()) {
+                        if (sampled) {
+                            // out of rotation until sampled again, its last lag is stale by then
+                            replica.setAvailable(false);
+                        }
+                        try {
+                            replica.get().stop();
+                        } catch (Exception e) {
+                            LOGGER.warn("Failed to stop {}", replica, e);
+                        }
+                    }
+                }
+            });
+        }
+        if (!sampled) {
+            return;
+        }
+        if (null == lagSampling) {
+            this.lagSampling = environment.lifecycle().scheduledExecutorService("replica-lag-%d").threads(1).build();
+        }
+
+        final Duration interval = route.getReplicaLagSampleInterval();
+        final ImmutableList.Builder<ScheduledFuture<?>> futures = ImmutableList.builder();
+        for (Replica<ManagedDataSource> replica : balancer.getReplicas()) {
+            final ReplicaLagSampler sampler = new ReplicaLagSampler(replica, route.getReplicaLagQuery(),
+                    route.getMaxReplicaLag().toMilliseconds(), TimeUnit.MILLISECONDS);
+            futures.add(lagSampling.scheduleWithFixedDelay(null == lazy ? sampler : lazy.whenMaterialized(sampler), 0,
+                    interval.toMilliseconds(), TimeUnit.MILLISECONDS));
+        }
+        lagSamplers.put(route.getRouteName(), futures.build());
+    }
+
+    /**
+     * Stops sampling the lag of a route's read replicas and stops their connection pools.
+     */
+    private void removeReplicas(String routeName) throws Exception {
+        final List<ScheduledFuture<?>> samplers = lagSamplers.remove(routeName);
+        if (null != samplers) {
+            for (ScheduledFuture<?> sampler : samplers) {
+                sampler.cancel(false);
+            }
+        }
+
+        final ReplicaBalancer<ManagedDataSource> balancer = replicas.remove(routeName);
+        if (null != balancer) {
+            for (Replica<ManagedDataSource> replica : balancer.getReplicas()) {
+                replica.get().stop();
+            }
+        }
+    }
+
+    /**
+     * @return the keys other than its name resolving to a route: its aliases, then its tenants
+     */
+    private static Set<String> aliases(DataSourceRoute route) {
+        final Set<String> aliases = Sets.newLinkedHashSet(route.getAliases());
+        aliases.addAll(route.getTenants().keySet());
+        aliases.remove(route.getRouteName());
+        return aliases;
+    }
+
+    /**
+     * @return the configured concurrency limit of a route, defaulting to its maximum pool size
+     */
+    private static int concurrencyLimit(DataSourceRoute route) {
+        final Integer limit = route.getMaxConcurrentRequests();
+        return null == limit ? route.getDatabase().getMaxSize() : limit;
+    }
+
+    /**
+     * Builds the {@link SessionFactory}s of the configured routes, up to {@link #setBootstrapParallelism(int)} at a
+     * time, logging how long each took. If any route fails, no further route is started and the routes already built
+     * are closed.
+     * @return the {@link SessionFactory}s keyed by route name, in configuration order
+     */
+    private ImmutableMap<String, SessionFactory> buildRoutes(List<DataSourceRoute> routes,
+            final Environment environment) throws Exception {
+        final long start = System.nanoTime();
+        final int threads = Math.min(bootstrapParallelism, routes.size());
+        final ExecutorService executor = 1 >= threads ? MoreExecutors.newDirectExecutorService() : Executors
+                .newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("route-bootstrap-%d")
+                        .setDaemon(true).build());
+
+        final AtomicBoolean failed = new AtomicBoolean();
+        final List<Future<SessionFactory>> futures = new ArrayList<>();
+        final Map<String, SessionFactory> sessionFactories = new LinkedHashMap<>();
+        try {
+            for (final DataSourceRoute route : routes) {
+                futures.add(executor.submit(new Callable<SessionFactory>() {
+                    @Override
+                    public SessionFactory call() throws Exception {
+                        if (failed.get()) {
+                            return null;
+                        }
+                        final long routeStart = System.nanoTime();
+                        try {
+                            final SessionFactory factory = buildSessionFactory(route, environment);
+                            LOGGER.info("Built Route[{}] in {}ms", route.getRouteName(), TimeUnit.NANOSECONDS
+                                    .toMillis(System.nanoTime() - routeStart));
+                            return factory;
+                        } catch (Exception | Error e) {
+                            failed.set(true);
+                            LOGGER.error("Failed to build Route[{}] after {}ms", route.getRouteName(),
+                                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - routeStart));
+                            throw e;
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                sessionFactories.put(routes.get(i).getRouteName(), futures.get(i).get());
+            }
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            closeBuiltRoutes(futures, executor);
+            if (e instanceof ExecutionException && e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+
+        LOGGER.info("Built {} routes on {} threads in {}ms", routes.size(), Math.max(1, threads),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return ImmutableMap.copyOf(sessionFactories);
+    }
+
+    /**
+     * Cancels the routes not yet built, waits for those being built and closes every route that was built.
+     */
+    private void closeBuiltRoutes(List<Future<SessionFactory>> futures, ExecutorService executor) {
+        for (Future<SessionFactory> future : futures) {
+            future.cancel(false);
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.warn("Still waiting for routes being built to finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Future<SessionFactory> future : futures) {
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    final SessionFactory factory = future.get();
+                    if (null != factory) {
+                        sessionFactoryFactory.close(factory);
+                    }
+                } catch (ExecutionException e) {
+                    // the route that failed to build, nothing to close
+                } catch (Exception e) {
+                    LOGGER.warn("Failed to close a route built before the failure", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the {@link SessionFactory} of a route and registers its health check.
+     */
+    private SessionFactory buildRoute(DataSourceRoute route, Environment environment) throws Exception {
+        final SessionFactory sessionFactory = buildSessionFactory(route, environment);
+        registerHealthCheck(route, sessionFactory, environment);
+        return sessionFactory;
+    }
+
+    /**
+     * Builds the {@link SessionFactory} of a route, or only checks the route's configuration if routes are built
+     * lazily.
+     */
+    private SessionFactory buildSessionFactory(DataSourceRoute route, Environment environment) throws Exception {
+        if (!route.getTenants().isEmpty()) {
+            checkArgument(route.isDefaultTenantMapped(), "Route[%s] must map its name to its default schema",
+                    route.getRouteName());
+            return lazyRoutes ? sessionFactoryFactory.buildLazy(this, environment, route, entities)
+                    : sessionFactoryFactory.build(this, environment, route, entities);
+        }
+        if (lazyRoutes) {
+            return sessionFactoryFactory.buildLazy(this, environment, route.getDatabase(), entities,
+                    route.getRouteName());
+        }
+        return sessionFactoryFactory.build(this, environment, route.getDatabase(), entities, route.getRouteName());
+    }
+
+    private static void registerHealthCheck(DataSourceRoute route, SessionFactory sessionFactory,
+            Environment environment) {
+        final String routeKey = route.getRouteName();
+        final DataSourceFactory dbConfig = route.getDatabase();
+        final HealthCheck healthCheck = new SessionFactoryHealthCheck(environment.getHealthCheckExecutorService(),
+                dbConfig.getValidationQueryTimeout().or(Duration.seconds(5)), sessionFactory,
+                dbConfig.getValidationQuery());
+        final LazySessionFactory lazy = LazySessionFactory.of(sessionFactory);
+        environment.healthChecks().register(routeKey, null == lazy ? healthCheck : lazy.whenMaterialized(healthCheck));
     }
 }
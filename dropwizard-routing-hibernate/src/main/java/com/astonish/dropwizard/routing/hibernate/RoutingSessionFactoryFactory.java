@@ -22,32 +22,50 @@ import io.dropwizard.db.ManagedDataSource;
 import io.dropwizard.hibernate.SessionFactoryManager;
 import io.dropwizard.setup.Environment;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 
 import javax.sql.DataSource;
 
+import org.hibernate.MultiTenancyStrategy;
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
 import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
 import org.hibernate.engine.jdbc.connections.internal.DatasourceConnectionProviderImpl;
 import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.service.Service;
 import org.hibernate.service.ServiceRegistry;
+import org.hibernate.service.spi.Wrapped;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.astonish.dropwizard.routing.db.DataSourceRoute;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 
 /**
  * Provides nameable {@link SessionFactory}.
+ * <p/>
+ * Every route binds its entity mappings on a {@link Configuration} of its own. Hibernate 4.3 has no immutable
+ * metamodel to share between {@link SessionFactory}s: building one writes to its {@link Configuration}, and the
+ * persisters are built per {@link SessionFactory} anyway. Keeping them apart lets routes be built concurrently, and
+ * keeps the properties and tenant resolver of one route out of the others.
  */
 public class RoutingSessionFactoryFactory {
     private static final Logger LOGGER = LoggerFactory.getLogger(RoutingSessionFactoryFactory.class);
 
     /**
-     * Builds a {@link SessionFactory}
+     * Builds a {@link SessionFactory}. The {@link SessionFactory} is not managed by the environment's lifecycle and
+     * must be closed with {@link #close(SessionFactory)}, so that routes removed at runtime are not kept open by it.
      * @param bundle
      *            the bundle
      * @param environment
@@ -68,7 +86,7 @@ public class RoutingSessionFactoryFactory {
     }
 
     /**
-     * Builds a {@link SessionFactory}
+     * Builds a {@link SessionFactory}, to be closed with {@link #close(SessionFactory)}.
      * @param bundle
      *            the bundle
      * @param environment
@@ -84,12 +102,141 @@ public class RoutingSessionFactoryFactory {
      */
     public SessionFactory build(RoutingHibernateBundle<?> bundle, Environment environment, DataSourceFactory dbConfig,
             ManagedDataSource dataSource, List<Class<?>> entities) throws ClassNotFoundException {
-        final ConnectionProvider provider = buildConnectionProvider(dataSource, dbConfig.getProperties());
-        final SessionFactory factory = buildSessionFactory(bundle, dbConfig, provider, dbConfig.getProperties(),
-                entities);
-        final SessionFactoryManager managedFactory = new SessionFactoryManager(factory, dataSource);
-        environment.lifecycle().manage(managedFactory);
-        return factory;
+        return buildSessionFactory(bundle, dbConfig, dataSource, entities, null);
+    }
+
+    /**
+     * Builds the {@link SessionFactory} of a route. If the route has tenants, the {@link SessionFactory} uses
+     * Hibernate's schema multi-tenancy: the tenants share its connection pool, and each connection is switched to the
+     * schema of the tenant whose route key is in the current {@link com.astonish.dropwizard.routing.db.RouteContext},
+     * see {@link RouteTenantConnectionProvider} and {@link RouteTenantResolver}. It must be closed with
+     * {@link #close(SessionFactory)}.
+     * @param bundle
+     *            the bundle
+     * @param environment
+     *            the environment
+     * @param route
+     *            the route
+     * @param entities
+     *            the persistent entities
+     * @return {@link SessionFactory}
+     * @throws ClassNotFoundException
+     */
+    public SessionFactory build(RoutingHibernateBundle<?> bundle, Environment environment, DataSourceRoute route,
+            List<Class<?>> entities) throws ClassNotFoundException {
+        final ManagedDataSource dataSource = route.getDatabase().build(environment.metrics(), route.getRouteName());
+        return buildSessionFactory(bundle, route.getDatabase(), dataSource, entities, route);
+    }
+
+    /**
+     * Builds a {@link SessionFactory} that only builds its connection pool and the actual {@link SessionFactory} when
+     * first used, see {@link LazySessionFactory}. The {@link SessionFactory} is not managed by the environment's
+     * lifecycle and must be closed with {@link #close(SessionFactory)}.
+     * @param bundle
+     *            the bundle
+     * @param environment
+     *            the environment
+     * @param dbConfig
+     *            the dbConfig
+     * @param entities
+     *            the persistent entities
+     * @param name
+     *            the key, will be the key for the health check
+     * @return {@link SessionFactory}
+     * @throws ClassNotFoundException
+     *             if the driver class of dbConfig can not be found
+     */
+    public SessionFactory buildLazy(RoutingHibernateBundle<?> bundle, Environment environment,
+            DataSourceFactory dbConfig, List<Class<?>> entities, String name) throws ClassNotFoundException {
+        return buildLazy(bundle, environment, dbConfig, entities, name, null);
+    }
+
+    /**
+     * Builds the {@link SessionFactory} of a route, with its tenants if it has any, only when first used. See
+     * {@link #build(RoutingHibernateBundle, Environment, DataSourceRoute, List)} and
+     * {@link #buildLazy(RoutingHibernateBundle, Environment, DataSourceFactory, List, String)}.
+     * @param bundle
+     *            the bundle
+     * @param environment
+     *            the environment
+     * @param route
+     *            the route
+     * @param entities
+     *            the persistent entities
+     * @return {@link SessionFactory}
+     * @throws ClassNotFoundException
+     *             if the driver class of the route's database can not be found
+     */
+    public SessionFactory buildLazy(RoutingHibernateBundle<?> bundle, Environment environment, DataSourceRoute route,
+            List<Class<?>> entities) throws ClassNotFoundException {
+        return buildLazy(bundle, environment, route.getDatabase(), entities, route.getRouteName(), route);
+    }
+
+    private SessionFactory buildLazy(final RoutingHibernateBundle<?> bundle, final Environment environment,
+            final DataSourceFactory dbConfig, final List<Class<?>> entities, final String name,
+            final DataSourceRoute route) throws ClassNotFoundException {
+        Class.forName(dbConfig.getDriverClass());
+
+        return new LazySessionFactory(name) {
+            private SessionFactoryManager manager;
+            private String poolMetrics;
+
+            @Override
+            protected SessionFactory materialize() throws Exception {
+                final ManagedDataSource dataSource = dbConfig.build(environment.metrics(), name);
+                final SessionFactory factory;
+                try {
+                    factory = buildSessionFactory(bundle, dbConfig, dataSource, entities, route);
+                } catch (RuntimeException e) {
+                    dataSource.stop();
+                    throw e;
+                }
+                this.manager = new SessionFactoryManager(factory, dataSource);
+                this.poolMetrics = MetricRegistry.name(dataSource.getClass(), name) + ".";
+                manager.start();
+                return factory;
+            }
+
+            @Override
+            protected void dematerialize(SessionFactory factory) throws Exception {
+                try {
+                    manager.stop();
+                } finally {
+                    this.manager = null;
+                    // the pool registers its gauges again when the route is materialized again
+                    environment.metrics().removeMatching(new MetricFilter() {
+                        @Override
+                        public boolean matches(String metricName, Metric metric) {
+                            return metricName.startsWith(poolMetrics);
+                        }
+                    });
+                }
+            }
+        }.getSessionFactory();
+    }
+
+    /**
+     * Closes a {@link SessionFactory} built by this factory together with its {@link ManagedDataSource}, when its
+     * route is removed at runtime or on shutdown.
+     * @param factory
+     *            the {@link SessionFactory}
+     * @throws Exception
+     *             if the data source can not be stopped
+     */
+    public void close(SessionFactory factory) throws Exception {
+        final LazySessionFactory lazy = LazySessionFactory.of(factory);
+        if (null != lazy) {
+            lazy.close();
+            return;
+        }
+
+        final ServiceRegistry registry = ((SessionFactoryImplementor) factory).getServiceRegistry();
+        final Wrapped provider = null != registry.getService(ConnectionProvider.class) ? registry
+                .getService(ConnectionProvider.class) : registry.getService(MultiTenantConnectionProvider.class);
+        factory.close();
+        if (null != provider && provider.isUnwrappableAs(ManagedDataSource.class)) {
+            provider.unwrap(ManagedDataSource.class).stop();
+        }
     }
 
     /**
@@ -108,21 +255,71 @@ public class RoutingSessionFactoryFactory {
     }
 
     /**
-     * Builds a {@link SessionFactory}
+     * Builds a {@link SessionFactory} over a data source, shared by the tenants of the route if it has any.
+     */
+    private SessionFactory buildSessionFactory(RoutingHibernateBundle<?> bundle, DataSourceFactory dbConfig,
+            ManagedDataSource dataSource, List<Class<?>> entities, DataSourceRoute route) {
+        if (null == route || route.getTenants().isEmpty()) {
+            final ConnectionProvider provider = buildConnectionProvider(dataSource, dbConfig.getProperties());
+            return buildSessionFactory(bundle, dbConfig, ConnectionProvider.class, provider, dbConfig.getProperties(),
+                    entities, null);
+        }
+
+        final MultiTenantConnectionProvider provider = new RouteTenantConnectionProvider(dataSource,
+                route.getTenantSwitch(), ImmutableMap.copyOf(route.getTenants()));
+        final Map<String, String> properties = new HashMap<>(dbConfig.getProperties());
+        properties.put(AvailableSettings.MULTI_TENANT, MultiTenancyStrategy.SCHEMA.name());
+        LOGGER.info("Route[{}] serves tenants {}", route.getRouteName(), route.getTenants().keySet());
+        return buildSessionFactory(bundle, dbConfig, MultiTenantConnectionProvider.class, provider, properties,
+                entities, new RouteTenantResolver(route.getRouteName(), route.getTenants().keySet()));
+    }
+
+    /**
+     * Builds a {@link SessionFactory} on its own {@link Configuration}.
      * @param bundle
      *            the bundle
      * @param dbConfig
      *            the dbconfig
+     * @param providerRole
+     *            the service role of the connection provider
      * @param connectionProvider
      *            the connection provider
      * @param properties
      *            the hibernate properties
      * @param entities
      *            the persistent entities
+     * @param tenantResolver
+     *            the tenant resolver of a multi-tenant {@link SessionFactory}, or null
      * @return {@link SessionFactory}
      */
-    private SessionFactory buildSessionFactory(RoutingHibernateBundle<?> bundle, DataSourceFactory dbConfig,
-            ConnectionProvider connectionProvider, Map<String, String> properties, List<Class<?>> entities) {
+    private <P extends Service> SessionFactory buildSessionFactory(RoutingHibernateBundle<?> bundle,
+            DataSourceFactory dbConfig, Class<P> providerRole, P connectionProvider, Map<String, String> properties,
+            List<Class<?>> entities, CurrentTenantIdentifierResolver tenantResolver) {
+        final Configuration configuration = configuration(bundle, dbConfig, properties, entities, tenantResolver);
+        final ServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .addService(providerRole, connectionProvider).applySettings(properties).build();
+
+        return configuration.buildSessionFactory(registry);
+    }
+
+    /**
+     * Builds the {@link Configuration} of one {@link SessionFactory}. Hibernate 4.3 writes to a {@link Configuration}
+     * while building a {@link SessionFactory} from it, so every route gets its own and routes are built in parallel
+     * without sharing any mutable state.
+     * @param bundle
+     *            the bundle
+     * @param dbConfig
+     *            the dbconfig
+     * @param properties
+     *            the hibernate properties
+     * @param entities
+     *            the persistent entities
+     * @param tenantResolver
+     *            the tenant resolver of a multi-tenant {@link SessionFactory}, or null
+     * @return {@link Configuration}
+     */
+    Configuration configuration(RoutingHibernateBundle<?> bundle, DataSourceFactory dbConfig,
+            Map<String, String> properties, List<Class<?>> entities, CurrentTenantIdentifierResolver tenantResolver) {
         final Configuration configuration = new Configuration();
         configuration.setProperty(AvailableSettings.CURRENT_SESSION_CONTEXT_CLASS, "managed");
         configuration.setProperty(AvailableSettings.USE_SQL_COMMENTS,
@@ -137,14 +334,11 @@ public class RoutingSessionFactoryFactory {
         for (Map.Entry<String, String> property : properties.entrySet()) {
             configuration.setProperty(property.getKey(), property.getValue());
         }
+        configuration.setCurrentTenantIdentifierResolver(tenantResolver);
 
         addAnnotatedClasses(configuration, entities);
         bundle.configure(configuration);
-
-        final ServiceRegistry registry = new StandardServiceRegistryBuilder()
-                .addService(ConnectionProvider.class, connectionProvider).applySettings(properties).build();
-
-        return configuration.buildSessionFactory(registry);
+        return configuration;
     }
 
     /**
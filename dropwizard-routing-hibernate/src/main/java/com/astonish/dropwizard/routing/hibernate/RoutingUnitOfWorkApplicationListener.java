@@ -20,12 +20,18 @@ package com.astonish.dropwizard.routing.hibernate;
 import io.dropwizard.hibernate.UnitOfWork;
 
 import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import javax.sql.DataSource;
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.ext.Provider;
 
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
 import org.glassfish.jersey.server.internal.process.MappableException;
 import org.glassfish.jersey.server.model.Resource;
 import org.glassfish.jersey.server.model.ResourceMethod;
@@ -35,10 +41,24 @@ import org.glassfish.jersey.server.monitoring.RequestEvent;
 import org.glassfish.jersey.server.monitoring.RequestEventListener;
 import org.hibernate.SessionFactory;
 import org.hibernate.Session;
+import org.hibernate.SessionBuilder;
 import org.hibernate.Transaction;
 import org.hibernate.context.internal.ManagedSessionContext;
+import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
+import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.astonish.dropwizard.routing.db.AdaptiveRouteLimiter;
+import com.astonish.dropwizard.routing.db.Replica;
+import com.astonish.dropwizard.routing.db.ReplicaBalancer;
+import com.astonish.dropwizard.routing.db.Route;
+import com.astonish.dropwizard.routing.db.RouteContext;
+import com.astonish.dropwizard.routing.db.RouteRegistry;
+import com.astonish.dropwizard.routing.db.RouteReplicas;
 import com.astonish.dropwizard.routing.db.RouteStore;
+import com.astonish.dropwizard.routing.db.WriteTokens;
 import com.google.common.collect.ImmutableMap;
 
 /**
@@ -51,11 +71,14 @@ import com.google.common.collect.ImmutableMap;
  */
 @Provider
 public class RoutingUnitOfWorkApplicationListener implements ApplicationEventListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RoutingUnitOfWorkApplicationListener.class);
 
-    private final ImmutableMap<String, SessionFactory> sessionFactoryMap;
+    private final RouteRegistry<SessionFactory> registry;
+    private final AdaptiveRouteLimiter limiter;
+    private final RouteReplicas<? extends DataSource> replicas;
 
     ImmutableMap<String, SessionFactory> getSessionFactoryMap() {
-        return sessionFactoryMap;
+        return registry.asMap();
     }
 
     /**
@@ -69,19 +92,76 @@ public class RoutingUnitOfWorkApplicationListener implements ApplicationEventLis
      *            a {@link SessionFactory}
      */
     public RoutingUnitOfWorkApplicationListener(ImmutableMap<String, SessionFactory> sessionFactoryMap) {
-        this.sessionFactoryMap = sessionFactoryMap;
+        this(new RouteRegistry<>(sessionFactoryMap));
+    }
+
+    /**
+     * Construct an application event listener that follows the routes of a {@link RouteRegistry}.
+     *
+     * @param registry
+     *            the {@link RouteRegistry} of {@link SessionFactory}
+     */
+    public RoutingUnitOfWorkApplicationListener(RouteRegistry<SessionFactory> registry) {
+        this(registry, null);
+    }
+
+    /**
+     * Construct an application event listener that follows the routes of a {@link RouteRegistry} and reports the
+     * latency of each unit of work to an {@link AdaptiveRouteLimiter}.
+     *
+     * @param registry
+     *            the {@link RouteRegistry} of {@link SessionFactory}
+     * @param limiter
+     *            the {@link AdaptiveRouteLimiter}, or null
+     */
+    public RoutingUnitOfWorkApplicationListener(RouteRegistry<SessionFactory> registry, AdaptiveRouteLimiter limiter) {
+        this(registry, limiter, null);
+    }
+
+    /**
+     * Construct an application event listener that also sends read-only units of work to the read replicas of their
+     * route. A read-only session is opened on the route's {@link SessionFactory} over a connection of the chosen
+     * replica, so that DAOs built on the route's {@link SessionFactory} find it as the current session. Units of
+     * work fall back to the primary if the route has no available replica or the replica refuses a connection.
+     * <p/>
+     * A committed unit of work that is not read-only records a write on the route's replicas and returns a
+     * {@link WriteTokens} header; read-only units of work sending the token back only go to replicas that have
+     * replayed the write.
+     *
+     * @param registry
+     *            the {@link RouteRegistry} of {@link SessionFactory}
+     * @param limiter
+     *            the {@link AdaptiveRouteLimiter}, or null
+     * @param replicas
+     *            the {@link RouteReplicas} of the routes' replica data sources, or null
+     */
+    public RoutingUnitOfWorkApplicationListener(RouteRegistry<SessionFactory> registry, AdaptiveRouteLimiter limiter,
+            RouteReplicas<? extends DataSource> replicas) {
+        this.registry = registry;
+        this.limiter = limiter;
+        this.replicas = replicas;
     }
 
     private static class UnitOfWorkEventListener implements RequestEventListener {
         private final Map<Method, UnitOfWork> methodMap;
-        private final ImmutableMap<String, SessionFactory> sessionFactoryMap;
+        private final RouteRegistry<SessionFactory> registry;
+        private final AdaptiveRouteLimiter limiter;
+        private final RouteReplicas<? extends DataSource> replicas;
         private UnitOfWork unitOfWork;
+        private Route route;
+        private LazySessionFactory lazyRoute;
+        private long startNanos;
+        private SessionFactory sessionFactory;
         private Session session;
+        private Replica<? extends DataSource> replica;
+        private Connection replicaConnection;
 
-        public UnitOfWorkEventListener(Map<Method, UnitOfWork> methodMap,
-                ImmutableMap<String, SessionFactory> sessionFactoryMap) {
+        public UnitOfWorkEventListener(Map<Method, UnitOfWork> methodMap, RouteRegistry<SessionFactory> registry,
+                AdaptiveRouteLimiter limiter, RouteReplicas<? extends DataSource> replicas) {
             this.methodMap = methodMap;
-            this.sessionFactoryMap = sessionFactoryMap;
+            this.registry = registry;
+            this.limiter = limiter;
+            this.replicas = replicas;
         }
 
         @Override
@@ -90,15 +170,14 @@ public class RoutingUnitOfWorkApplicationListener implements ApplicationEventLis
                 this.unitOfWork = this.methodMap.get(event.getUriInfo().getMatchedResourceMethod().getInvocable()
                         .getDefinitionMethod());
                 if (unitOfWork != null) {
-                    this.session = route().openSession();
                     try {
+                        this.sessionFactory = route();
+                        this.session = openSession(event.getContainerRequest());
                         configureSession();
                         ManagedSessionContext.bind(this.session);
                         beginTransaction();
                     } catch (Throwable th) {
-                        this.session.close();
-                        this.session = null;
-                        ManagedSessionContext.unbind(route());
+                        closeSession();
                         throw th;
                     }
                 }
@@ -106,13 +185,12 @@ public class RoutingUnitOfWorkApplicationListener implements ApplicationEventLis
                 if (this.session != null) {
                     try {
                         commitTransaction();
+                        recordWrite(event.getContainerResponse());
                     } catch (Exception e) {
                         rollbackTransaction();
                         throw new MappableException(e);
                     } finally {
-                        this.session.close();
-                        this.session = null;
-                        ManagedSessionContext.unbind(route());
+                        closeSession();
                     }
                 }
             } else if (event.getType() == RequestEvent.Type.ON_EXCEPTION) {
@@ -120,12 +198,128 @@ public class RoutingUnitOfWorkApplicationListener implements ApplicationEventLis
                     try {
                         rollbackTransaction();
                     } finally {
-                        this.session.close();
-                        this.session = null;
-                        ManagedSessionContext.unbind(route());
+                        closeSession();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Closes and unbinds the session, if one was opened, and releases the route, reporting the latency of the unit
+         * of work to the limiter.
+         */
+        private void closeSession() {
+            try {
+                if (this.session != null) {
+                    this.session.close();
+                }
+            } finally {
+                this.session = null;
+                ManagedSessionContext.unbind(this.sessionFactory);
+                releaseReplica();
+                if (this.route != null) {
+                    if (limiter != null) {
+                        limiter.record(this.route, System.nanoTime() - this.startNanos, TimeUnit.NANOSECONDS);
+                    }
+                    if (this.lazyRoute != null) {
+                        this.lazyRoute.release();
+                        this.lazyRoute = null;
+                    }
+                    registry.release(this.route);
+                    this.route = null;
+                }
+            }
+        }
+
+        /**
+         * Opens the session of the unit of work, on a replica connection if the unit of work is read-only and the
+         * route has an available replica that has replayed the write of the request's {@link WriteTokens} token. On a
+         * route with tenants, the replica connection is switched to the tenant's schema like connections of the
+         * primary are.
+         */
+        private Session openSession(ContainerRequest request) {
+            if (this.unitOfWork.readOnly() && this.replicas != null) {
+                final ReplicaBalancer<? extends DataSource> balancer = this.replicas.get(this.route);
+                final long writeMillis = null == request ? 0 : WriteTokens.parse(request
+                        .getHeaderString(WriteTokens.HEADER_NAME));
+                final Replica<? extends DataSource> chosen = null == balancer ? null : balancer.choose(writeMillis);
+                if (chosen != null) {
+                    try {
+                        this.replicaConnection = chosen.get().getConnection();
+                        this.replica = chosen;
+                        chosen.acquire();
+                        final String tenant = switchTenant(this.replicaConnection);
+                        final SessionBuilder builder = this.sessionFactory.withOptions().connection(
+                                this.replicaConnection);
+                        return (null == tenant ? builder : builder.tenantIdentifier(tenant)).openSession();
+                    } catch (SQLException e) {
+                        releaseReplica();
+                        LOGGER.warn("{} refused a connection, using the primary of {}", chosen, this.route, e);
                     }
                 }
             }
+            return this.sessionFactory.openSession();
+        }
+
+        /**
+         * Switches a replica connection to the schema of the current tenant if the route's {@link SessionFactory} is
+         * shared by tenants, see {@link RouteTenantConnectionProvider}.
+         * @return the tenant, or null if the route has no tenants
+         */
+        private String switchTenant(Connection connection) throws SQLException {
+            if (!(this.sessionFactory instanceof SessionFactoryImplementor)) {
+                return null;
+            }
+            final SessionFactoryImplementor factory = (SessionFactoryImplementor) this.sessionFactory;
+            final MultiTenantConnectionProvider provider = factory.getServiceRegistry().getService(
+                    MultiTenantConnectionProvider.class);
+            if (null == provider) {
+                return null;
+            }
+
+            final CurrentTenantIdentifierResolver resolver = factory.getCurrentTenantIdentifierResolver();
+            if (null == resolver || !provider.isUnwrappableAs(RouteTenantConnectionProvider.class)) {
+                // never hand a tenant a connection left on whatever schema it was last used with
+                throw new SQLException("Can not switch replica connections of " + this.route + " to a tenant");
+            }
+            final String tenant = resolver.resolveCurrentTenantIdentifier();
+            provider.unwrap(RouteTenantConnectionProvider.class).switchTenant(connection, tenant);
+            return tenant;
+        }
+
+        /**
+         * Hands the replica connection, which the session does not own, back to the replica's pool.
+         */
+        private void releaseReplica() {
+            if (this.replica != null) {
+                try {
+                    this.replicaConnection.close();
+                } catch (SQLException e) {
+                    LOGGER.warn("Failed to close the connection of {}", this.replica, e);
+                } finally {
+                    this.replica.release(System.nanoTime() - this.startNanos);
+                    this.replica = null;
+                    this.replicaConnection = null;
+                }
+            }
+        }
+
+        /**
+         * Records the committed write of a unit of work that is not read-only on the route's replicas, and hands the
+         * client a token to read its own write with.
+         */
+        private void recordWrite(ContainerResponse response) {
+            if (this.unitOfWork.readOnly() || this.replicas == null) {
+                return;
+            }
+            final ReplicaBalancer<? extends DataSource> balancer = this.replicas.get(this.route);
+            if (balancer != null) {
+                final long writeMillis = System.currentTimeMillis();
+                balancer.recordWrite(writeMillis);
+                if (response != null) {
+                    response.getHeaders().putSingle(WriteTokens.HEADER_NAME, WriteTokens.format(writeMillis));
+                }
+            }
         }
 
         private void beginTransaction() {
@@ -159,19 +353,33 @@ public class RoutingUnitOfWorkApplicationListener implements ApplicationEventLis
         }
 
         /**
-         * Retrieves the current {@link SessionFactory} based on the current route.
+         * Retrieves the current {@link SessionFactory} based on the current route, counting a unit of work against the
+         * route until the session is closed. A lazy route is held until then as well, and built if it is not
+         * materialized, see {@link LazySessionFactory}.
          * @return the current {@link SessionFactory}
          * @throws NotFoundException
          *             if a {@link SessionFactory} can not be found for the given route key
          */
         private SessionFactory route() {
-            final SessionFactory factory = sessionFactoryMap.get(RouteStore.getInstance().getRoute());
-            if (null == factory) {
-                throw new NotFoundException("No SessionFactory found for RouteKey["
-                        + RouteStore.getInstance().getRoute() + "]");
+            final RouteContext context = RouteStore.getInstance().peek();
+            final Route route = null == context ? null : registry.acquire(context);
+            if (null == route) {
+                final String routeKey = null == context ? null : context.getRoute();
+                throw new NotFoundException("No SessionFactory found for RouteKey[" + routeKey + "]");
             }
 
-            return factory;
+            this.route = route;
+            final SessionFactory factory = registry.get(route);
+            final LazySessionFactory lazy = LazySessionFactory.of(factory);
+            if (null == lazy) {
+                this.startNanos = System.nanoTime();
+                return factory;
+            }
+            final SessionFactory materialized = lazy.acquire();
+            this.lazyRoute = lazy;
+            // building a lazy route is not latency of the route's database, it must not shrink the route's limit
+            this.startNanos = System.nanoTime();
+            return materialized;
         }
     }
 
@@ -196,7 +404,7 @@ public class RoutingUnitOfWorkApplicationListener implements ApplicationEventLis
 
     @Override
     public RequestEventListener onRequest(RequestEvent event) {
-        RequestEventListener listener = new UnitOfWorkEventListener(methodMap, sessionFactoryMap);
+        RequestEventListener listener = new UnitOfWorkEventListener(methodMap, registry, limiter, replicas);
 
         return listener;
     }
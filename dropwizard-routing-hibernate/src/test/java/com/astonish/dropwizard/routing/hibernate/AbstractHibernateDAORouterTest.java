@@ -19,16 +19,29 @@ package com.astonish.dropwizard.routing.hibernate;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.context.internal.ManagedSessionContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import com.astonish.dropwizard.routing.db.RoutePropagation;
 import com.astonish.dropwizard.routing.db.RouteStore;
 import com.astonish.dropwizard.routing.hibernate.AbstractHibernateDAORouter;
 import com.google.common.collect.ImmutableMap;
@@ -108,9 +121,67 @@ public class AbstractHibernateDAORouterTest {
         assertNotNull(addressDAO2);
         assertNotEquals(addressDAO1, addressDAO2);
     }
+
+    /**
+     * Verify that a lazy daoRouter only constructs the DAOs of the default route up front and constructs the others
+     * once, on first access.
+     */
+    @Test
+    public void lazyRoute() {
+        final Map<String, SessionFactory> sessionFactoryMap = new LinkedHashMap<>();
+        sessionFactoryMap.put(FACTORY1_ROUTE_KEY, factory1);
+        sessionFactoryMap.put(FACTORY2_ROUTE_KEY, factory2);
+
+        final DAORouter lazyRouter = new DAORouter(ImmutableMap.copyOf(sessionFactoryMap), true);
+        assertEquals(1, lazyRouter.constructed);
+
+        RouteStore.getInstance().setRoute(FACTORY2_ROUTE_KEY);
+        final TestDAO addressDAO2 = lazyRouter.getDAO(TestDAO.class);
+        assertSame(addressDAO2, lazyRouter.getDAO(TestDAO.class));
+        assertEquals(2, lazyRouter.constructed);
+
+        RouteStore.getInstance().setRoute(FACTORY1_ROUTE_KEY);
+        assertNotEquals(addressDAO2, lazyRouter.getDAO(TestDAO.class));
+        assertEquals(2, lazyRouter.constructed);
+    }
+
+    /**
+     * Verify that a task propagated with {@link RoutePropagation} reaches the DAO of the request's route, but not the
+     * request's session: it must open a session of its own.
+     */
+    @Test
+    public void propagatedTasksGetTheRouteButNotTheSession() throws Exception {
+        RouteStore.getInstance().setRoute(FACTORY1_ROUTE_KEY);
+        final TestDAO requestDAO = daoRouter.getDAO(TestDAO.class);
+        final Session session = mock(Session.class);
+        when(session.getSessionFactory()).thenReturn(factory1);
+        ManagedSessionContext.bind(session);
+
+        final AtomicBoolean taskHasSession = new AtomicBoolean(true);
+        final ExecutorService executor = RoutePropagation.wrap(Executors.newSingleThreadExecutor());
+        try {
+            final TestDAO taskDAO = executor.submit(new Callable<TestDAO>() {
+                @Override
+                public TestDAO call() {
+                    final TestDAO dao = daoRouter.getDAO(TestDAO.class);
+                    taskHasSession.set(dao.hasCurrentSession());
+                    return dao;
+                }
+            }).get();
+
+            assertSame(requestDAO, taskDAO);
+            assertTrue(requestDAO.hasCurrentSession());
+            assertFalse(taskHasSession.get());
+        } finally {
+            ManagedSessionContext.unbind(factory1);
+            executor.shutdownNow();
+        }
+    }
 }
 
 class DAORouter extends AbstractHibernateDAORouter {
+    int constructed;
+
     /**
      * @param sessionFactoryMap
      */
@@ -118,6 +189,14 @@ class DAORouter extends AbstractHibernateDAORouter {
         super(sessionFactoryMap);
     }
 
+    /**
+     * @param sessionFactoryMap
+     * @param lazy
+     */
+    public DAORouter(ImmutableMap<String, SessionFactory> sessionFactoryMap, boolean lazy) {
+        super(sessionFactoryMap, lazy);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -125,12 +204,24 @@ class DAORouter extends AbstractHibernateDAORouter {
      */
     @Override
     protected ImmutableMap<Class<?>, Object> constructDAOs(final SessionFactory factory) {
+        constructed++;
         final ImmutableMap.Builder<Class<?>, Object> bldr = new ImmutableMap.Builder<>();
-        bldr.put(TestDAO.class, new TestDAO());
+        bldr.put(TestDAO.class, new TestDAO(factory));
         return bldr.build();
     }
 }
 
 class TestDAO {
+    private final SessionFactory factory;
+
+    TestDAO(SessionFactory factory) {
+        this.factory = factory;
+    }
 
+    /**
+     * @return true if a session of the DAO's factory is bound to the calling thread, as within a unit of work
+     */
+    boolean hasCurrentSession() {
+        return ManagedSessionContext.hasBind(factory);
+    }
 }
@@ -0,0 +1,110 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.hibernate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.SessionFactory;
+import org.junit.Test;
+
+import com.astonish.dropwizard.routing.db.RouteRegistry;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link IdleRouteEvictor}.
+ */
+public class IdleRouteEvictorTest {
+    private final StubSessionFactory routeOne = new StubSessionFactory("RouteOne");
+    private final StubSessionFactory routeTwo = new StubSessionFactory("RouteTwo");
+    private final StubSessionFactory routeThree = new StubSessionFactory("RouteThree");
+    private final SessionFactory eager = mock(SessionFactory.class);
+    private final RouteRegistry<SessionFactory> registry = new RouteRegistry<>(ImmutableMap.of("RouteOne",
+            routeOne.getSessionFactory(), "RouteTwo", routeTwo.getSessionFactory(), "RouteThree",
+            routeThree.getSessionFactory(), "Eager", eager));
+
+    @Test
+    public void evictsIdleRoutes() throws Exception {
+        final IdleRouteEvictor evictor = new IdleRouteEvictor(registry, 50, TimeUnit.MILLISECONDS, 0);
+        routeOne.get();
+        routeTwo.get();
+        assertThat(evictor.getResident()).isEqualTo(2);
+        assertThat(evictor.evict()).isZero();
+
+        Thread.sleep(60);
+        routeTwo.get();
+        assertThat(evictor.evict()).isEqualTo(1);
+        assertThat(routeOne.isMaterialized()).isFalse();
+        assertThat(routeTwo.isMaterialized()).isTrue();
+        assertThat(evictor.getResident()).isEqualTo(1);
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedRoutesOverTheMaximum() throws Exception {
+        final IdleRouteEvictor evictor = new IdleRouteEvictor(registry, 1, TimeUnit.HOURS, 1);
+        routeTwo.get();
+        Thread.sleep(2);
+        routeOne.get();
+        Thread.sleep(2);
+        routeThree.get();
+
+        assertThat(evictor.evict()).isEqualTo(2);
+        assertThat(routeTwo.isMaterialized()).isFalse();
+        assertThat(routeOne.isMaterialized()).isFalse();
+        assertThat(routeThree.isMaterialized()).isTrue();
+    }
+
+    @Test
+    public void keepsRoutesHeldByAUnitOfWork() throws Exception {
+        final IdleRouteEvictor evictor = new IdleRouteEvictor(registry, 1, TimeUnit.HOURS, 1);
+        routeOne.acquire();
+        Thread.sleep(2);
+        routeTwo.get();
+
+        // the least recently used route is held, so the next one goes
+        assertThat(evictor.evict()).isEqualTo(1);
+        assertThat(routeOne.isMaterialized()).isTrue();
+        assertThat(routeTwo.isMaterialized()).isFalse();
+
+        routeTwo.get();
+        assertThat(evictor.evict()).isEqualTo(1);
+        assertThat(routeOne.isMaterialized()).isTrue();
+
+        routeOne.release();
+        routeTwo.get();
+        assertThat(evictor.evict()).isEqualTo(1);
+        assertThat(routeOne.isMaterialized()).isFalse();
+    }
+
+    private static class StubSessionFactory extends LazySessionFactory {
+        StubSessionFactory(String routeName) {
+            super(routeName);
+        }
+
+        @Override
+        protected SessionFactory materialize() throws Exception {
+            return mock(SessionFactory.class);
+        }
+
+        @Override
+        protected void dematerialize(SessionFactory factory) throws Exception {
+        }
+    }
+}
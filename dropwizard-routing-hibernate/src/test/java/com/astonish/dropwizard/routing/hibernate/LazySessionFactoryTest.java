@@ -0,0 +1,259 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.hibernate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.Test;
+
+import com.codahale.metrics.health.HealthCheck;
+
+/**
+ * Unit tests for {@link LazySessionFactory}.
+ */
+public class LazySessionFactoryTest {
+    private final SessionFactory materialized = mock(SessionFactory.class);
+    private final CountingSessionFactory lazy = new CountingSessionFactory();
+
+    @Test
+    public void materializesOnFirstUse() {
+        final Session session = mock(Session.class);
+        when(materialized.openSession()).thenReturn(session);
+
+        assertThat(lazy.isMaterialized()).isFalse();
+        assertThat(lazy.getSessionFactory().isClosed()).isFalse();
+        assertThat(lazy.builds.get()).isZero();
+
+        assertThat(lazy.getSessionFactory().openSession()).isSameAs(session);
+        assertThat(lazy.getSessionFactory().openSession()).isSameAs(session);
+        assertThat(lazy.isMaterialized()).isTrue();
+        assertThat(lazy.builds.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void findsTheLazySessionFactoryOfItsStandIn() {
+        assertThat(LazySessionFactory.of(lazy.getSessionFactory())).isSameAs(lazy);
+        assertThat(LazySessionFactory.of(materialized)).isNull();
+        assertThat(LazySessionFactory.materialized(materialized)).isSameAs(materialized);
+        assertThat(LazySessionFactory.materialized(lazy.getSessionFactory())).isSameAs(materialized);
+        assertThat(lazy.getSessionFactory()).isEqualTo(lazy.getSessionFactory()).isNotEqualTo(materialized);
+    }
+
+    @Test
+    public void coalescesConcurrentFirstUses() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<SessionFactory>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<SessionFactory>() {
+                    @Override
+                    public SessionFactory call() throws Exception {
+                        start.await();
+                        return lazy.get();
+                    }
+                }));
+            }
+            start.countDown();
+
+            for (Future<SessionFactory> future : futures) {
+                assertThat(future.get()).isSameAs(materialized);
+            }
+            assertThat(lazy.builds.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void retriesAFailedBuildOnTheNextUse() {
+        lazy.failure = new IllegalStateException("database is down");
+        try {
+            lazy.get();
+            failBecauseExceptionWasNotThrown(IllegalStateException.class);
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("database is down");
+        }
+        assertThat(lazy.isMaterialized()).isFalse();
+
+        lazy.failure = null;
+        assertThat(lazy.get()).isSameAs(materialized);
+    }
+
+    @Test
+    public void closesTheMaterializedSessionFactory() throws Exception {
+        lazy.get();
+
+        lazy.getSessionFactory().close();
+
+        assertThat(lazy.closed.get()).isEqualTo(1);
+        assertThat(lazy.isMaterialized()).isFalse();
+        assertThat(lazy.getSessionFactory().isClosed()).isTrue();
+        try {
+            lazy.get();
+            failBecauseExceptionWasNotThrown(IllegalStateException.class);
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("Route[RouteOne] is closed");
+        }
+    }
+
+    @Test
+    public void closingAnUnusedRouteBuildsNothing() throws Exception {
+        lazy.close();
+
+        assertThat(lazy.builds.get()).isZero();
+        assertThat(lazy.closed.get()).isZero();
+    }
+
+    @Test
+    public void evictsUntilTheNextUse() throws Exception {
+        assertThat(lazy.evict()).isFalse();
+        lazy.get();
+
+        assertThat(lazy.evict()).isTrue();
+        assertThat(lazy.isMaterialized()).isFalse();
+        assertThat(lazy.closed.get()).isEqualTo(1);
+
+        assertThat(lazy.get()).isSameAs(materialized);
+        assertThat(lazy.builds.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void doesNotEvictRoutesHeldByAUnitOfWork() throws Exception {
+        final AtomicInteger materializations = new AtomicInteger();
+        lazy.setOnMaterialized(new Runnable() {
+            @Override
+            public void run() {
+                materializations.incrementAndGet();
+            }
+        });
+
+        assertThat(lazy.acquire()).isSameAs(materialized);
+        assertThat(lazy.isInUse()).isTrue();
+        assertThat(lazy.evict()).isFalse();
+
+        final long acquired = lazy.getLastUsedNanos();
+        lazy.release();
+        assertThat(lazy.isInUse()).isFalse();
+        assertThat(lazy.getLastUsedNanos()).isGreaterThanOrEqualTo(acquired);
+        assertThat(lazy.evict()).isTrue();
+        assertThat(materializations.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void checksHealthOnlyOnceMaterialized() throws Exception {
+        final HealthCheck healthCheck = mock(HealthCheck.class);
+        when(healthCheck.execute()).thenReturn(HealthCheck.Result.unhealthy("database is down"));
+        final HealthCheck whenMaterialized = lazy.whenMaterialized(healthCheck);
+
+        assertThat(whenMaterialized.execute().isHealthy()).isTrue();
+        assertThat(lazy.isMaterialized()).isFalse();
+
+        lazy.get();
+        assertThat(whenMaterialized.execute().isHealthy()).isFalse();
+        verify(healthCheck).execute();
+    }
+
+    @Test
+    public void runsTasksOnlyWhileMaterialized() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final Runnable whenMaterialized = lazy.whenMaterialized(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        });
+
+        whenMaterialized.run();
+        assertThat(runs.get()).isZero();
+        assertThat(lazy.isMaterialized()).isFalse();
+
+        lazy.get();
+        whenMaterialized.run();
+        assertThat(runs.get()).isEqualTo(1);
+
+        lazy.evict();
+        whenMaterialized.run();
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void runsTheEvictionCallbackOnEachEviction() throws Exception {
+        final AtomicInteger evictions = new AtomicInteger();
+        lazy.setOnEvicted(new Runnable() {
+            @Override
+            public void run() {
+                evictions.incrementAndGet();
+            }
+        });
+
+        lazy.evict();
+        assertThat(evictions.get()).isZero();
+
+        lazy.get();
+        lazy.evict();
+        lazy.get();
+        lazy.evict();
+        assertThat(evictions.get()).isEqualTo(2);
+
+        lazy.get();
+        lazy.close();
+        assertThat(evictions.get()).isEqualTo(2);
+    }
+
+    private class CountingSessionFactory extends LazySessionFactory {
+        private final AtomicInteger builds = new AtomicInteger();
+        private final AtomicInteger closed = new AtomicInteger();
+        private volatile RuntimeException failure;
+
+        CountingSessionFactory() {
+            super("RouteOne");
+        }
+
+        @Override
+        protected SessionFactory materialize() throws Exception {
+            if (null != failure) {
+                throw failure;
+            }
+            builds.incrementAndGet();
+            Thread.sleep(10);
+            return materialized;
+        }
+
+        @Override
+        protected void dematerialize(SessionFactory factory) throws Exception {
+            assertThat(factory).isSameAs(materialized);
+            closed.incrementAndGet();
+        }
+    }
+}
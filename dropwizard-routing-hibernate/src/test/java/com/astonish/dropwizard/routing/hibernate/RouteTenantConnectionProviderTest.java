@@ -0,0 +1,101 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.hibernate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.astonish.dropwizard.routing.db.TenantSwitch;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link RouteTenantConnectionProvider}.
+ */
+public class RouteTenantConnectionProviderTest {
+    private final DataSource dataSource = mock(DataSource.class);
+    private final Connection connection = mock(Connection.class);
+    private final RouteTenantConnectionProvider provider = new RouteTenantConnectionProvider(dataSource,
+            TenantSwitch.SCHEMA, ImmutableMap.of("starbucks", "tenant_starbucks"));
+
+    @Before
+    public void setUp() throws Exception {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.getSchema()).thenReturn("public");
+    }
+
+    @Test
+    public void switchesConnectionsToTheSchemaOfTheTenant() throws Exception {
+        assertThat(provider.getConnection("starbucks")).isSameAs(connection);
+        verify(connection).setSchema("tenant_starbucks");
+
+        provider.releaseConnection("starbucks", connection);
+        verify(connection).close();
+    }
+
+    @Test
+    public void rejectsUnknownTenants() throws Exception {
+        try {
+            provider.getConnection("tenant_dunkindonuts");
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("Unknown tenant[tenant_dunkindonuts]");
+        }
+        verify(dataSource, never()).getConnection();
+    }
+
+    @Test
+    public void handsOutUnswitchedConnectionsForMetadata() throws Exception {
+        assertThat(provider.getAnyConnection()).isSameAs(connection);
+        verify(connection, never()).setSchema(anyString());
+    }
+
+    @Test
+    public void closesConnectionsThatCanNotBeSwitched() throws Exception {
+        final SQLException failure = new SQLException("schema tenant_starbucks does not exist");
+        doThrow(failure).when(connection).setSchema("tenant_starbucks");
+
+        try {
+            provider.getConnection("starbucks");
+            failBecauseExceptionWasNotThrown(SQLException.class);
+        } catch (SQLException e) {
+            assertThat(e).isSameAs(failure);
+        }
+        verify(connection).close();
+    }
+
+    @Test
+    public void unwrapsTheDataSource() {
+        assertThat(provider.isUnwrappableAs(DataSource.class)).isTrue();
+        assertThat(provider.unwrap(DataSource.class)).isSameAs(dataSource);
+        assertThat(provider.isUnwrappableAs(String.class)).isFalse();
+    }
+}
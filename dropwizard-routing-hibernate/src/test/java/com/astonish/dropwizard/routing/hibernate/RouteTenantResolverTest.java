@@ -0,0 +1,65 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.hibernate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.astonish.dropwizard.routing.db.RouteStore;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Unit tests for {@link RouteTenantResolver}.
+ */
+public class RouteTenantResolverTest {
+    private final RouteTenantResolver resolver = new RouteTenantResolver("postgres-1", ImmutableSet.of("postgres-1",
+            "starbucks"));
+
+    @After
+    public void tearDown() {
+        RouteStore.getInstance().get().clear();
+    }
+
+    @Test
+    public void resolvesTheTenantFromTheRouteKey() {
+        RouteStore.getInstance().setRoute("starbucks");
+
+        assertThat(resolver.resolveCurrentTenantIdentifier()).isEqualTo("starbucks");
+        assertThat(resolver.validateExistingCurrentSessions()).isTrue();
+    }
+
+    @Test
+    public void fallsBackToTheRouteWithoutARouteKey() {
+        assertThat(resolver.resolveCurrentTenantIdentifier()).isEqualTo("postgres-1");
+    }
+
+    @Test
+    public void resolvesKeysOtherThanTenantsToTheRoute() {
+        // a key sharded onto the route, naming another tenant's schema
+        RouteStore.getInstance().setRoute("tenant_dunkindonuts");
+
+        assertThat(resolver.resolveCurrentTenantIdentifier()).isEqualTo("postgres-1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresTheRouteToBeATenant() {
+        new RouteTenantResolver("postgres-1", ImmutableSet.of("starbucks"));
+    }
+}
@@ -21,17 +21,24 @@ import io.dropwizard.Configuration;
 import io.dropwizard.db.DataSourceFactory;
 import io.dropwizard.hibernate.SessionFactoryHealthCheck;
 import io.dropwizard.jersey.setup.JerseyEnvironment;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.lifecycle.setup.LifecycleEnvironment;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
 
 import com.astonish.dropwizard.routing.db.DataSourceRoute;
+import com.astonish.dropwizard.routing.db.filter.RouteBulkheadFilter;
+import com.astonish.dropwizard.routing.db.filter.RouteScopeApplicationListener;
 import com.astonish.dropwizard.routing.hibernate.RoutingHibernateBundle;
 import com.astonish.dropwizard.routing.hibernate.RoutingSessionFactoryFactory;
+import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.health.HealthCheckRegistry;
 import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.hibernate4.Hibernate4Module;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import org.hibernate.SessionFactory;
 import org.junit.Before;
@@ -39,6 +46,7 @@ import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
 import static org.mockito.Mockito.*;
 
 public class RoutingHibernateBundleTest {
@@ -53,6 +61,8 @@ public class RoutingHibernateBundleTest {
     private final Configuration configuration = mock(Configuration.class);
     private final HealthCheckRegistry healthChecks = mock(HealthCheckRegistry.class);
     private final JerseyEnvironment jerseyEnvironment = mock(JerseyEnvironment.class);
+    private final LifecycleEnvironment lifecycleEnvironment = mock(LifecycleEnvironment.class);
+    private final MetricRegistry metrics = new MetricRegistry();
     private final Environment environment = mock(Environment.class);
     private final RoutingHibernateBundle<Configuration> bundle = new RoutingHibernateBundle<Configuration>(entities,
             factory) {
@@ -78,6 +88,8 @@ public class RoutingHibernateBundleTest {
     public void setUp() throws Exception {
         when(environment.healthChecks()).thenReturn(healthChecks);
         when(environment.jersey()).thenReturn(jerseyEnvironment);
+        when(environment.lifecycle()).thenReturn(lifecycleEnvironment);
+        when(environment.metrics()).thenReturn(metrics);
 
         when(factory.build(eq(bundle), any(Environment.class), eq(dbConfigRouteOne), anyList(), eq(ROUTE_ONE)))
                 .thenReturn(sessionFactoryRouteOne);
@@ -130,11 +142,206 @@ public class RoutingHibernateBundleTest {
     public void registersATransactionalAdapter() throws Exception {
         bundle.run(configuration, environment);
 
-        final ArgumentCaptor<RoutingUnitOfWorkApplicationListener> captor = ArgumentCaptor
-                .forClass(RoutingUnitOfWorkApplicationListener.class);
-        verify(jerseyEnvironment).register(captor.capture());
+        final ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(jerseyEnvironment, atLeastOnce()).register(captor.capture());
 
-        assertThat(captor.getValue().getSessionFactoryMap()).containsValue(sessionFactoryRouteOne);
-        assertThat(captor.getValue().getSessionFactoryMap()).containsValue(sessionFactoryRouteTwo);
+        final RoutingUnitOfWorkApplicationListener listener = (RoutingUnitOfWorkApplicationListener) captor
+                .getAllValues().get(0);
+        assertThat(listener.getSessionFactoryMap()).containsValue(sessionFactoryRouteOne);
+        assertThat(listener.getSessionFactoryMap()).containsValue(sessionFactoryRouteTwo);
+    }
+
+    @Test
+    public void limitsRoutesToTheirPoolSize() throws Exception {
+        dbConfigRouteOne.setMaxSize(8);
+        bundle.run(configuration, environment);
+
+        assertThat(bundle.getBulkheads().get(ROUTE_ONE).getLimit()).isEqualTo(8);
+        assertThat(bundle.getBulkheads().get(ROUTE_TWO).getLimit()).isEqualTo(dbConfigRouteTwo.getMaxSize());
+        verify(jerseyEnvironment).register(isA(RouteBulkheadFilter.class));
+    }
+
+    @Test
+    public void unbindsRoutesWhenRequestsFinish() throws Exception {
+        bundle.run(configuration, environment);
+
+        verify(jerseyEnvironment).register(isA(RouteScopeApplicationListener.class));
+    }
+
+    @Test
+    public void adaptsRouteLimitsUnlessDisabled() throws Exception {
+        bundle.run(configuration, environment);
+
+        assertThat(bundle.getLimiter().get(ROUTE_ONE).getMaxLimit()).isEqualTo(dbConfigRouteOne.getMaxSize());
+        assertThat(metrics.getGauges()).containsKeys("routes.RouteOne.limit", "routes.RouteTwo.limit");
+    }
+
+    @Test
+    public void keepsRouteLimitsFixedWhenDisabled() throws Exception {
+        bundle.setAdaptiveLimits(false);
+        bundle.run(configuration, environment);
+
+        assertThat(bundle.getLimiter()).isNull();
+        assertThat(metrics.getGauges()).isEmpty();
+    }
+
+    @Test
+    public void sharesCapacityByTierWhenFairQueuing() throws Exception {
+        bundle.setFairQueue(10, 100, Duration.seconds(1));
+        bundle.run(configuration, environment);
+
+        assertThat(bundle.getFairQueue().get(bundle.getRouteRegistry().getRouteTable().get(ROUTE_ONE)).getTier()
+                .getName()).isEqualTo(RoutingHibernateBundle.DEFAULT_TIER);
+        assertThat(metrics.getGauges()).containsKeys("tiers.premium.queued", "tiers.standard.queued",
+                "tiers.basic.queued");
+    }
+
+    @Test
+    public void buildsRoutesInParallelKeepingTheirOrder() throws Exception {
+        bundle.setBootstrapParallelism(4);
+        bundle.run(configuration, environment);
+
+        assertThat(bundle.getSessionFactoryMap().keySet()).containsExactly(ROUTE_ONE, ROUTE_TWO);
+        assertThat(bundle.getSessionFactoryMap()).containsEntry(ROUTE_ONE, sessionFactoryRouteOne).containsEntry(
+                ROUTE_TWO, sessionFactoryRouteTwo);
+        verify(healthChecks).register(eq(ROUTE_TWO), any(SessionFactoryHealthCheck.class));
+    }
+
+    @Test
+    public void closesTheBuiltRoutesIfARouteFails() throws Exception {
+        final IllegalStateException failure = new IllegalStateException("RouteTwo is down");
+        when(factory.build(eq(bundle), any(Environment.class), eq(dbConfigRouteTwo), anyList(), eq(ROUTE_TWO)))
+                .thenThrow(failure);
+
+        try {
+            bundle.run(configuration, environment);
+            failBecauseExceptionWasNotThrown(IllegalStateException.class);
+        } catch (IllegalStateException e) {
+            assertThat(e).isSameAs(failure);
+        }
+        verify(factory).close(sessionFactoryRouteOne);
+        verify(healthChecks, never()).register(anyString(), any(SessionFactoryHealthCheck.class));
+    }
+
+    @Test
+    public void buildsRoutesOnFirstUseWhenLazy() throws Exception {
+        final SessionFactory lazyRouteOne = mock(SessionFactory.class);
+        final SessionFactory lazyRouteTwo = mock(SessionFactory.class);
+        when(factory.buildLazy(bundle, environment, dbConfigRouteOne, entities, ROUTE_ONE)).thenReturn(lazyRouteOne);
+        when(factory.buildLazy(bundle, environment, dbConfigRouteTwo, entities, ROUTE_TWO)).thenReturn(lazyRouteTwo);
+        bundle.setLazyRoutes(true);
+        bundle.run(configuration, environment);
+
+        verify(factory, never()).build(any(RoutingHibernateBundle.class), any(Environment.class),
+                any(DataSourceFactory.class), anyList(), anyString());
+        assertThat(bundle.getSessionFactoryMap()).containsEntry(ROUTE_ONE, lazyRouteOne).containsEntry(ROUTE_TWO,
+                lazyRouteTwo);
+    }
+
+    @Test
+    public void sharesOneSessionFactoryBetweenTheTenantsOfARoute() throws Exception {
+        final DataSourceFactory dbConfigRouteThree = new DataSourceFactory();
+        final SessionFactory sessionFactoryRouteThree = mock(SessionFactory.class);
+        final DataSourceRoute route = new DataSourceRoute();
+        route.setDatabase(dbConfigRouteThree);
+        route.setRouteName("RouteThree");
+        route.setTenants(ImmutableMap.of("RouteThree", "public", "starbucks", "tenant_starbucks", "dunkindonuts",
+                "tenant_dunkindonuts"));
+        when(factory.build(bundle, environment, route, entities)).thenReturn(sessionFactoryRouteThree);
+        bundle.run(configuration, environment);
+
+        bundle.addRoute(route);
+
+        assertThat(bundle.getRouteRegistry().get("starbucks")).isSameAs(sessionFactoryRouteThree);
+        assertThat(bundle.getRouteRegistry().get("dunkindonuts")).isSameAs(sessionFactoryRouteThree);
+        assertThat(bundle.getRouteRegistry().getRouteTable().aliases()).containsOnlyKeys("starbucks",
+                "dunkindonuts");
+        verify(factory, never()).build(bundle, environment, dbConfigRouteThree, entities, "RouteThree");
+    }
+
+    @Test
+    public void addsRoutesAtRuntime() throws Exception {
+        final DataSourceFactory dbConfigRouteThree = new DataSourceFactory();
+        final SessionFactory sessionFactoryRouteThree = mock(SessionFactory.class);
+        when(factory.build(bundle, environment, dbConfigRouteThree, entities, "RouteThree")).thenReturn(
+                sessionFactoryRouteThree);
+        bundle.run(configuration, environment);
+
+        final DataSourceRoute route = new DataSourceRoute();
+        route.setDatabase(dbConfigRouteThree);
+        route.setRouteName("RouteThree");
+        bundle.addRoute(route);
+
+        assertThat(bundle.getSessionFactoryMap()).containsKeys(ROUTE_ONE, ROUTE_TWO, "RouteThree");
+        assertThat(bundle.getRouteRegistry().get("RouteThree")).isSameAs(sessionFactoryRouteThree);
+        verify(healthChecks).register(eq("RouteThree"), any(SessionFactoryHealthCheck.class));
+    }
+
+    @Test
+    public void addingAnExistingRouteBuildsNothing() throws Exception {
+        bundle.run(configuration, environment);
+
+        final DataSourceRoute route = new DataSourceRoute();
+        route.setDatabase(new DataSourceFactory());
+        route.setRouteName(ROUTE_TWO);
+        try {
+            bundle.addRoute(route);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("Route[RouteTwo] already exists");
+        }
+        verify(factory).build(eq(bundle), any(Environment.class), any(DataSourceFactory.class), anyList(),
+                eq(ROUTE_TWO));
+        verify(healthChecks, never()).unregister(ROUTE_TWO);
+    }
+
+    @Test
+    public void aFailedAddUndoesOnlyWhatItBuilt() throws Exception {
+        final DataSourceFactory dbConfigRouteThree = new DataSourceFactory();
+        final SessionFactory sessionFactoryRouteThree = mock(SessionFactory.class);
+        when(factory.build(bundle, environment, dbConfigRouteThree, entities, "RouteThree")).thenReturn(
+                sessionFactoryRouteThree);
+        dbConfigRouteOne.setMaxSize(8);
+        bundle.run(configuration, environment);
+        bundle.addAlias("RouteThree", ROUTE_ONE);
+
+        final DataSourceRoute route = new DataSourceRoute();
+        route.setDatabase(dbConfigRouteThree);
+        route.setRouteName("RouteThree");
+        route.setMaxConcurrentRequests(3);
+        try {
+            bundle.addRoute(route);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("Route[RouteThree] already exists");
+        }
+
+        verify(factory).close(sessionFactoryRouteThree);
+        // the alias still resolves to RouteOne, whose limit must not take the failed route's
+        assertThat(bundle.getBulkheads().get("RouteThree").getLimit()).isEqualTo(8);
+        assertThat(bundle.getRouteRegistry().get("RouteThree")).isSameAs(sessionFactoryRouteOne);
+    }
+
+    @Test
+    public void closesEveryRouteOnShutdown() throws Exception {
+        bundle.run(configuration, environment);
+
+        final ArgumentCaptor<Managed> captor = ArgumentCaptor.forClass(Managed.class);
+        verify(lifecycleEnvironment).manage(captor.capture());
+        captor.getValue().stop();
+
+        verify(factory).close(sessionFactoryRouteOne);
+        verify(factory).close(sessionFactoryRouteTwo);
+    }
+
+    @Test
+    public void removesRoutesAtRuntime() throws Exception {
+        bundle.run(configuration, environment);
+
+        bundle.removeRoute(ROUTE_TWO);
+
+        assertThat(bundle.getSessionFactoryMap()).containsOnlyKeys(ROUTE_ONE);
+        verify(healthChecks).unregister(ROUTE_TWO);
+        verify(factory).close(sessionFactoryRouteTwo);
     }
 }
@@ -0,0 +1,80 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.hibernate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import io.dropwizard.db.DataSourceFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.junit.Test;
+
+import com.astonish.dropwizard.routing.db.DataSourceRoute;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Unit tests for {@link RoutingSessionFactoryFactory}.
+ */
+public class RoutingSessionFactoryFactoryTest {
+    private final ImmutableList<Class<?>> entities = ImmutableList.<Class<?>> of(Person.class);
+    private final AtomicInteger configured = new AtomicInteger();
+    private final RoutingSessionFactoryFactory factory = new RoutingSessionFactoryFactory();
+    private final RoutingHibernateBundle<io.dropwizard.Configuration> bundle =
+            new RoutingHibernateBundle<io.dropwizard.Configuration>(entities, factory) {
+                @Override
+                public ImmutableList<DataSourceRoute> getDataSourceRoutes(io.dropwizard.Configuration configuration) {
+                    return ImmutableList.of();
+                }
+
+                @Override
+                protected void configure(Configuration configuration) {
+                    configured.incrementAndGet();
+                    configuration.setProperty(AvailableSettings.ORDER_UPDATES, "false");
+                }
+            };
+
+    @Test
+    public void givesEveryRouteItsOwnConfiguration() {
+        final RouteTenantResolver tenants = new RouteTenantResolver("postgres-1", ImmutableSet.of("starbucks"));
+
+        final Configuration one = factory.configuration(bundle, new DataSourceFactory(),
+                ImmutableMap.of(AvailableSettings.DEFAULT_SCHEMA, "one"), entities, tenants);
+        final Configuration two = factory.configuration(bundle, new DataSourceFactory(),
+                ImmutableMap.of(AvailableSettings.DEFAULT_SCHEMA, "two"), entities, null);
+
+        assertThat(one).isNotSameAs(two);
+        assertThat(one.getProperty(AvailableSettings.DEFAULT_SCHEMA)).isEqualTo("one");
+        assertThat(two.getProperty(AvailableSettings.DEFAULT_SCHEMA)).isEqualTo("two");
+        assertThat(one.getCurrentTenantIdentifierResolver()).isSameAs(tenants);
+        assertThat(two.getCurrentTenantIdentifierResolver()).isNull();
+        assertThat(configured.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void bundlePropertiesTakePrecedenceOverRouteProperties() {
+        final Configuration configuration = factory.configuration(bundle, new DataSourceFactory(),
+                ImmutableMap.of(AvailableSettings.ORDER_UPDATES, "true"), entities, null);
+
+        assertThat(configuration.getProperty(AvailableSettings.ORDER_UPDATES)).isEqualTo("false");
+        assertThat(configuration.getProperty(AvailableSettings.CURRENT_SESSION_CONTEXT_CLASS)).isEqualTo("managed");
+    }
+}
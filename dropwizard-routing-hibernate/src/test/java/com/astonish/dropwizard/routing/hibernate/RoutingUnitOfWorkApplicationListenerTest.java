@@ -28,6 +28,10 @@ import static org.mockito.Mockito.when;
 import io.dropwizard.hibernate.UnitOfWork;
 
 import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
 
 import org.glassfish.jersey.server.ExtendedUriInfo;
 import org.glassfish.jersey.server.model.Resource;
@@ -39,16 +43,29 @@ import org.glassfish.jersey.server.monitoring.RequestEventListener;
 import org.hibernate.CacheMode;
 import org.hibernate.FlushMode;
 import org.hibernate.Session;
+import org.hibernate.SessionBuilder;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
 import org.hibernate.context.internal.ManagedSessionContext;
+import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import com.astonish.dropwizard.routing.db.Replica;
+import com.astonish.dropwizard.routing.db.ReplicaBalancer;
+import com.astonish.dropwizard.routing.db.RouteRegistry;
+import com.astonish.dropwizard.routing.db.RouteReplicas;
+import com.astonish.dropwizard.routing.db.RouteStore;
+import com.astonish.dropwizard.routing.db.TenantSwitch;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 public class RoutingUnitOfWorkApplicationListenerTest {
     private final SessionFactory sessionFactory = mock(SessionFactory.class);
@@ -66,6 +83,7 @@ public class RoutingUnitOfWorkApplicationListenerTest {
 
     @Before
     public void setUp() throws Exception {
+        RouteStore.getInstance().setRoute("factory1routekey");
         when(sessionFactory.openSession()).thenReturn(session);
         when(session.getSessionFactory()).thenReturn(sessionFactory);
         when(session.beginTransaction()).thenReturn(transaction);
@@ -84,6 +102,11 @@ public class RoutingUnitOfWorkApplicationListenerTest {
         prepareAppEvent("methodWithDefaultAnnotation");
     }
 
+    @After
+    public void tearDown() {
+        RouteStore.getInstance().get().clear();
+    }
+
     @Test
     public void opensAndClosesASession() throws Exception {
         execute();
@@ -234,6 +257,103 @@ public class RoutingUnitOfWorkApplicationListenerTest {
         verify(transaction, never()).rollback();
     }
 
+    @Test
+    public void sendsReadOnlyUnitsOfWorkToAReplica() throws Exception {
+        final ReplicaListener replicaListener = new ReplicaListener();
+        prepareAppEvent("methodWithReadOnlyAnnotation");
+
+        replicaListener.execute();
+
+        verify(replicaListener.builder).connection(replicaListener.connection);
+        verify(sessionFactory, never()).openSession();
+        final InOrder inOrder = inOrder(session, replicaListener.connection);
+        inOrder.verify(session).close();
+        inOrder.verify(replicaListener.connection).close();
+        assertThat(replicaListener.replica.getInFlight()).isZero();
+    }
+
+    @Test
+    public void keepsWritesOnThePrimary() throws Exception {
+        final ReplicaListener replicaListener = new ReplicaListener();
+
+        replicaListener.execute();
+
+        verify(sessionFactory).openSession();
+        verify(replicaListener.dataSource, never()).getConnection();
+    }
+
+    @Test
+    public void fallsBackToThePrimaryIfTheReplicaRefusesAConnection() throws Exception {
+        final ReplicaListener replicaListener = new ReplicaListener();
+        when(replicaListener.dataSource.getConnection()).thenThrow(new SQLException("down"));
+        prepareAppEvent("methodWithReadOnlyAnnotation");
+
+        replicaListener.execute();
+
+        verify(sessionFactory).openSession();
+        assertThat(replicaListener.replica.getInFlight()).isZero();
+    }
+
+    @Test
+    public void switchesReplicaConnectionsToTheSchemaOfTheTenant() throws Exception {
+        final SessionFactoryImplementor tenantFactory = mock(SessionFactoryImplementor.class);
+        final ServiceRegistryImplementor services = mock(ServiceRegistryImplementor.class);
+        when(tenantFactory.getServiceRegistry()).thenReturn(services);
+        when(services.getService(MultiTenantConnectionProvider.class)).thenReturn(new RouteTenantConnectionProvider(
+                mock(DataSource.class), TenantSwitch.SCHEMA, ImmutableMap.of("factory1routekey", "public",
+                        "starbucks", "tenant_starbucks")));
+        when(tenantFactory.getCurrentTenantIdentifierResolver()).thenReturn(new RouteTenantResolver(
+                "factory1routekey", ImmutableSet.of("factory1routekey", "starbucks")));
+        final ReplicaListener replicaListener = new ReplicaListener(tenantFactory);
+        when(replicaListener.builder.tenantIdentifier("starbucks")).thenReturn(replicaListener.builder);
+        when(session.getSessionFactory()).thenReturn(tenantFactory);
+        replicaListener.registry.addAlias("starbucks", "factory1routekey");
+        RouteStore.getInstance().setRoute("starbucks");
+        prepareAppEvent("methodWithReadOnlyAnnotation");
+
+        replicaListener.execute();
+
+        final InOrder inOrder = inOrder(replicaListener.connection, replicaListener.builder);
+        inOrder.verify(replicaListener.connection).setSchema("tenant_starbucks");
+        inOrder.verify(replicaListener.builder).tenantIdentifier("starbucks");
+        inOrder.verify(replicaListener.builder).openSession();
+    }
+
+    /**
+     * A listener over a {@link SessionFactory} whose route has one read replica.
+     */
+    private class ReplicaListener {
+        private final DataSource dataSource = mock(DataSource.class);
+        private final Connection connection = mock(Connection.class);
+        private final SessionBuilder builder = mock(SessionBuilder.class);
+        private final Replica<DataSource> replica = new Replica<>("replica", dataSource);
+        private final RouteRegistry<SessionFactory> registry;
+        private final RoutingUnitOfWorkApplicationListener replicaListener;
+
+        ReplicaListener() throws SQLException {
+            this(sessionFactory);
+        }
+
+        ReplicaListener(SessionFactory sessionFactory) throws SQLException {
+            this.registry = new RouteRegistry<>(ImmutableMap.of("factory1routekey", sessionFactory));
+            final RouteReplicas<DataSource> replicas = new RouteReplicas<>(registry);
+            replicas.put("factory1routekey", new ReplicaBalancer<>(ImmutableList.of(replica)));
+            this.replicaListener = new RoutingUnitOfWorkApplicationListener(registry, null, replicas);
+
+            when(dataSource.getConnection()).thenReturn(connection);
+            when(sessionFactory.withOptions()).thenReturn(builder);
+            when(builder.connection(connection)).thenReturn(builder);
+            when(builder.openSession()).thenReturn(session);
+        }
+
+        void execute() {
+            replicaListener.onEvent(appEvent);
+            final RequestEventListener requestListener = replicaListener.onRequest(requestStartEvent);
+            requestListener.onEvent(requestMethodStartEvent);
+            requestListener.onEvent(responseFiltersStartEvent);
+        }
+    }
+
     private void prepareAppEvent(String resourceMethodName) throws NoSuchMethodException {
         final Resource.Builder builder = Resource.builder();
         final MockResource mockResource = new MockResource();
@@ -0,0 +1,261 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates the DAO routers declared with {@link GenerateDAORouter}.
+ */
+@SupportedAnnotationTypes(DAORouterProcessor.ANNOTATION)
+public class DAORouterProcessor extends AbstractProcessor {
+    static final String ANNOTATION = "com.astonish.dropwizard.routing.processor.GenerateDAORouter";
+    private static final String SESSION_FACTORY = "org.hibernate.SessionFactory";
+    private static final String SUPERCLASS = "com.astonish.dropwizard.routing.hibernate.AbstractHibernateDAORouter";
+    private static final String ROUTE_REGISTRY = "com.astonish.dropwizard.routing.db.RouteRegistry";
+    private static final String IMMUTABLE_MAP = "com.google.common.collect.ImmutableMap";
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.annotation.processing.AbstractProcessor#getSupportedSourceVersion()
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.annotation.processing.AbstractProcessor#process(java.util.Set,
+     * javax.annotation.processing.RoundEnvironment)
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        final TypeElement annotation = processingEnv.getElementUtils().getTypeElement(ANNOTATION);
+        if (null == annotation) {
+            return false;
+        }
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                error(element, "@GenerateDAORouter must annotate an interface");
+                continue;
+            }
+
+            final TypeElement type = (TypeElement) element;
+            final AnnotationMirror mirror = mirror(type, annotation);
+            final List<TypeElement> daos = daos(type, mirror);
+            if (null != daos) {
+                write(type, className(type, mirror), daos);
+            }
+        }
+        return true;
+    }
+
+    private static AnnotationMirror mirror(TypeElement type, TypeElement annotation) {
+        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+            if (annotation.equals(mirror.getAnnotationType().asElement())) {
+                return mirror;
+            }
+        }
+        throw new IllegalStateException("No @GenerateDAORouter on " + type);
+    }
+
+    private AnnotationValue value(AnnotationMirror mirror, String name) {
+        for (Entry<? extends ExecutableElement, ? extends AnnotationValue> e : processingEnv.getElementUtils()
+                .getElementValuesWithDefaults(mirror).entrySet()) {
+            if (e.getKey().getSimpleName().contentEquals(name)) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    private String className(TypeElement type, AnnotationMirror mirror) {
+        final String className = (String) value(mirror, "className").getValue();
+        return className.isEmpty() ? type.getSimpleName() + "Router" : className;
+    }
+
+    /**
+     * Reads and validates the DAO types.
+     * @return the DAO types, or null if any of them is invalid
+     */
+    private List<TypeElement> daos(TypeElement type, AnnotationMirror mirror) {
+        @SuppressWarnings("unchecked")
+        final List<? extends AnnotationValue> values = (List<? extends AnnotationValue>) value(mirror, "value")
+                .getValue();
+        if (values.isEmpty()) {
+            error(type, "@GenerateDAORouter needs at least one DAO");
+            return null;
+        }
+
+        final List<TypeElement> daos = new ArrayList<>();
+        final Set<String> accessors = new HashSet<>();
+        boolean valid = true;
+        for (AnnotationValue value : values) {
+            final TypeElement dao = (TypeElement) ((DeclaredType) value.getValue()).asElement();
+            if (!accessors.add(accessor(dao))) {
+                error(type, "Duplicate DAO accessor " + accessor(dao) + "() for " + dao.getQualifiedName());
+                valid = false;
+            } else if (dao.getModifiers().contains(Modifier.ABSTRACT) || !hasSessionFactoryConstructor(dao)) {
+                error(type, dao.getQualifiedName() + " needs a public constructor taking only a " + SESSION_FACTORY);
+                valid = false;
+            }
+            daos.add(dao);
+        }
+        return valid ? daos : null;
+    }
+
+    private static boolean hasSessionFactoryConstructor(TypeElement dao) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(dao.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PUBLIC) && constructor.getParameters().size() == 1) {
+                final TypeMirror parameter = constructor.getParameters().get(0).asType();
+                if (parameter.toString().equals(SESSION_FACTORY)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String accessor(TypeElement dao) {
+        return "get" + dao.getSimpleName();
+    }
+
+    private static String slot(TypeElement dao) {
+        final String name = dao.getSimpleName().toString();
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1) + "Slot";
+    }
+
+    /**
+     * @return true if the interface declares the accessor, so that the generated method overrides it
+     */
+    private static boolean declares(TypeElement type, String accessor) {
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getSimpleName().contentEquals(accessor) && method.getParameters().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void write(TypeElement type, String className, List<TypeElement> daos) {
+        final PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        final String qualifiedName = pkg.isUnnamed() ? className : pkg.getQualifiedName() + "." + className;
+
+        final StringBuilder src = new StringBuilder();
+        if (!pkg.isUnnamed()) {
+            src.append("package ").append(pkg.getQualifiedName()).append(";\n\n");
+        }
+        src.append("/**\n");
+        src.append(" * DAO router for {@link ").append(type.getQualifiedName()).append("}, generated by ")
+                .append(DAORouterProcessor.class.getSimpleName()).append(".\n");
+        src.append(" */\n");
+        src.append("public class ").append(className).append(" extends ").append(SUPERCLASS).append(" implements ")
+                .append(type.getQualifiedName()).append(" {\n");
+        for (TypeElement dao : daos) {
+            src.append("    private final int ").append(slot(dao)).append(";\n");
+        }
+
+        src.append("\n    public ").append(className).append("(").append(IMMUTABLE_MAP).append("<String, ")
+                .append(SESSION_FACTORY).append("> sessionFactoryMap) {\n");
+        src.append("        this(sessionFactoryMap, false);\n");
+        src.append("    }\n");
+
+        src.append("\n    public ").append(className).append("(").append(IMMUTABLE_MAP).append("<String, ")
+                .append(SESSION_FACTORY).append("> sessionFactoryMap, boolean lazy) {\n");
+        src.append("        super(sessionFactoryMap, lazy);\n");
+        appendSlots(src, daos);
+        src.append("    }\n");
+
+        src.append("\n    public ").append(className).append("(").append(ROUTE_REGISTRY).append("<")
+                .append(SESSION_FACTORY).append("> registry, boolean lazy) {\n");
+        src.append("        super(registry, lazy);\n");
+        appendSlots(src, daos);
+        src.append("    }\n");
+
+        src.append("\n    @Override\n");
+        src.append("    protected ").append(IMMUTABLE_MAP).append("<Class<?>, Object> constructDAOs(")
+                .append(SESSION_FACTORY).append(" factory) {\n");
+        src.append("        final ").append(IMMUTABLE_MAP).append(".Builder<Class<?>, Object> bldr = new ")
+                .append(IMMUTABLE_MAP).append(".Builder<>();\n");
+        for (TypeElement dao : daos) {
+            src.append("        bldr.put(").append(dao.getQualifiedName()).append(".class, new ")
+                    .append(dao.getQualifiedName()).append("(factory));\n");
+        }
+        src.append("        return bldr.build();\n");
+        src.append("    }\n");
+
+        for (TypeElement dao : daos) {
+            src.append("\n    /**\n");
+            src.append("     * @return the current route's {@link ").append(dao.getQualifiedName()).append("}\n");
+            src.append("     */\n");
+            if (declares(type, accessor(dao))) {
+                src.append("    @Override\n");
+            }
+            src.append("    public ").append(dao.getQualifiedName()).append(" ").append(accessor(dao))
+                    .append("() {\n");
+            src.append("        return (").append(dao.getQualifiedName()).append(") getDAO(").append(slot(dao))
+                    .append(");\n");
+            src.append("    }\n");
+        }
+        src.append("}\n");
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(src.toString());
+        } catch (IOException e) {
+            error(type, "Could not write " + qualifiedName + ": " + e.getMessage());
+        }
+    }
+
+    private static void appendSlots(StringBuilder src, List<TypeElement> daos) {
+        for (TypeElement dao : daos) {
+            src.append("        this.").append(slot(dao)).append(" = slotOf(").append(dao.getQualifiedName())
+                    .append(".class);\n");
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
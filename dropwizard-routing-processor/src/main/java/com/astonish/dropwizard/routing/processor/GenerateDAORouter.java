@@ -0,0 +1,56 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.processor;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a Hibernate DAO router implementing the annotated interface.
+ * <p/>
+ * The generated class extends {@code AbstractHibernateDAORouter}, constructs each DAO through its
+ * {@code SessionFactory} constructor and has a typed {@code get<DAO>()} accessor per DAO. Accessors resolve the DAO's
+ * slot once at construction, so a call costs the route lookup and one array load, without the type lookup and
+ * unchecked cast of {@code getDAO(Class)}. The interface may declare the accessors itself to expose them to callers.
+ * 
+ * <pre>
+ * &#064;GenerateDAORouter(value = { BaristaDAO.class, RecipeDAO.class }, className = &quot;BaristaDaoRouter&quot;)
+ * public interface BaristaDAOs {
+ *     BaristaDAO getBaristaDAO();
+ * 
+ *     RecipeDAO getRecipeDAO();
+ * }
+ * </pre>
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.SOURCE)
+public @interface GenerateDAORouter {
+    /**
+     * @return the DAO types, each with a public constructor taking only a {@code SessionFactory}
+     */
+    Class<?>[] value();
+
+    /**
+     * @return the simple name of the generated class, by default the interface name followed by {@code Router}
+     */
+    String className() default "";
+}
@@ -0,0 +1,169 @@
+/* Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.astonish.dropwizard.routing.processor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link DAORouterProcessor}.
+ */
+public class DAORouterProcessorTest {
+    private static final JavaFileObject SESSION_FACTORY = source("org.hibernate.SessionFactory",
+            "package org.hibernate; public interface SessionFactory {}");
+    private static final JavaFileObject BARISTA_DAO = source("com.example.BaristaDAO",
+            "package com.example; public class BaristaDAO { public BaristaDAO(org.hibernate.SessionFactory f) {} }");
+    private static final JavaFileObject RECIPE_DAO = source("com.example.RecipeDAO",
+            "package com.example; public class RecipeDAO { public RecipeDAO(org.hibernate.SessionFactory f) {} }");
+
+    // signatures the generated router compiles against
+    private static final JavaFileObject IMMUTABLE_MAP = source("com.google.common.collect.ImmutableMap",
+            "package com.google.common.collect; public class ImmutableMap<K, V> { public static class Builder<K, V> {"
+                    + " public Builder<K, V> put(K k, V v) { return this; }"
+                    + " public ImmutableMap<K, V> build() { return null; } } }");
+    private static final JavaFileObject ROUTE_REGISTRY = source("com.astonish.dropwizard.routing.db.RouteRegistry",
+            "package com.astonish.dropwizard.routing.db; public class RouteRegistry<V> {}");
+    private static final JavaFileObject SUPERCLASS = source(
+            "com.astonish.dropwizard.routing.hibernate.AbstractHibernateDAORouter",
+            "package com.astonish.dropwizard.routing.hibernate;"
+                    + " import com.google.common.collect.ImmutableMap; import org.hibernate.SessionFactory;"
+                    + " public abstract class AbstractHibernateDAORouter {"
+                    + " public AbstractHibernateDAORouter(ImmutableMap<String, SessionFactory> m, boolean lazy) {}"
+                    + " public AbstractHibernateDAORouter("
+                    + "   com.astonish.dropwizard.routing.db.RouteRegistry<SessionFactory> r, boolean lazy) {}"
+                    + " protected abstract ImmutableMap<Class<?>, Object> constructDAOs(SessionFactory factory);"
+                    + " protected final int slotOf(Class<?> daoClass) { return 0; }"
+                    + " protected final Object getDAO(int slot) { return null; } }");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    private File generated;
+    private File classes;
+
+    @Before
+    public void setUp() throws Exception {
+        generated = folder.newFolder();
+        classes = folder.newFolder();
+    }
+
+    @Test
+    public void generatesATypedRouter() throws Exception {
+        assertThat(compile(source("com.example.BaristaDAOs", "package com.example;"
+                + " @com.astonish.dropwizard.routing.processor.GenerateDAORouter("
+                + "   value = { BaristaDAO.class, RecipeDAO.class }, className = \"BaristaDaoRouter\")"
+                + " public interface BaristaDAOs { BaristaDAO getBaristaDAO(); }"))).as(errors().toString()).isTrue();
+
+        final String router = read("com/example/BaristaDaoRouter.java");
+        assertThat(router)
+                .contains("public class BaristaDaoRouter extends "
+                        + "com.astonish.dropwizard.routing.hibernate.AbstractHibernateDAORouter"
+                        + " implements com.example.BaristaDAOs {")
+                .contains("this.baristaDAOSlot = slotOf(com.example.BaristaDAO.class);")
+                .contains("bldr.put(com.example.RecipeDAO.class, new com.example.RecipeDAO(factory));")
+                .contains("    @Override\n    public com.example.BaristaDAO getBaristaDAO() {\n"
+                        + "        return (com.example.BaristaDAO) getDAO(baristaDAOSlot);")
+                .contains("    public com.example.RecipeDAO getRecipeDAO() {")
+                .doesNotContain("@Override\n    public com.example.RecipeDAO");
+    }
+
+    @Test
+    public void namesTheRouterAfterTheInterfaceByDefault() throws Exception {
+        assertThat(compile(source("com.example.BaristaDAOs", "package com.example;"
+                + " @com.astonish.dropwizard.routing.processor.GenerateDAORouter(BaristaDAO.class)"
+                + " public interface BaristaDAOs {}"))).as(errors().toString()).isTrue();
+
+        assertThat(new File(generated, "com/example/BaristaDAOsRouter.java")).exists();
+        assertThat(new File(classes, "com/example/BaristaDAOsRouter.class")).exists();
+    }
+
+    @Test
+    public void rejectsDAOsWithoutASessionFactoryConstructor() {
+        assertThat(compile(source("com.example.BaristaDAOs", "package com.example;"
+                + " @com.astonish.dropwizard.routing.processor.GenerateDAORouter(String.class)"
+                + " public interface BaristaDAOs {}"))).isFalse();
+
+        assertThat(errors()).containsExactly(
+                "java.lang.String needs a public constructor taking only a org.hibernate.SessionFactory");
+    }
+
+    @Test
+    public void rejectsClasses() {
+        assertThat(compile(source("com.example.BaristaDAOs", "package com.example;"
+                + " @com.astonish.dropwizard.routing.processor.GenerateDAORouter(BaristaDAO.class)"
+                + " public class BaristaDAOs {}"))).isFalse();
+
+        assertThat(errors()).containsExactly("@GenerateDAORouter must annotate an interface");
+    }
+
+    private boolean compile(JavaFileObject annotated) {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final String classPath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        final JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+                Arrays.asList("-classpath", classPath, "-s", generated.getPath(), "-d", classes.getPath()), null,
+                Arrays.asList(SESSION_FACTORY, IMMUTABLE_MAP, ROUTE_REGISTRY, SUPERCLASS, BARISTA_DAO, RECIPE_DAO,
+                        annotated));
+        task.setProcessors(Arrays.asList(new DAORouterProcessor()));
+        return task.call();
+    }
+
+    private List<String> errors() {
+        final List<String> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic.getMessage(null));
+            }
+        }
+        return errors;
+    }
+
+    private String read(String path) throws IOException {
+        return new String(Files.readAllBytes(new File(generated, path).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static JavaFileObject source(final String name, final String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + name.replace('.', '/') + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+}